@@ -0,0 +1,119 @@
+package towel;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds on to the errors and notices reported while a file is processed on its own thread
+ * <p>
+ * They're passed on to the main reporter later, in the order the files would have been processed one at a time. They
+ * can be written out too, so the notices for a file can be cached along with its program.
+ * </p>
+ */
+class BufferedErrorReporter implements ErrorReporter {
+
+    private final List<Report> reports = new ArrayList<>();
+    private boolean hasErrors = false;
+    private boolean hasNotices = false;
+
+    /**
+     * A single error or notice, without a position when the line is -1
+     */
+    private static class Report {
+
+        private final boolean isError;
+        private final String message;
+        private final int line;
+        private final int character;
+
+        Report(boolean isError, String message, int line, int character) {
+            this.isError = isError;
+            this.message = message;
+            this.line = line;
+            this.character = character;
+        }
+
+        void replayTo(ErrorReporter reporter) {
+            if (isError && line < 0) {
+                reporter.error(message);
+            } else if (isError) {
+                reporter.error(message, line, character);
+            } else if (line < 0) {
+                reporter.notice(message);
+            } else {
+                reporter.notice(message, line, character);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasErrors() {
+        return hasErrors;
+    }
+
+    @Override
+    public boolean hasNotices() {
+        return hasNotices;
+    }
+
+    @Override
+    public void notice(String message) {
+        hasNotices = true;
+        reports.add(new Report(false, message, -1, -1));
+    }
+
+    @Override
+    public void notice(String message, int line, int character) {
+        hasNotices = true;
+        reports.add(new Report(false, message, line, character));
+    }
+
+    @Override
+    public void error(String message) {
+        hasErrors = true;
+        reports.add(new Report(true, message, -1, -1));
+    }
+
+    @Override
+    public void error(String message, int line, int character) {
+        hasErrors = true;
+        reports.add(new Report(true, message, line, character));
+    }
+
+    /**
+     * Pass everything reported so far on to another reporter, in the order it was reported
+     */
+    void replayTo(ErrorReporter reporter) {
+        reports.forEach(report -> report.replayTo(reporter));
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(reports.size());
+
+        for (Report report : reports) {
+            out.writeBoolean(report.isError);
+            out.writeUTF(report.message);
+            out.writeInt(report.line);
+            out.writeInt(report.character);
+        }
+    }
+
+    /**
+     * Read back the reports written by {@link #writeTo}
+     */
+    static BufferedErrorReporter readFrom(DataInput in) throws IOException {
+        BufferedErrorReporter reporter = new BufferedErrorReporter();
+        int count = in.readInt();
+
+        for (int i = 0; i < count; i++) {
+            Report report = new Report(in.readBoolean(), in.readUTF(), in.readInt(), in.readInt());
+            reporter.hasErrors |= report.isError;
+            reporter.hasNotices |= !report.isError;
+            reporter.reports.add(report);
+        }
+        return reporter;
+    }
+}
@@ -0,0 +1,236 @@
+package towel;
+
+import towel.ast.Program;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Keeps each file's analysed program on disk, so a file which hasn't changed isn't lexed, parsed or analysed again
+ * <p>
+ * Entries are keyed by a hash of the file's contents, the build of the compiler and everything else analysing a file
+ * depends on. A file's own program doesn't depend on what it imports, imports are put in place afterwards, so only the
+ * files which changed are processed again. The exception is the names lets from other files may bind, a file analysed
+ * knowing about some of them is cached under a key of its own. Anything going wrong with an entry just means the file
+ * isn't cached.
+ * </p>
+ */
+class ModuleCache {
+
+    /**
+     * Changed whenever what's written to the cache changes in a way the compiler's build wouldn't
+     */
+    private final static String FORMAT = "towel-module-2";
+
+    /**
+     * Null if the build of the compiler couldn't be identified, in which case nothing is cached
+     */
+    private final static String COMPILER_VERSION = findCompilerVersion();
+
+    private final Path directory;
+    private final int optimisationLevel;
+
+    /**
+     * A file's analysed program, along with the notices reported while analysing it and what it found out about lets
+     * binding names across files
+     */
+    static class Module {
+
+        private final Program program;
+        private final BufferedErrorReporter reporter;
+        private final Set<String> letsInSequences;
+        private final Set<String> reliedOn;
+
+        Module(Program program, BufferedErrorReporter reporter, Set<String> letsInSequences, Set<String> reliedOn) {
+            this.program = Objects.requireNonNull(program);
+            this.reporter = Objects.requireNonNull(reporter);
+            this.letsInSequences = Objects.requireNonNull(letsInSequences);
+            this.reliedOn = Objects.requireNonNull(reliedOn);
+        }
+
+        Program getProgram() {
+            return program;
+        }
+
+        BufferedErrorReporter getReporter() {
+            return reporter;
+        }
+
+        Set<String> getLetsInSequences() {
+            return letsInSequences;
+        }
+
+        Set<String> getReliedOn() {
+            return reliedOn;
+        }
+    }
+
+    ModuleCache(Path directory, int optimisationLevel) {
+        this.directory = Objects.requireNonNull(directory);
+        this.optimisationLevel = optimisationLevel;
+    }
+
+    /**
+     * @param source      the contents of the file, which is left as it is
+     * @param foreignLets the names lets from other files are known to bind, which the file is analysed knowing
+     * @return the key for the file, or null if it can't be cached
+     */
+    String getKey(ByteBuffer source, String namespace, boolean isRoot, Set<String> foreignLets) {
+        if (COMPILER_VERSION == null) {
+            return null;
+        }
+
+        MessageDigest digest = newDigest();
+        digest.update(String.join("\0", COMPILER_VERSION, namespace, String.valueOf(optimisationLevel),
+                String.valueOf(isRoot), "").getBytes(StandardCharsets.UTF_8));
+
+        for (String name : new TreeSet<>(foreignLets)) {
+            digest.update((name + "\0").getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+        digest.update(source.duplicate());
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return the module cached for the key, or null if there isn't one
+     */
+    Module load(String key) {
+        Path file = directory.resolve(key);
+
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] header = new byte[contents.getInt()];
+            contents.get(header);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+            BufferedErrorReporter reporter = BufferedErrorReporter.readFrom(in);
+            Set<String> letsInSequences = readNames(in);
+            Set<String> reliedOn = readNames(in);
+
+            return new Module(new ProgramReader(contents).read(), reporter, letsInSequences, reliedOn);
+        } catch (IOException | RuntimeException e) {
+            // a damaged entry is replaced once the file has been processed again
+            return null;
+        }
+    }
+
+    /**
+     * Write the entry to a file of its own first, so a run reading the cache at the same time never sees part of it
+     */
+    void store(String key, Module module) {
+        Path temporary = null;
+
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, key, ".tmp");
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream headerOut = new DataOutputStream(header);
+            module.reporter.writeTo(headerOut);
+            writeNames(headerOut, module.letsInSequences);
+            writeNames(headerOut, module.reliedOn);
+            ByteBuffer program = new ProgramWriter().write(module.program);
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(header.size());
+                header.writeTo(out);
+                out.write(program.array(), program.position(), program.remaining());
+            }
+            Files.move(temporary, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the file is just processed again next time
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException e) {
+                    // left behind, it's never read
+                }
+            }
+        }
+    }
+
+    private static void writeNames(DataOutputStream out, Set<String> names) throws IOException {
+        out.writeInt(names.size());
+
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    private static Set<String> readNames(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Set<String> names = new HashSet<>();
+
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+
+    /**
+     * Identify the build of the compiler from the size and modification time of each of its class files, or its jar
+     */
+    private static String findCompilerVersion() {
+        CodeSource codeSource = ModuleCache.class.getProtectionDomain().getCodeSource();
+
+        if (codeSource == null) {
+            return null;
+        }
+
+        MessageDigest digest = newDigest();
+        digest.update(FORMAT.getBytes(StandardCharsets.UTF_8));
+
+        try (Stream<Path> files = Files.walk(Paths.get(codeSource.getLocation().toURI()))) {
+            Iterator<Path> sorted = files.filter(Files::isRegularFile).sorted().iterator();
+
+            while (sorted.hasNext()) {
+                Path file = sorted.next();
+                String entry = String.join("\0", file.toString(), String.valueOf(Files.size(file)),
+                        String.valueOf(Files.getLastModifiedTime(file).toMillis()), "");
+                digest.update(entry.getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            return null;
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support it
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
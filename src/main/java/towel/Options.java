@@ -1,5 +1,8 @@
 package towel;
 
+import towel.interpreter.Interpreter;
+import towel.pass.StaticPass;
+
 import java.io.PrintStream;
 
 /**
@@ -15,6 +18,15 @@ class Options {
     private final PrintStream outputStream;
     private boolean parsed = false;
     private boolean generateStdLibraryMap = false;
+    private Interpreter.Engine engine = Interpreter.Engine.AST;
+    private boolean validEngine = true;
+    private int optimisationLevel = StaticPass.NO_OPTIMISATION;
+    private boolean validOptimisationLevel = true;
+    private int maxCallDepth = Interpreter.DEFAULT_MAX_CALL_DEPTH;
+    private boolean validMaxCallDepth = true;
+    private int compileThreshold = Interpreter.DEFAULT_COMPILE_THRESHOLD;
+    private boolean validCompileThreshold = true;
+    private String cacheDirectory = null;
 
     Options(String[] args, PrintStream outputStream) {
         this.args = args;
@@ -34,6 +46,16 @@ class Options {
                 tabChar = arg.substring(11);
             } else if (arg.indexOf("--suppress-notices") == 0) {
                 suppressNotices = true;
+            } else if (arg.indexOf("--engine=") == 0) {
+                parseEngine(arg.substring(9));
+            } else if (arg.indexOf("--optimise=") == 0) {
+                parseOptimisationLevel(arg.substring(11));
+            } else if (arg.indexOf("--max-call-depth=") == 0) {
+                parseMaxCallDepth(arg.substring(17));
+            } else if (arg.indexOf("--compile-threshold=") == 0) {
+                parseCompileThreshold(arg.substring(20));
+            } else if (arg.indexOf("--cache-dir=") == 0) {
+                cacheDirectory = arg.substring(12);
             } else if (argIndex == 0) {
                 filename = arg;
             }
@@ -42,9 +64,46 @@ class Options {
         }
     }
 
+    private void parseEngine(String name) {
+        try {
+            engine = Interpreter.Engine.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            validEngine = false;
+        }
+    }
+
+    private void parseOptimisationLevel(String level) {
+        try {
+            optimisationLevel = Integer.parseInt(level);
+            validOptimisationLevel = optimisationLevel >= StaticPass.NO_OPTIMISATION
+                    && optimisationLevel <= StaticPass.ELIMINATE_DEAD_CODE;
+        } catch (NumberFormatException e) {
+            validOptimisationLevel = false;
+        }
+    }
+
+    private void parseMaxCallDepth(String depth) {
+        try {
+            maxCallDepth = Integer.parseInt(depth);
+            validMaxCallDepth = maxCallDepth > 0;
+        } catch (NumberFormatException e) {
+            validMaxCallDepth = false;
+        }
+    }
+
+    private void parseCompileThreshold(String threshold) {
+        try {
+            compileThreshold = Integer.parseInt(threshold);
+            validCompileThreshold = compileThreshold > 0;
+        } catch (NumberFormatException e) {
+            validCompileThreshold = false;
+        }
+    }
+
     public boolean valid() {
         assertParsed();
-        return filename != null;
+        return filename != null && validEngine && validOptimisationLevel && validMaxCallDepth
+                && validCompileThreshold;
     }
 
     public boolean printAst() {
@@ -67,6 +126,34 @@ class Options {
         return suppressNotices;
     }
 
+    public Interpreter.Engine getEngine() {
+        assertParsed();
+        return engine;
+    }
+
+    public int getOptimisationLevel() {
+        assertParsed();
+        return optimisationLevel;
+    }
+
+    public int getMaxCallDepth() {
+        assertParsed();
+        return maxCallDepth;
+    }
+
+    public int getCompileThreshold() {
+        assertParsed();
+        return compileThreshold;
+    }
+
+    /**
+     * @return the directory to cache analysed files in, or null if they shouldn't be cached
+     */
+    public String getCacheDirectory() {
+        assertParsed();
+        return cacheDirectory;
+    }
+
     public boolean generateStdLibraryMap() {
         assertParsed();
         return generateStdLibraryMap;
@@ -88,5 +175,21 @@ class Options {
         outputStream.println("\tDefaults to a tab.");
         outputStream.println("--suppress-notices");
         outputStream.println("\tDon't display notices.");
+        outputStream.println("--engine=ENGINE");
+        outputStream.println("\tExecute using the given engine, either 'ast', 'closure', 'bytecode', 'jvm' or 'tiered'.");
+        outputStream.println("\tDefaults to 'ast'.");
+        outputStream.println("--optimise=LEVEL");
+        outputStream.println("\tOptimise the program before it's executed, either 0 (none), 1 (fold constants),");
+        outputStream.println("\t2 (also inline small functions) or 3 (also remove unused code and imports).");
+        outputStream.println("\tDefaults to 0.");
+        outputStream.println("--max-call-depth=DEPTH");
+        outputStream.println("\tFail if calls to functions are nested deeper than this.");
+        outputStream.println("\tDefaults to " + Interpreter.DEFAULT_MAX_CALL_DEPTH + ".");
+        outputStream.println("--compile-threshold=CALLS");
+        outputStream.println("\tWith the 'tiered' engine, compile a function once it has run this many times.");
+        outputStream.println("\tDefaults to " + Interpreter.DEFAULT_COMPILE_THRESHOLD + ".");
+        outputStream.println("--cache-dir=DIR");
+        outputStream.println("\tKeep each file once it's been analysed in this directory, and only analyse it again");
+        outputStream.println("\tonce it changes. Nothing is cached by default.");
     }
 }
@@ -0,0 +1,346 @@
+package towel;
+
+import towel.ast.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static towel.ProgramWriter.*;
+
+/**
+ * Put a program written by {@link ProgramWriter} back together
+ * <p>
+ * Anything unexpected in what's read fails with an exception, either an IOException or whatever reading it caused.
+ * </p>
+ */
+class ProgramReader {
+
+    private final static Token.TokenType[] types = Token.TokenType.values();
+
+    private final ByteBuffer in;
+    private final List<Node> nodes = new ArrayList<>();
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Class> classes = new HashMap<>();
+
+    /**
+     * @param in read from its position onwards
+     */
+    ProgramReader(ByteBuffer in) {
+        this.in = Objects.requireNonNull(in);
+    }
+
+    Program read() throws IOException {
+        Node node = readNode();
+
+        if (!(node instanceof Program)) {
+            throw new IOException("Expected a program");
+        }
+        return (Program) node;
+    }
+
+    private Node readNode() throws IOException {
+        byte tag = in.get();
+
+        if (tag == REFERENCE) {
+            return nodes.get(in.getInt());
+        }
+
+        Node node;
+
+        switch (tag) {
+            case PROGRAM:
+                node = readProgram();
+                break;
+            case LITERAL:
+                node = readLiteral();
+                break;
+            case BINARY_OPERATOR:
+                node = readBinaryOperator();
+                break;
+            case CONDITION:
+                node = readCondition();
+                break;
+            case COMPARISON:
+                node = readComparison();
+                break;
+            case SEQUENCE:
+                node = readSequence();
+                break;
+            case FUNCTION:
+                node = readFunction();
+                break;
+            case IDENTIFIER:
+                node = readIdentifier();
+                break;
+            case IMPORT:
+                node = readImport();
+                break;
+            case LET:
+                node = readLet();
+                break;
+            case ARRAY:
+                node = readArray();
+                break;
+            default:
+                throw new IOException("Unknown node " + tag);
+        }
+
+        nodes.add(node);
+        return node;
+    }
+
+    private Node[] readNodes() throws IOException {
+        Node[] read = new Node[in.getInt()];
+
+        for (int i = 0; i < read.length; i++) {
+            read[i] = readNode();
+        }
+        return read;
+    }
+
+    private Program readProgram() throws IOException {
+        List<Node> programNodes = new ArrayList<>(Arrays.asList(readNodes()));
+        List<Import> imports = new ArrayList<>();
+
+        for (Node node : readNodes()) {
+            imports.add((Import) node);
+        }
+
+        Program program = new Program(readString(), programNodes, imports);
+
+        if (!readBoolean()) {
+            program.notRootNode();
+        }
+
+        if (readBoolean()) {
+            program.setProgramType(Program.ProgramType.INTERNAL);
+        }
+        return program;
+    }
+
+    private Literal readLiteral() throws IOException {
+        Literal literal = new Literal(readToken());
+
+        if (readBoolean()) {
+            literal.markVerified();
+        }
+        return literal;
+    }
+
+    private BinaryOperator readBinaryOperator() throws IOException {
+        BinaryOperator operator = new BinaryOperator(readToken());
+
+        if (readBoolean()) {
+            operator.markVerified();
+        }
+        return operator;
+    }
+
+    private Comparison readComparison() throws IOException {
+        Comparison comparison = new Comparison(readToken());
+
+        if (readBoolean()) {
+            comparison.markVerified();
+        }
+        return comparison;
+    }
+
+    private Condition readCondition() throws IOException {
+        Sequence thenBranch = null;
+        Sequence elseBranch = null;
+
+        if (readBoolean()) {
+            thenBranch = (Sequence) readNode();
+            elseBranch = (Sequence) readNode();
+        }
+
+        Condition condition = new Condition(readToken());
+
+        if (readBoolean()) {
+            condition.markVerified();
+        }
+
+        if (thenBranch != null) {
+            condition.setBranches(thenBranch, elseBranch);
+        }
+        return condition;
+    }
+
+    private Sequence readSequence() throws IOException {
+        Node[] sequenceNodes = readNodes();
+        Sequence sequence = new Sequence(readToken(), sequenceNodes);
+
+        if (readBoolean()) {
+            sequence.markVerified();
+        }
+
+        if (readBoolean()) {
+            sequence.markBranch();
+        }
+        return sequence;
+    }
+
+    private Function readFunction() throws IOException {
+        Node[] body = readNodes();
+        Token token = readToken();
+        boolean isVerified = readBoolean();
+        Function function = new Function(token, readBoolean(), body, readClasses(), readClasses());
+
+        if (isVerified) {
+            function.markVerified();
+        }
+        function.setSlotCount(in.getInt());
+        return function;
+    }
+
+    private Identifier readIdentifier() throws IOException {
+        Token token = readToken();
+        boolean isVerified = readBoolean();
+        Identifier identifier = new Identifier(token, readBoolean() ? readToken() : null);
+
+        if (isVerified) {
+            identifier.markVerified();
+        }
+        identifier.setName(readString());
+
+        if (readBoolean()) {
+            identifier.markResultVerified();
+        }
+        identifier.setSlot(in.getInt());
+        return identifier;
+    }
+
+    private Import readImport() throws IOException {
+        Token token = readToken();
+        boolean isVerified = readBoolean();
+        String namespace = readString();
+        String[] target = readStrings();
+        Import importNode = new Import(token, namespace, target != null && target.length == 0 ? Import.NO_TARGET : target, readString());
+
+        if (isVerified) {
+            importNode.markVerified();
+        }
+
+        String[] usedNames = readStrings();
+
+        if (usedNames != null) {
+            importNode.setUsedNames(new HashSet<>(Arrays.asList(usedNames)));
+        }
+
+        if (readBoolean()) {
+            importNode.markUnused();
+        }
+        return importNode;
+    }
+
+    private Let readLet() throws IOException {
+        Token token = readToken();
+        boolean isVerified = readBoolean();
+        Let let = new Let(token, readBoolean());
+
+        if (isVerified) {
+            let.markVerified();
+        }
+        let.setName(readString());
+        let.setSlot(in.getInt());
+        return let;
+    }
+
+    private Array readArray() throws IOException {
+        Token token = readToken();
+        boolean isVerified = readBoolean();
+        Object[] contents = new Object[in.getInt()];
+
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = readValue();
+        }
+
+        Array array = new Array(token, contents.length == 0 ? Array.EMPTY : contents);
+
+        if (isVerified) {
+            array.markVerified();
+        }
+        return array;
+    }
+
+    private Token readToken() throws IOException {
+        Token.TokenType type = types[in.get()];
+        return Token.create(type, readString(), readValue(), in.getInt(), in.getInt(), in.getInt());
+    }
+
+    private Object readValue() throws IOException {
+        byte tag = in.get();
+
+        switch (tag) {
+            case NULL_VALUE:
+                return null;
+            case NUMBER_VALUE:
+                return in.getDouble();
+            case STRING_VALUE:
+                return readString();
+            case BOOLEAN_VALUE:
+                return readBoolean();
+            default:
+                throw new IOException("Unknown literal " + tag);
+        }
+    }
+
+    private Class[] readClasses() throws IOException {
+        Class[] read = new Class[in.getInt()];
+
+        for (int i = 0; i < read.length; i++) {
+            read[i] = readClass(readString());
+        }
+        return read;
+    }
+
+    private Class readClass(String name) throws IOException {
+        Class type = classes.get(name);
+
+        if (type == null) {
+            try {
+                type = Class.forName(name, false, ProgramReader.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+            classes.put(name, type);
+        }
+        return type;
+    }
+
+    private String[] readStrings() {
+        int length = in.getInt();
+
+        if (length == NULL_STRING) {
+            return null;
+        }
+
+        String[] read = new String[length];
+
+        for (int i = 0; i < length; i++) {
+            read[i] = readString();
+        }
+        return read;
+    }
+
+    private String readString() {
+        int index = in.getInt();
+
+        if (index == NULL_STRING) {
+            return null;
+        }
+
+        if (index == strings.size()) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            strings.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return strings.get(index);
+    }
+
+    private boolean readBoolean() {
+        return in.get() != 0;
+    }
+}
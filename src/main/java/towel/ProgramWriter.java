@@ -0,0 +1,328 @@
+package towel;
+
+import towel.ast.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Write out an analysed program compactly, so {@link ProgramReader} can put it back together without parsing it
+ * <p>
+ * Each node is written once and referred to by its index after that, nodes are numbered once everything within them
+ * has been written as that's when they can be created again. Everything static analysis set on the nodes is kept,
+ * what the interpreter attaches to them isn't. Strings are only written the first time they're used.
+ * </p>
+ */
+class ProgramWriter implements NodeVisitor<Void> {
+
+    final static byte PROGRAM = 0;
+    final static byte LITERAL = 1;
+    final static byte BINARY_OPERATOR = 2;
+    final static byte CONDITION = 3;
+    final static byte COMPARISON = 4;
+    final static byte SEQUENCE = 5;
+    final static byte FUNCTION = 6;
+    final static byte IDENTIFIER = 7;
+    final static byte IMPORT = 8;
+    final static byte LET = 9;
+    final static byte ARRAY = 10;
+    final static byte REFERENCE = 11;
+
+    final static byte NULL_VALUE = 0;
+    final static byte NUMBER_VALUE = 1;
+    final static byte STRING_VALUE = 2;
+    final static byte BOOLEAN_VALUE = 3;
+
+    final static int NULL_STRING = -1;
+
+    private byte[] out = new byte[8192];
+    private int size = 0;
+    private final Map<Node, Integer> written = new IdentityHashMap<>();
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    /**
+     * @return the written program, from the start of the buffer to its limit
+     */
+    ByteBuffer write(Program program) throws IOException {
+        try {
+            writeNode(program);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return ByteBuffer.wrap(out, 0, size);
+    }
+
+    private void writeNode(Node node) {
+        Integer index = written.get(node);
+
+        if (index != null) {
+            writeByte(REFERENCE);
+            writeInt(index);
+            return;
+        }
+
+        node.accept(this);
+        written.put(node, written.size());
+    }
+
+    private void writeNodes(List<? extends Node> nodes) {
+        writeInt(nodes.size());
+
+        for (Node node : nodes) {
+            writeNode(node);
+        }
+    }
+
+    private void writeNodes(Node[] nodes) {
+        writeInt(nodes.length);
+
+        for (Node node : nodes) {
+            writeNode(node);
+        }
+    }
+
+    @Override
+    public Void visit(Program programNode) {
+        writeByte(PROGRAM);
+        writeNodes(programNode.getNodes());
+        writeNodes(programNode.getImports());
+        writeString(programNode.getNamespace());
+        writeBoolean(programNode.isRootNode());
+        writeBoolean(programNode.isInternal());
+        return null;
+    }
+
+    @Override
+    public Void visit(Literal literalNode) {
+        writeByte(LITERAL);
+        writeToken(literalNode.getToken());
+        writeBoolean(literalNode.isVerified());
+        return null;
+    }
+
+    @Override
+    public Void visit(BinaryOperator binaryOperatorNode) {
+        writeByte(BINARY_OPERATOR);
+        writeToken(binaryOperatorNode.getToken());
+        writeBoolean(binaryOperatorNode.isVerified());
+        return null;
+    }
+
+    @Override
+    public Void visit(Condition conditionNode) {
+        writeByte(CONDITION);
+        writeBoolean(conditionNode.hasBranches());
+
+        if (conditionNode.hasBranches()) {
+            writeNode(conditionNode.getThenBranch());
+            writeNode(conditionNode.getElseBranch());
+        }
+
+        writeToken(conditionNode.getToken());
+        writeBoolean(conditionNode.isVerified());
+        return null;
+    }
+
+    @Override
+    public Void visit(Comparison comparisonNode) {
+        writeByte(COMPARISON);
+        writeToken(comparisonNode.getToken());
+        writeBoolean(comparisonNode.isVerified());
+        return null;
+    }
+
+    @Override
+    public Void visit(Sequence sequenceNode) {
+        writeByte(SEQUENCE);
+        writeNodes(sequenceNode.getNodes());
+        writeToken(sequenceNode.getToken());
+        writeBoolean(sequenceNode.isVerified());
+        writeBoolean(sequenceNode.isBranch());
+        return null;
+    }
+
+    @Override
+    public Void visit(Function functionNode) {
+        writeByte(FUNCTION);
+        writeNodes(functionNode.getBody());
+        writeToken(functionNode.getToken());
+        writeBoolean(functionNode.isVerified());
+        writeBoolean(functionNode.isPublic());
+        writeClasses(functionNode.getPreConditions());
+        writeClasses(functionNode.getPostConditions());
+        writeInt(functionNode.getSlotCount());
+        return null;
+    }
+
+    @Override
+    public Void visit(Identifier identifierNode) {
+        writeByte(IDENTIFIER);
+        writeToken(identifierNode.getToken());
+        writeBoolean(identifierNode.isVerified());
+        writeBoolean(identifierNode.isNamespaced());
+
+        if (identifierNode.isNamespaced()) {
+            writeToken(identifierNode.getNamespaceToken());
+        }
+
+        writeString(identifierNode.getName());
+        writeBoolean(identifierNode.isResultVerified());
+        writeInt(identifierNode.getSlot());
+        return null;
+    }
+
+    @Override
+    public Void visit(Import importNode) {
+        writeByte(IMPORT);
+        writeToken(importNode.getToken());
+        writeBoolean(importNode.isVerified());
+        writeString(importNode.getNamespace());
+        writeStrings(importNode.getTarget());
+        writeString(importNode.getAlias());
+
+        Set<String> usedNames = importNode.getUsedNames();
+        writeStrings(usedNames == null ? null : usedNames.toArray(new String[0]));
+        writeBoolean(importNode.isUnused());
+        return null;
+    }
+
+    @Override
+    public Void visit(Let letNode) {
+        writeByte(LET);
+        writeToken(letNode.getToken());
+        writeBoolean(letNode.isVerified());
+        writeBoolean(letNode.isPublic());
+        writeString(letNode.getName());
+        writeInt(letNode.getSlot());
+        return null;
+    }
+
+    @Override
+    public Void visit(Array arrayNode) {
+        writeByte(ARRAY);
+        writeToken(arrayNode.getToken());
+        writeBoolean(arrayNode.isVerified());
+
+        Object[] contents = arrayNode.getContents();
+        writeInt(contents.length);
+
+        for (Object value : contents) {
+            writeValue(value);
+        }
+        return null;
+    }
+
+    private void writeToken(Token token) {
+        writeByte((byte) token.getType().ordinal());
+        writeString(token.getLexeme());
+        writeValue(token.getLiteral());
+        writeInt(token.getLine());
+        writeInt(token.getCharacter());
+        writeInt(token.getPosition());
+    }
+
+    /**
+     * Literal values are the same few types everywhere, anything else can't be cached
+     */
+    private void writeValue(Object value) {
+        if (value == null) {
+            writeByte(NULL_VALUE);
+        } else if (value instanceof Double) {
+            writeByte(NUMBER_VALUE);
+            writeLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof String) {
+            writeByte(STRING_VALUE);
+            writeString((String) value);
+        } else if (value instanceof Boolean) {
+            writeByte(BOOLEAN_VALUE);
+            writeBoolean((Boolean) value);
+        } else {
+            throw new UncheckedIOException(
+                    new IOException("Can't write a literal of type " + value.getClass().getName()));
+        }
+    }
+
+    private void writeClasses(Class[] classes) {
+        writeInt(classes.length);
+
+        for (Class type : classes) {
+            writeString(type.getName());
+        }
+    }
+
+    private void writeStrings(String[] values) {
+        if (values == null) {
+            writeInt(NULL_STRING);
+            return;
+        }
+
+        writeInt(values.length);
+
+        for (String value : values) {
+            writeString(value);
+        }
+    }
+
+    /**
+     * Written as its index, followed by the string itself the first time it's used
+     */
+    private void writeString(String value) {
+        if (value == null) {
+            writeInt(NULL_STRING);
+            return;
+        }
+
+        Integer index = strings.get(value);
+
+        if (index != null) {
+            writeInt(index);
+            return;
+        }
+
+        index = strings.size();
+        strings.put(value, index);
+        writeInt(index);
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        reserve(bytes.length);
+        System.arraycopy(bytes, 0, out, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void writeByte(byte value) {
+        reserve(1);
+        out[size++] = value;
+    }
+
+    private void writeBoolean(boolean value) {
+        writeByte((byte) (value ? 1 : 0));
+    }
+
+    private void writeInt(int value) {
+        reserve(4);
+        out[size++] = (byte) (value >>> 24);
+        out[size++] = (byte) (value >>> 16);
+        out[size++] = (byte) (value >>> 8);
+        out[size++] = (byte) value;
+    }
+
+    private void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void reserve(int length) {
+        if (size + length > out.length) {
+            out = Arrays.copyOf(out, Math.max(out.length * 2, size + length));
+        }
+    }
+}
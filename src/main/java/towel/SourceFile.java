@@ -2,9 +2,10 @@ package towel;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Objects;
 
 /**
@@ -37,10 +38,19 @@ class SourceFile {
         return getName().replace(".twl", "");
     }
 
-    String readAllContents() throws IOException {
+    /**
+     * Map the file into memory, so that it's lexed straight from the file rather than being read onto the heap first
+     */
+    ByteBuffer map() throws IOException {
         assertFile();
-        byte[] encoded = Files.readAllBytes(filePath);
-        return new String(encoded, Charset.forName("utf-8"));
+
+        // the mapping stays valid once the channel is closed
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(String.format("File %s is too large.", getPathString()));
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
     }
 
     private String getPathString() {
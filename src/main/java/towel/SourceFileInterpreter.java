@@ -2,23 +2,27 @@ package towel;
 
 import towel.ast.Import;
 import towel.ast.Program;
-import towel.ast.Token;
 import towel.interpreter.ImportNodeResolver;
 import towel.interpreter.Interpreter;
 import towel.interpreter.NamespaceLoader;
 import towel.interpreter.NativeNamespaceLoader;
 import towel.parser.Lexer;
 import towel.parser.Parser;
+import towel.pass.ForeignLets;
 import towel.pass.StaticPass;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Run the full 'pipeline' on a single source file
@@ -40,16 +44,76 @@ public class SourceFileInterpreter {
     private final static String STD_LIB_PATH = Paths.get("src/main/resources/standard-lib/").toAbsolutePath().toString();
     private Map<SourceFile, Program> parsedFiles = new HashMap<>();
 
+    /**
+     * Each file being lexed, parsed and analysed, which happens for every file at once on the fork join pool
+     */
+    private final Map<SourceFile, ForkJoinTask<ParsedFile>> parsing = new ConcurrentHashMap<>();
+
+    /**
+     * Null unless a cache directory was given
+     */
+    private final ModuleCache moduleCache;
+
     private class ProgramError extends RuntimeException {
         ProgramError() {
         }
     }
 
+    /**
+     * A single file once it's been processed on its own, along with what it reported
+     */
+    private static class ParsedFile {
+
+        private final BufferedErrorReporter reporter;
+
+        /**
+         * Null if processing it failed
+         */
+        private Program program;
+        private IOException readError;
+
+        /**
+         * The names lets from other files were known to bind when the file was analysed, the names its own sequences
+         * may bind elsewhere, and those the analysis relied on nothing else binding
+         */
+        private Set<String> foreignLets = Collections.emptySet();
+        private Set<String> letsInSequences = Collections.emptySet();
+        private Set<String> reliedOn = Collections.emptySet();
+
+        /**
+         * The file each import resolved to, found as the file is parsed
+         */
+        private final Map<Import, ImportedFile> imports = new IdentityHashMap<>();
+
+        ParsedFile(BufferedErrorReporter reporter) {
+            this.reporter = reporter;
+        }
+    }
+
+    /**
+     * The source file an import resolved to, if any
+     */
+    private static class ImportedFile {
+
+        /**
+         * Null for an import implemented purely in Java, or when the file couldn't be opened
+         */
+        private final SourceFile file;
+        private final IOException openError;
+
+        ImportedFile(SourceFile file, IOException openError) {
+            this.file = file;
+            this.openError = openError;
+        }
+    }
+
     SourceFileInterpreter(PrintStream outputStream, Scanner scanner, ContextualErrorReporter reporter, Options options) {
         this.outputStream = Objects.requireNonNull(outputStream);
         this.reporter = Objects.requireNonNull(reporter);
         this.loader = new NativeNamespaceLoader(this.outputStream, Objects.requireNonNull(scanner));
         this.options = Objects.requireNonNull(options);
+        this.moduleCache = options.getCacheDirectory() == null ? null
+                : new ModuleCache(Paths.get(options.getCacheDirectory()), options.getOptimisationLevel());
     }
 
     public void interpret() throws IOException {
@@ -57,7 +121,10 @@ public class SourceFileInterpreter {
             SourceFile file = new SourceFile(Paths.get(options.getFilename()));
 
             dependencyGraph = new DependencyGraph(file.getName());
-            final Program program = createProgram(file);
+            parseAll(file);
+            reanalyseForeignLets(file);
+            final Program program = createProgram(file, true);
+            StaticPass.getWholeProgramPass(options.getOptimisationLevel()).performAnalysis(program);
 
             if (options.printAst()) {
                 printAst(options, program);
@@ -70,24 +137,221 @@ public class SourceFileInterpreter {
         }
     }
 
-    private Program createProgram(SourceFile sourceFile) throws IOException {
+    /**
+     * Lex, parse and analyse the root file and everything it imports, each file in parallel
+     * <p>
+     * Each file starts on the files it imports as soon as it has been parsed, before it's analysed. Nothing is
+     * reported here, that's left to {@link #createProgram} which goes through the results in order
+     * </p>
+     */
+    private void parseAll(SourceFile root) {
+        startParsing(root, true);
+
+        // a file only starts parsing others before its own parsing is done,
+        // so once every file known about is done there are no more to come
+        int done = 0;
+        while (done < parsing.size()) {
+            List<ForkJoinTask<ParsedFile>> tasks = new ArrayList<>(parsing.values());
+            tasks.forEach(ForkJoinTask::join);
+            done = tasks.size();
+        }
+    }
+
+    private void startParsing(SourceFile sourceFile, boolean isRoot) {
+        parsing.computeIfAbsent(sourceFile, file -> {
+            ForkJoinTask<ParsedFile> task = ForkJoinTask.adapt(() -> parse(file, isRoot, Collections.emptySet()));
+            ForkJoinPool.commonPool().execute(task);
+            return task;
+        });
+    }
+
+    /**
+     * Analyse again each file which relied on nothing else binding a name that a let within a sequence, from anywhere
+     * in the program, may bind
+     * <p>
+     * A sequence runs in the namespace of whatever executes it, and which lets are within sequences is only known once
+     * every file has been parsed. Files are first analysed as if nothing else binds their names, which is almost always
+     * so. A file analysed again may rely on names it didn't before, so this carries on until none do.
+     * </p>
+     */
+    private void reanalyseForeignLets(SourceFile root) {
+        Set<String> letsInSequences = new HashSet<>();
+
+        for (ForkJoinTask<ParsedFile> task : parsing.values()) {
+            letsInSequences.addAll(task.join().letsInSequences);
+        }
+
+        List<ForkJoinTask<ParsedFile>> reanalysing;
+
+        do {
+            reanalysing = new ArrayList<>();
+
+            for (Map.Entry<SourceFile, ForkJoinTask<ParsedFile>> entry : parsing.entrySet()) {
+                ParsedFile parsed = entry.getValue().join();
+
+                if (parsed.program == null || Collections.disjoint(parsed.reliedOn, letsInSequences)) {
+                    continue;
+                }
+
+                Set<String> foreignLets = new HashSet<>(parsed.reliedOn);
+                foreignLets.retainAll(letsInSequences);
+                foreignLets.addAll(parsed.foreignLets);
+
+                SourceFile file = entry.getKey();
+                boolean isRoot = file.equals(root);
+                ForkJoinTask<ParsedFile> task = ForkJoinTask.adapt(() -> parse(file, isRoot, foreignLets));
+                ForkJoinPool.commonPool().execute(task);
+
+                entry.setValue(task);
+                reanalysing.add(task);
+            }
+
+            reanalysing.forEach(ForkJoinTask::join);
+        } while (!reanalysing.isEmpty());
+    }
+
+    /**
+     * Run on the fork join pool, so errors are only held on to
+     * <p>
+     * When caching, a file that's been analysed before is loaded rather than analysed again. Only files without errors
+     * are cached, and their imports are resolved again each time as where they lead may have changed.
+     * </p>
+     *
+     * @param foreignLets the names lets from other files are known to bind
+     */
+    private ParsedFile parse(SourceFile sourceFile, boolean isRoot, Set<String> foreignLets) {
+        ByteBuffer source;
+
+        try {
+            source = sourceFile.map();
+        } catch (IOException e) {
+            ParsedFile parsed = new ParsedFile(new BufferedErrorReporter());
+            parsed.readError = e;
+            return parsed;
+        }
+
+        String key = moduleCache == null ? null
+                : moduleCache.getKey(source, sourceFile.getNamespace(), isRoot, foreignLets);
+        ModuleCache.Module cached = key == null ? null : moduleCache.load(key);
+
+        if (cached != null) {
+            ParsedFile parsed = new ParsedFile(cached.getReporter());
+            parsed.program = cached.getProgram();
+            parsed.foreignLets = foreignLets;
+            parsed.letsInSequences = cached.getLetsInSequences();
+            parsed.reliedOn = cached.getReliedOn();
+            startParsingImports(parsed, parsed.program, sourceFile);
+            return parsed;
+        }
+
+        ParsedFile parsed = new ParsedFile(new BufferedErrorReporter());
+        parsed.foreignLets = foreignLets;
+        Program program = Parser.getFor(Lexer.getFor(source, parsed.reporter), parsed.reporter,
+                sourceFile.getNamespace()).parse();
+
+        if (parsed.reporter.hasErrors()) {
+            return parsed;
+        }
+
+        startParsingImports(parsed, program, sourceFile);
+
+        // imported files are known not to be the root before they are analysed,
+        // as they may not start with an empty stack
+        if (!isRoot) {
+            program.notRootNode();
+        }
+        ForeignLets analysed = new ForeignLets(foreignLets);
+        StaticPass.getDefaultPass(parsed.reporter, options.getOptimisationLevel(), analysed).performAnalysis(program);
+
+        if (!parsed.reporter.hasErrors()) {
+            parsed.program = program;
+            parsed.letsInSequences = analysed.getLetsInSequences();
+            parsed.reliedOn = analysed.getReliedOn();
+
+            if (key != null) {
+                moduleCache.store(key, new ModuleCache.Module(program, parsed.reporter, parsed.letsInSequences,
+                        parsed.reliedOn));
+            }
+        }
+
+        return parsed;
+    }
+
+    private void startParsingImports(ParsedFile parsed, Program program, SourceFile sourceFile) {
+        for (Import importNode : program.getImports()) {
+            ImportedFile imported = resolveImport(importNode, sourceFile);
+            parsed.imports.put(importNode, imported);
+
+            if (imported.file != null) {
+                startParsing(imported.file, false);
+            }
+        }
+    }
+
+    private ImportedFile resolveImport(Import importNode, SourceFile rootFile) {
+        ImportNodeResolver adapter = ImportNodeResolver.wrap(importNode);
+
+        if (adapter.isExternal()) {
+            // External file import
+            // Always look relative to the directory of the file doing the import
+            try {
+                return new ImportedFile(
+                        new SourceFile(Paths.get(rootFile.getParentDirectory().toString(), adapter.getFileName())), null);
+            } catch (IOException e) {
+                return new ImportedFile(null, e);
+            }
+        }
+
+        // Internal import, so this could be either a pure Java import, or importing a file
+        // contained in the 'resources/standard-lib' directory. Java imports are handled
+        // purely in the interpreter
+        //
+        // This is for 'internal' libraries which are implemented as .twl files
+        Path pathToFile = Paths.get(STD_LIB_PATH, adapter.getFileName());
+        File libraryFile = new File(pathToFile.toString());
+
+        if (libraryFile.exists() && !libraryFile.isDirectory()) {
+            try {
+                return new ImportedFile(new SourceFile(pathToFile), null);
+            } catch (IOException e) {
+                return new ImportedFile(null, e);
+            }
+        }
+        return new ImportedFile(null, null);
+    }
+
+    /**
+     * Put together the program for a file, from the results of parsing it and what it imports
+     * <p>
+     * This goes through the files in the order they would have been parsed one at a time, reporting what was found
+     * while parsing each, so the errors are the same as they would be
+     * </p>
+     */
+    private Program createProgram(SourceFile sourceFile, boolean isRoot) throws IOException {
 
         if (parsedFiles.containsKey(sourceFile)) {
             return parsedFiles.get(sourceFile);
         }
 
         String filename = sourceFile.getName();
-        String source = sourceFile.readAllContents();
         reporter.setContext(filename);
 
-        Program program = runAstPipeline(source, sourceFile.getNamespace());
+        ParsedFile parsed = parsing.get(sourceFile).join();
+
+        if (parsed.readError != null) {
+            throw parsed.readError;
+        }
+        parsed.reporter.replayTo(reporter);
+        assertErrorFree();
+
+        Program program = parsed.program;
 
         List<Import> imports = program.getImports();
 
         for (Import importNode : imports) {
             int replacementLocation = program.getNodes().indexOf(importNode);
 
-            Program subProgram = parseImportIntoSubProgram(importNode, sourceFile);
+            Program subProgram = parseImportIntoSubProgram(importNode, parsed.imports.get(importNode), sourceFile);
 
             // Add the parsed imported code just before the Import
             // This allows the Interpreter to go through the AST in order, and
@@ -96,7 +360,6 @@ public class SourceFileInterpreter {
             // It can then package the parsed program node into a 'NamespaceLoader', which will handle
             // importing the names based on the import
             if (subProgram != null) {
-                subProgram.notRootNode();
                 program.getNodes().add(replacementLocation, subProgram);
             }
         }
@@ -108,7 +371,7 @@ public class SourceFileInterpreter {
         return program;
     }
 
-    private Program parseImportIntoSubProgram(Import importNode, SourceFile rootFile) throws IOException {
+    private Program parseImportIntoSubProgram(Import importNode, ImportedFile imported, SourceFile rootFile) throws IOException {
 
         Program subProgram = null;
 
@@ -117,32 +380,28 @@ public class SourceFileInterpreter {
         if (adapter.isExternal()) {
 
             // External file import
-            // Looks in the current directory for a file with a matching name
 
             reporter.setContext(adapter.getNamespace());
 
             assertNoCircularDependencies(rootFile.getName(), adapter.getNamespace());
 
-            // Create a new source file for the file name
-            // Always look relative to the current directory
-            SourceFile imported = new SourceFile(Paths.get(rootFile.getParentDirectory().toString(), adapter.getFileName()));
+            if (imported.openError != null) {
+                throw imported.openError;
+            }
 
-            subProgram = createProgram(imported);
+            subProgram = createProgram(imported.file, false);
         } else {
-            // Internal import, so this could be either a pure Java import, or importing a file
-            // contained in the 'resources/standard-lib' directory. Java imports are handled
-            // purely in the interpreter
-            //
-            // This part checks if it's a file in the resources directory, if it is
-            // it parses it into a Program node
-            //
-            // This is for 'internal' libraries which are implemented as .twl files
-
-            Path pathToFile = Paths.get(STD_LIB_PATH, adapter.getFileName());
+            // Internal import, either pure Java or a file in the 'resources/standard-lib' directory,
+            // which will have been parsed into a Program node
+
             reporter.setContext("Internal source file: " + adapter.getFileName());
-            File libraryFile = new File(pathToFile.toString());
-            if (libraryFile.exists() && !libraryFile.isDirectory()) {
-                subProgram = createProgram(new SourceFile(pathToFile));
+
+            if (imported.openError != null) {
+                throw imported.openError;
+            }
+
+            if (imported.file != null) {
+                subProgram = createProgram(imported.file, false);
                 subProgram.setProgramType(Program.ProgramType.INTERNAL);
             }
         }
@@ -171,35 +430,10 @@ public class SourceFileInterpreter {
         }
     }
 
-    private Program runAstPipeline(String source, String namespace) {
-        List<Token> tokens = lex(source);
-        Program program = parse(tokens, namespace);
-        analyze(program);
-
-        return program;
-    }
-
-    private List<Token> lex(String source) {
-        Lexer lexer = Lexer.getFor(source, reporter);
-        List<Token> tokens = lexer.tokenize();
-        assertErrorFree();
-        return tokens;
-    }
-
-    private void analyze(Program program) {
-        StaticPass.getDefaultPass(reporter).performAnalysis(program);
-        assertErrorFree();
-    }
-
-    private Program parse(List<Token> tokens, String namespace) {
-        Parser parser = Parser.getFor(tokens, reporter, namespace);
-        Program prog = parser.parse();
-        assertErrorFree();
-        return prog;
-    }
-
     private void runInterpreter(Program program) {
-        Interpreter interpreter = Interpreter.getFor(program, loader, reporter);
+        Interpreter interpreter = Interpreter.getFor(program, loader, reporter, options.getEngine());
+        interpreter.setMaxCallDepth(options.getMaxCallDepth());
+        interpreter.setCompileThreshold(options.getCompileThreshold());
         interpreter.interpret();
         assertErrorFree();
     }
@@ -6,10 +6,24 @@ abstract class BaseNode implements Node {
 
     private final Token token;
 
+    /**
+     * Set by static analysis once the stack has been proven to always meet this node's requirements, so they don't
+     * need checking when it is executed
+     */
+    private boolean verified = false;
+
     BaseNode(Token token) {
         this.token = Objects.requireNonNull(token);
     }
 
+    public void markVerified() {
+        verified = true;
+    }
+
+    public boolean isVerified() {
+        return verified;
+    }
+
     public String getLexeme() {
         return token.getLexeme();
     }
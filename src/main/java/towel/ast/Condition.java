@@ -5,10 +5,39 @@ package towel.ast;
  */
 public class Condition extends BaseNode {
 
+    /**
+     * The branches, when they are literal sequences pushed right before this
+     * <p>
+     * Set by static analysis, the sequences are then never pushed onto the stack, only the boolean is
+     * </p>
+     */
+    private Sequence thenBranch = null;
+    private Sequence elseBranch = null;
+
     public Condition(Token token) {
         super(token);
     }
 
+    /**
+     * @param elseBranch the 'else', or null for a single-branched condition
+     */
+    public void setBranches(Sequence thenBranch, Sequence elseBranch) {
+        this.thenBranch = thenBranch;
+        this.elseBranch = elseBranch;
+    }
+
+    public boolean hasBranches() {
+        return thenBranch != null;
+    }
+
+    public Sequence getThenBranch() {
+        return thenBranch;
+    }
+
+    public Sequence getElseBranch() {
+        return elseBranch;
+    }
+
     @Override
     public <T> T accept(NodeVisitor<T> visitor) {
         return visitor.visit(this);
@@ -10,6 +10,11 @@ public class Function extends BaseNode {
     private final Class[] postConditions;
     private final boolean isPublic;
 
+    /**
+     * Number of slots each call needs for its lets, set by static analysis
+     */
+    private int slotCount = 0;
+
     public Function(Token token, boolean isPublic, Node[] body, Class[] preConditions, Class[] postConditions) {
         super(token);
         this.isPublic = isPublic;
@@ -34,6 +39,14 @@ public class Function extends BaseNode {
         return postConditions;
     }
 
+    public void setSlotCount(int slotCount) {
+        this.slotCount = slotCount;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
     @Override
     public <T> T accept(NodeVisitor<T> visitor) {
         return visitor.visit(this);
@@ -5,6 +5,16 @@ public class Identifier extends BaseNode implements Renameable {
     private String lookupName = null;
     private final Token namespace;
 
+    /**
+     * Set by static analysis once the stack has been proven to meet the post-conditions of the function called
+     */
+    private boolean resultVerified = false;
+
+    /**
+     * Set by static analysis when this reads a let held in a slot of the function it's within
+     */
+    private int slot = -1;
+
     public Identifier(Token token, Token namespace) {
         super(token);
         this.namespace = namespace;
@@ -32,6 +42,26 @@ public class Identifier extends BaseNode implements Renameable {
         this.lookupName = lookupName;
     }
 
+    public void markResultVerified() {
+        resultVerified = true;
+    }
+
+    public boolean isResultVerified() {
+        return resultVerified;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public boolean hasSlot() {
+        return slot >= 0;
+    }
+
     @Override
     public String getOriginalName() {
         return getLexeme();
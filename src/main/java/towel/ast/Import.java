@@ -1,5 +1,7 @@
 package towel.ast;
 
+import java.util.Set;
+
 /**
  * An import
  * <p></p>
@@ -15,6 +17,17 @@ public class Import extends BaseNode {
     private final String alias;
     public final static String[] NO_TARGET = new String[0];
 
+    /**
+     * Set by static analysis of the whole program, the names to bind as they're used somewhere, or null for every
+     * name. For an import of a whole namespace these are the names within it.
+     */
+    private Set<String> usedNames = null;
+
+    /**
+     * Set by static analysis of the whole program when nothing is used from the imported file, so it isn't loaded
+     */
+    private boolean unused = false;
+
     public Import(Token keyword, String namespace, String targets[], String alias) {
         super(keyword);
         this.namespace = namespace;
@@ -34,6 +47,22 @@ public class Import extends BaseNode {
         return alias;
     }
 
+    public Set<String> getUsedNames() {
+        return usedNames;
+    }
+
+    public void setUsedNames(Set<String> usedNames) {
+        this.usedNames = usedNames;
+    }
+
+    public boolean isUnused() {
+        return unused;
+    }
+
+    public void markUnused() {
+        unused = true;
+    }
+
     @Override
     public <T> T accept(NodeVisitor<T> visitor) {
         return visitor.visit(this);
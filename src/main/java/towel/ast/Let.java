@@ -5,6 +5,11 @@ public class Let extends BaseNode implements Renameable {
     private String lookupName = null;
     private final boolean isPublic;
 
+    /**
+     * Set by static analysis when this binds a slot of the function it's within, rather than a name in a namespace
+     */
+    private int slot = -1;
+
     public Let(Token name, boolean isPublic) {
         super(name);
         this.isPublic = isPublic;
@@ -24,6 +29,18 @@ public class Let extends BaseNode implements Renameable {
         this.lookupName = lookupName;
     }
 
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public boolean hasSlot() {
+        return slot >= 0;
+    }
+
     @Override
     public String getOriginalName() {
         return getLexeme();
@@ -9,6 +9,11 @@ public class Sequence extends BaseNode {
 
     private final Node[] nodes;
 
+    /**
+     * Set by static analysis when this is a branch of the condition right after it, so isn't pushed onto the stack
+     */
+    private boolean branch = false;
+
     public Sequence(Token token, Node[] nodes) {
         super(token);
         this.nodes = nodes;
@@ -18,6 +23,14 @@ public class Sequence extends BaseNode {
         return nodes;
     }
 
+    public void markBranch() {
+        branch = true;
+    }
+
+    public boolean isBranch() {
+        return branch;
+    }
+
     @Override
     public <T> T accept(NodeVisitor<T> visitor) {
         return visitor.visit(this);
@@ -0,0 +1,358 @@
+package towel.interpreter;
+
+import towel.ast.*;
+
+import java.util.*;
+
+/**
+ * Lowers the AST into {@code Chunk}s of bytecode, for execution by the {@code BytecodeInterpreter}
+ * <p>
+ * Function bodies and sequences found while compiling are compiled eagerly, and cached against their node arrays
+ * so they can be found again when they are executed. Node arrays which were not part of the original AST, e.g. those
+ * created at runtime by 'curry', are compiled on demand and not cached.
+ * </p>
+ * <p>
+ * Common runs of nodes, e.g. {@code 1 -} or {@code dup 0 >}, are fused into a single superinstruction.
+ * </p>
+ */
+class BytecodeCompiler {
+
+    /**
+     * Compiled chunks, keyed by the node array they were compiled from
+     */
+    private final Map<Object, Chunk> compiled = new IdentityHashMap<>();
+
+    /**
+     * Compile the top-level nodes of a program
+     * <p>
+     * These are only executed once, so aren't cached
+     * </p>
+     */
+    Chunk compile(List<Node> nodes) {
+        return new ChunkBuilder().build(nodes);
+    }
+
+    /**
+     * Get the compiled form of the given nodes, e.g. a function body or a sequence
+     */
+    Chunk compile(Node[] nodes) {
+        Chunk chunk = compiled.get(nodes);
+
+        if (chunk == null) {
+            chunk = new ChunkBuilder().build(Arrays.asList(nodes));
+        }
+        return chunk;
+    }
+
+    /**
+     * Compile and cache the body of a function or sequence found in the AST
+     */
+    private void compileBody(Node[] nodes) {
+        if (!compiled.containsKey(nodes)) {
+            compiled.put(nodes, new ChunkBuilder().build(Arrays.asList(nodes)));
+        }
+    }
+
+    /**
+     * Builds a single chunk
+     */
+    private class ChunkBuilder implements NodeVisitor<Void> {
+
+        private int[] code = new int[16];
+        private int length = 0;
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> constantIndexes = new HashMap<>();
+
+        Chunk build(List<Node> nodes) {
+            emitNodes(nodes);
+
+            return new Chunk(Arrays.copyOf(code, length), constants.toArray());
+        }
+
+        private void emitNodes(List<Node> nodes) {
+            for (int i = 0; i < nodes.size(); i++) {
+                int fused = fuse(nodes, i);
+
+                if (fused > 0) {
+                    i += fused - 1;
+                } else {
+                    nodes.get(i).accept(this);
+                }
+            }
+        }
+
+        /**
+         * Emit a superinstruction for the nodes starting at the given index, if they form a run which can be fused
+         *
+         * @return the number of nodes fused, or 0 if none were
+         */
+        private int fuse(List<Node> nodes, int i) {
+            Node operator = nodeAt(nodes, i + 2);
+
+            if (isDup(nodes.get(i)) && isNumber(nodeAt(nodes, i + 1)) && isFusable(operator)) {
+                emit(operator instanceof Comparison ? OpCode.DUP_COMPARE_CONSTANT : OpCode.DUP_ARITHMETIC_CONSTANT, nodes.get(i));
+                emitOperand(operator);
+                emitOperand(((Literal) nodes.get(i + 1)).getToken().getLiteral());
+                return 3;
+            }
+
+            operator = nodeAt(nodes, i + 1);
+
+            if (isNumber(nodes.get(i)) && isFusable(operator)) {
+                emit(operator instanceof Comparison ? OpCode.COMPARE_CONSTANT : OpCode.ARITHMETIC_CONSTANT, operator);
+                emitOperand(((Literal) nodes.get(i)).getToken().getLiteral());
+                return 2;
+            }
+
+            return 0;
+        }
+
+        private Node nodeAt(List<Node> nodes, int i) {
+            return i < nodes.size() ? nodes.get(i) : null;
+        }
+
+        /**
+         * Whether the node calls 'dup', it's only assumed to be the standard library's until the instruction is run
+         */
+        private boolean isDup(Node node) {
+            return node instanceof Identifier
+                    && !((Identifier) node).isNamespaced()
+                    && ((Identifier) node).getName().equals("dup");
+        }
+
+        private boolean isNumber(Node node) {
+            return node instanceof Literal && ((Literal) node).getToken().getLiteral() instanceof Double;
+        }
+
+        /**
+         * Arithmetic and comparisons of numbers can be fused, '&&' and '||' can't be used with numbers so aren't
+         */
+        private boolean isFusable(Node node) {
+            if (node instanceof BinaryOperator) {
+                switch (((BinaryOperator) node).getTokenType()) {
+                    case PLUS:
+                    case MINUS:
+                    case STAR:
+                    case SLASH:
+                    case MOD:
+                        return true;
+                }
+            } else if (node instanceof Comparison) {
+                switch (((Comparison) node).getTokenType()) {
+                    case LESS_THAN:
+                    case LESS_THAN_EQUAL:
+                    case GREATER_THAN:
+                    case GREATER_THAN_EQUAL:
+                    case EQUAL_EQUAL:
+                    case NOT_EQUAL:
+                        return true;
+                }
+            }
+            return false;
+        }
+
+        private void emit(int opCode, Object constant) {
+            emitWord(OpCode.encode(opCode, constant(constant)));
+        }
+
+        /**
+         * Emit a further operand of a superinstruction
+         */
+        private void emitOperand(Object constant) {
+            emitWord(constant(constant));
+        }
+
+        private void emitWord(int word) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[length++] = word;
+        }
+
+        /**
+         * Add to the constant pool, returning its index
+         * <p>
+         * Values are de-duplicated, nodes don't override equals so they will only be
+         * de-duplicated against themselves
+         * </p>
+         */
+        private int constant(Object constant) {
+            Integer index = constantIndexes.get(constant);
+
+            if (index == null) {
+                index = constants.size();
+                constants.add(constant);
+                constantIndexes.put(constant, index);
+            }
+
+            return index;
+        }
+
+        /**
+         * Nodes which aren't worth lowering are evaluated by the tree-walking interpreter
+         */
+        private void evaluate(Node node) {
+            emit(OpCode.EVALUATE, node);
+        }
+
+        @Override
+        public Void visit(Program programNode) {
+            evaluate(programNode);
+            return null;
+        }
+
+        @Override
+        public Void visit(Literal literalNode) {
+            emit(OpCode.PUSH, literalNode.getToken().getLiteral());
+            return null;
+        }
+
+        @Override
+        public Void visit(BinaryOperator binaryOperatorNode) {
+            switch (binaryOperatorNode.getTokenType()) {
+                case PLUS:
+                    emit(OpCode.ADD, binaryOperatorNode);
+                    break;
+                case MINUS:
+                    emit(OpCode.SUBTRACT, binaryOperatorNode);
+                    break;
+                case STAR:
+                    emit(OpCode.MULTIPLY, binaryOperatorNode);
+                    break;
+                case SLASH:
+                    emit(OpCode.DIVIDE, binaryOperatorNode);
+                    break;
+                case MOD:
+                    emit(OpCode.MODULO, binaryOperatorNode);
+                    break;
+                default:
+                    // invalid, let the interpreter raise the error
+                    evaluate(binaryOperatorNode);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Condition conditionNode) {
+            if (conditionNode.hasBranches()) {
+                emitBranches(conditionNode);
+                return null;
+            }
+
+            switch (conditionNode.getTokenType()) {
+                case QUESTION_MARK:
+                    emit(OpCode.BRANCH, conditionNode);
+                    break;
+                case DOUBLE_QUESTION_MARK:
+                    emit(OpCode.BRANCH_SINGLE, conditionNode);
+                    break;
+                default:
+                    evaluate(conditionNode);
+            }
+            return null;
+        }
+
+        /**
+         * Compile literal branches in place, with jumps around them
+         */
+        private void emitBranches(Condition conditionNode) {
+            emit(OpCode.JUMP_IF_FALSE, conditionNode);
+            int falseTarget = length;
+            emitWord(0);
+
+            emitNodes(Arrays.asList(conditionNode.getThenBranch().getNodes()));
+
+            if (conditionNode.getElseBranch() == null) {
+                code[falseTarget] = length;
+                return;
+            }
+
+            int endJump = length;
+            emitWord(0);
+            code[falseTarget] = length;
+
+            emitNodes(Arrays.asList(conditionNode.getElseBranch().getNodes()));
+            code[endJump] = OpCode.encode(OpCode.JUMP, length);
+        }
+
+        @Override
+        public Void visit(Comparison comparisonNode) {
+            switch (comparisonNode.getTokenType()) {
+                case LESS_THAN:
+                    emit(OpCode.LESS_THAN, comparisonNode);
+                    break;
+                case LESS_THAN_EQUAL:
+                    emit(OpCode.LESS_THAN_EQUAL, comparisonNode);
+                    break;
+                case GREATER_THAN:
+                    emit(OpCode.GREATER_THAN, comparisonNode);
+                    break;
+                case GREATER_THAN_EQUAL:
+                    emit(OpCode.GREATER_THAN_EQUAL, comparisonNode);
+                    break;
+                case EQUAL_EQUAL:
+                    emit(OpCode.EQUAL, comparisonNode);
+                    break;
+                case NOT_EQUAL:
+                    emit(OpCode.NOT_EQUAL, comparisonNode);
+                    break;
+                case AND:
+                    emit(OpCode.AND, comparisonNode);
+                    break;
+                case OR:
+                    emit(OpCode.OR, comparisonNode);
+                    break;
+                default:
+                    evaluate(comparisonNode);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Sequence sequenceNode) {
+            // compiled in place by the condition after it
+            if (sequenceNode.isBranch()) {
+                return null;
+            }
+
+            compileBody(sequenceNode.getNodes());
+            emit(OpCode.PUSH, sequenceNode);
+            return null;
+        }
+
+        @Override
+        public Void visit(Function functionNode) {
+            compileBody(functionNode.getBody());
+            evaluate(functionNode);
+            return null;
+        }
+
+        @Override
+        public Void visit(Identifier identifierNode) {
+            emit(identifierNode.hasSlot() ? OpCode.LOAD_SLOT : OpCode.CALL, identifierNode);
+            return null;
+        }
+
+        @Override
+        public Void visit(Import importNode) {
+            evaluate(importNode);
+            return null;
+        }
+
+        @Override
+        public Void visit(Let letNode) {
+            if (letNode.hasSlot()) {
+                emit(OpCode.STORE_SLOT, letNode);
+            } else {
+                evaluate(letNode);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Array arrayNode) {
+            evaluate(arrayNode);
+            return null;
+        }
+    }
+}
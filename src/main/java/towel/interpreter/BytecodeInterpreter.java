@@ -0,0 +1,525 @@
+package towel.interpreter;
+
+import towel.ErrorReporter;
+import towel.ast.*;
+import towel.stdlib.stack.Duplicate;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interpreter which lowers the AST into bytecode, then executes it within a single dispatch loop
+ * <p>
+ * Only the frequently executed nodes are lowered into their own instructions, the rest (definitions, imports, etc.)
+ * are handed back to the tree-walking interpreter this extends, so both engines share the same semantics.
+ * </p>
+ * <p>
+ * Calls to user defined functions and branches don't recurse, they push a frame onto a call stack kept on the heap
+ * and carry on in the same loop. Recursion depth is only limited by memory and the maximum call depth, rather than
+ * the size of the Java stack.
+ * </p>
+ *
+ * @see BytecodeCompiler
+ * @see OpCode
+ */
+class BytecodeInterpreter extends ProgramInterpreter {
+
+    private final BytecodeCompiler compiler = new BytecodeCompiler();
+
+    /**
+     * The call stack, each frame holds the point to return to once the chunk it called has finished
+     * <p>
+     * Frames for calls to user defined functions also hold the namespace to return to, the number of
+     * post-conditions which were pending when the call was made and the start of the caller's window of slots.
+     * Frames for branches have no namespace.
+     * </p>
+     */
+    private Chunk[] frameChunks = new Chunk[64];
+    private int[] frameReturnPoints = new int[64];
+    private boolean[] frameIsTail = new boolean[64];
+    private Namespace[] frameNamespaces = new Namespace[64];
+    private int[] frameFirstPending = new int[64];
+    private int[] frameSlotBases = new int[64];
+    private int frameCount = 0;
+
+    BytecodeInterpreter(Program program, NamespaceLoader loader, ErrorReporter reporter, Namespace namespace) {
+        super(program, loader, reporter, namespace);
+    }
+
+    @Override
+    public Object interpret(Node[] node) {
+        execute(compiler.compile(node));
+
+        if (getStack().size() > 0) {
+            return getStack().peek();
+        }
+        return null;
+    }
+
+    @Override
+    public void execute(Sequence sequence) {
+        Chunk chunk = (Chunk) getCompiled(sequence);
+
+        if (chunk == null) {
+            chunk = compiler.compile(sequence.getNodes());
+            setCompiled(sequence, chunk);
+        }
+        execute(chunk);
+    }
+
+    @Override
+    void executeNodes(List<Node> nodes) {
+        execute(compiler.compile(nodes));
+    }
+
+    /**
+     * The dispatch loop
+     * <p>
+     * This can be re-entered, e.g. by a function such as 'exec' running a sequence, each entry only returns once the
+     * frames it pushed have been popped.
+     * </p>
+     */
+    private void execute(Chunk chunk) {
+        final Stack stack = getStack();
+        final int base = frameCount;
+        final Namespace entryNamespace = getNamespace();
+        final int entryPending = getPendingPostConditionCount();
+
+        int[] code = chunk.code;
+        Object[] constants = chunk.constants;
+
+        // whether the running chunk is a function body, or a branch in tail position within one,
+        // if so a call as its last instruction is a tail call
+        boolean tail = false;
+        int ip = 0;
+
+        try {
+            while (true) {
+
+                if (ip == code.length) {
+                    if (frameCount == base) {
+                        return;
+                    }
+
+                    // return to the calling frame
+                    int frame = --frameCount;
+
+                    if (frameNamespaces[frame] != null) {
+                        checkPendingPostConditions(frameFirstPending[frame]);
+                        setNamespace(frameNamespaces[frame]);
+                        restoreSlots(frameSlotBases[frame], getSlotBase());
+                        exitCall();
+                    }
+
+                    chunk = frameChunks[frame];
+                    code = chunk.code;
+                    constants = chunk.constants;
+                    ip = frameReturnPoints[frame];
+                    tail = frameIsTail[frame];
+
+                    frameChunks[frame] = null;
+                    frameNamespaces[frame] = null;
+                    continue;
+                }
+
+                final int instruction = code[ip++];
+                final int operand = OpCode.operand(instruction);
+
+                switch (OpCode.opCode(instruction)) {
+                    case OpCode.PUSH:
+                        stack.push(constants[operand]);
+                        break;
+    
+                    case OpCode.ADD: {
+                        assertOperands(BINARY_OPERANDS, (BinaryOperator) constants[operand]);
+                        double right = stack.popDouble();
+                        double left = stack.popDouble();
+                        stack.pushDouble(left + right);
+                        break;
+                    }
+    
+                    case OpCode.SUBTRACT: {
+                        assertOperands(BINARY_OPERANDS, (BinaryOperator) constants[operand]);
+                        double right = stack.popDouble();
+                        double left = stack.popDouble();
+                        stack.pushDouble(left - right);
+                        break;
+                    }
+    
+                    case OpCode.MULTIPLY: {
+                        assertOperands(BINARY_OPERANDS, (BinaryOperator) constants[operand]);
+                        double right = stack.popDouble();
+                        double left = stack.popDouble();
+                        stack.pushDouble(left * right);
+                        break;
+                    }
+    
+                    case OpCode.DIVIDE: {
+                        BinaryOperator node = (BinaryOperator) constants[operand];
+                        assertOperands(BINARY_OPERANDS, node);
+                        double right = stack.popDouble();
+                        double left = stack.popDouble();
+                        if (right == 0) {
+                            throw new InterpreterError("Division by zero.", node.getToken());
+                        }
+                        stack.pushDouble(left / right);
+                        break;
+                    }
+    
+                    case OpCode.MODULO: {
+                        BinaryOperator node = (BinaryOperator) constants[operand];
+                        assertOperands(BINARY_OPERANDS, node);
+                        double right = stack.popDouble();
+                        double left = stack.popDouble();
+                        if (right == 0) {
+                            throw new InterpreterError("Division by zero.", node.getToken());
+                        }
+                        stack.pushDouble(left % right);
+                        break;
+                    }
+    
+                    case OpCode.LESS_THAN:
+                    case OpCode.LESS_THAN_EQUAL:
+                    case OpCode.GREATER_THAN:
+                    case OpCode.GREATER_THAN_EQUAL:
+                    case OpCode.EQUAL:
+                    case OpCode.NOT_EQUAL:
+                    case OpCode.AND:
+                    case OpCode.OR:
+                        compare(OpCode.opCode(instruction), (Comparison) constants[operand]);
+                        break;
+    
+                    case OpCode.BRANCH: {
+                        assertOperands(BRANCH_OPERANDS, (Condition) constants[operand]);
+                        Sequence elseBranch = stack.popSequence();
+                        Sequence thenBranch = stack.popSequence();
+                        boolean condition = stack.popBoolean();
+
+                        Chunk branch = compiler.compile(condition ? thenBranch.getNodes() : elseBranch.getNodes());
+
+                        // a branch as the last instruction has nothing to return to, so it replaces the running chunk
+                        if (!isAtEnd(code, ip)) {
+                            pushFrame(chunk, ip, tail, null, 0, 0);
+                            tail = false;
+                        }
+
+                        chunk = branch;
+                        code = chunk.code;
+                        constants = chunk.constants;
+                        ip = 0;
+                        break;
+                    }
+
+                    case OpCode.BRANCH_SINGLE: {
+                        assertOperands(SINGLE_BRANCH_OPERANDS, (Condition) constants[operand]);
+                        Sequence thenBranch = stack.popSequence();
+                        boolean condition = stack.popBoolean();
+
+                        if (!condition) {
+                            break;
+                        }
+
+                        if (!isAtEnd(code, ip)) {
+                            pushFrame(chunk, ip, tail, null, 0, 0);
+                            tail = false;
+                        }
+
+                        chunk = compiler.compile(thenBranch.getNodes());
+                        code = chunk.code;
+                        constants = chunk.constants;
+                        ip = 0;
+                        break;
+                    }
+
+                    case OpCode.CALL: {
+                        Identifier node = (Identifier) constants[operand];
+                        TowelFunction function = getFunction(node);
+
+                        if (!node.isVerified()) {
+                            stack.assertState(function.getPreCondition(), node.getToken());
+                        }
+
+                        if (!(function instanceof UserDefinedFunction)) {
+                            callFunction(node, function);
+                            break;
+                        }
+
+                        UserDefinedFunction userFunction = (UserDefinedFunction) function;
+
+                        if (tail && isAtEnd(code, ip)) {
+                            // tail call, this replaces the running function, whose post-conditions
+                            // are checked along with the new one's when it returns
+                            addPendingPostCondition(frameFirstPending[frameCount - 1], node, userFunction);
+                        } else {
+                            enterCall(node);
+                            pushFrame(chunk, ip, tail, getNamespace(), getPendingPostConditionCount(), getSlotBase());
+                            addPendingPostCondition(getPendingPostConditionCount(), node, userFunction);
+                            openSlots();
+                            tail = true;
+                        }
+
+                        setNamespace(userFunction.getOriginalContext());
+                        sizeSlots(userFunction.getSlotCount());
+                        chunk = compiler.compile(userFunction.getBody());
+                        code = chunk.code;
+                        constants = chunk.constants;
+                        ip = 0;
+                        break;
+                    }
+
+                    case OpCode.EVALUATE:
+                        ((Node) constants[operand]).accept(this);
+                        break;
+
+                    // superinstructions take a fast path when the stack holds a number, otherwise
+                    // they run the nodes they were fused from, so any error is raised the same way
+
+                    case OpCode.ARITHMETIC_CONSTANT: {
+                        BinaryOperator node = (BinaryOperator) constants[operand];
+                        double constant = (Double) constants[code[ip++]];
+
+                        if (stack.isDouble(0) && canCalculate(node, constant)) {
+                            stack.pushDouble(calculate(node, stack.popDouble(), constant));
+                        } else {
+                            stack.pushDouble(constant);
+                            node.accept(this);
+                        }
+                        break;
+                    }
+
+                    case OpCode.COMPARE_CONSTANT: {
+                        Comparison node = (Comparison) constants[operand];
+                        double constant = (Double) constants[code[ip++]];
+
+                        if (stack.isDouble(0)) {
+                            stack.pushBoolean(compareNumbers(node, stack.popDouble(), constant));
+                        } else {
+                            stack.pushDouble(constant);
+                            node.accept(this);
+                        }
+                        break;
+                    }
+
+                    case OpCode.DUP_ARITHMETIC_CONSTANT: {
+                        Identifier dup = (Identifier) constants[operand];
+                        BinaryOperator node = (BinaryOperator) constants[code[ip++]];
+                        double constant = (Double) constants[code[ip++]];
+
+                        if (stack.isDouble(0) && canCalculate(node, constant) && getFunction(dup) instanceof Duplicate) {
+                            stack.pushDouble(calculate(node, stack.peekDouble(), constant));
+                        } else {
+                            call(dup, false);
+                            stack.pushDouble(constant);
+                            node.accept(this);
+                        }
+                        break;
+                    }
+
+                    case OpCode.DUP_COMPARE_CONSTANT: {
+                        Identifier dup = (Identifier) constants[operand];
+                        Comparison node = (Comparison) constants[code[ip++]];
+                        double constant = (Double) constants[code[ip++]];
+
+                        if (stack.isDouble(0) && getFunction(dup) instanceof Duplicate) {
+                            stack.pushBoolean(compareNumbers(node, stack.peekDouble(), constant));
+                        } else {
+                            call(dup, false);
+                            stack.pushDouble(constant);
+                            node.accept(this);
+                        }
+                        break;
+                    }
+
+                    case OpCode.JUMP_IF_FALSE: {
+                        assertLiteralBranchOperand((Condition) constants[operand]);
+                        int target = code[ip++];
+
+                        if (!stack.popBoolean()) {
+                            ip = target;
+                        }
+                        break;
+                    }
+
+                    case OpCode.JUMP:
+                        ip = operand;
+                        break;
+
+                    case OpCode.LOAD_SLOT:
+                        loadSlot((Identifier) constants[operand]);
+                        break;
+
+                    case OpCode.STORE_SLOT:
+                        storeSlot((Let) constants[operand]);
+                        break;
+
+                    default:
+                        throw new IllegalStateException("Invalid instruction: " + OpCode.name(OpCode.opCode(instruction)));
+                }
+            }
+        } finally {
+            if (frameCount != base) {
+                unwind(base, entryNamespace, entryPending);
+            }
+        }
+    }
+
+    /**
+     * Whether nothing is left to run in the chunk from the given position, either it's the end or a jump to the end
+     */
+    private static boolean isAtEnd(int[] code, int ip) {
+        return ip == code.length
+                || (OpCode.opCode(code[ip]) == OpCode.JUMP && OpCode.operand(code[ip]) == code.length);
+    }
+
+    /**
+     * Push a frame, to return to the given point in a chunk
+     */
+    private void pushFrame(Chunk chunk, int returnPoint, boolean isTail, Namespace namespace, int firstPending, int slotBase) {
+        if (frameCount == frameChunks.length) {
+            int capacity = frameCount * 2;
+            frameChunks = Arrays.copyOf(frameChunks, capacity);
+            frameReturnPoints = Arrays.copyOf(frameReturnPoints, capacity);
+            frameIsTail = Arrays.copyOf(frameIsTail, capacity);
+            frameNamespaces = Arrays.copyOf(frameNamespaces, capacity);
+            frameFirstPending = Arrays.copyOf(frameFirstPending, capacity);
+            frameSlotBases = Arrays.copyOf(frameSlotBases, capacity);
+        }
+
+        frameChunks[frameCount] = chunk;
+        frameReturnPoints[frameCount] = returnPoint;
+        frameIsTail[frameCount] = isTail;
+        frameNamespaces[frameCount] = namespace;
+        frameFirstPending[frameCount] = firstPending;
+        frameSlotBases[frameCount] = slotBase;
+        frameCount++;
+    }
+
+    /**
+     * Discard the frames pushed since an entry into the dispatch loop, when it's left by an error
+     */
+    private void unwind(int base, Namespace entryNamespace, int entryPending) {
+        while (frameCount > base) {
+            int frame = --frameCount;
+
+            if (frameNamespaces[frame] != null) {
+                restoreSlots(frameSlotBases[frame], getSlotBase());
+                exitCall();
+            }
+
+            frameChunks[frame] = null;
+            frameNamespaces[frame] = null;
+        }
+
+        setNamespace(entryNamespace);
+        discardPendingPostConditions(entryPending);
+    }
+
+    /**
+     * Check the operands of an operator, unless static analysis has already proven them
+     */
+    private void assertOperands(StackCondition.PreCondition condition, BinaryOperator node) {
+        if (!node.isVerified()) {
+            getStack().assertState(condition, node.getToken());
+        }
+    }
+
+    private void assertOperands(StackCondition.PreCondition condition, Condition node) {
+        if (!node.isVerified()) {
+            getStack().assertState(condition, node.getToken());
+        }
+    }
+
+    /**
+     * Division and modulo by zero are left for the unfused form, to raise the error
+     */
+    private static boolean canCalculate(BinaryOperator node, double right) {
+        switch (node.getTokenType()) {
+            case SLASH:
+            case MOD:
+                return right != 0;
+            default:
+                return true;
+        }
+    }
+
+    private static double calculate(BinaryOperator node, double left, double right) {
+        switch (node.getTokenType()) {
+            case PLUS:
+                return left + right;
+            case MINUS:
+                return left - right;
+            case STAR:
+                return left * right;
+            case SLASH:
+                return left / right;
+            case MOD:
+                return left % right;
+            default:
+                throw new IllegalStateException("Invalid fused operator: " + node.getTokenType());
+        }
+    }
+
+    private static boolean compareNumbers(Comparison node, double left, double right) {
+        switch (node.getTokenType()) {
+            case LESS_THAN:
+                return left < right;
+            case LESS_THAN_EQUAL:
+                return left <= right;
+            case GREATER_THAN:
+                return left > right;
+            case GREATER_THAN_EQUAL:
+                return left >= right;
+            case EQUAL_EQUAL:
+                return left == right;
+            case NOT_EQUAL:
+                return left != right;
+            default:
+                throw new IllegalStateException("Invalid fused comparison: " + node.getTokenType());
+        }
+    }
+
+    /**
+     * Numbers are compared directly, anything else falls back to the general comparison
+     */
+    private void compare(int opCode, Comparison node) {
+        final Stack stack = getStack();
+
+        if (!node.isVerified()) {
+            stack.assertStack(2, "Two arguments are required for comparisons.", node.getToken());
+        }
+
+        if (!stack.isDouble(0) || !stack.isDouble(1)) {
+            Object right = stack.pop();
+            Object left = stack.pop();
+            compare(node, left, right);
+            return;
+        }
+
+        double r = stack.popDouble();
+        double l = stack.popDouble();
+
+        switch (opCode) {
+            case OpCode.LESS_THAN:
+                stack.pushBoolean(l < r);
+                break;
+            case OpCode.LESS_THAN_EQUAL:
+                stack.pushBoolean(l <= r);
+                break;
+            case OpCode.GREATER_THAN:
+                stack.pushBoolean(l > r);
+                break;
+            case OpCode.GREATER_THAN_EQUAL:
+                stack.pushBoolean(l >= r);
+                break;
+            case OpCode.EQUAL:
+                stack.pushBoolean(l == r);
+                break;
+            case OpCode.NOT_EQUAL:
+                stack.pushBoolean(l != r);
+                break;
+            default:
+                // && and || on numbers, let the general comparison raise the error
+                compare(node, l, r);
+        }
+    }
+}
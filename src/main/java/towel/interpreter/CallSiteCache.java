@@ -0,0 +1,87 @@
+package towel.interpreter;
+
+/**
+ * Polymorphic inline cache for a single call site, i.e. an identifier
+ * <p>
+ * Identifiers are linked to a binding within the namespace they're first run in, but the same identifier can be run
+ * within other namespaces, e.g. a sequence passed to a function from another file. Each of those namespaces gets an
+ * entry here, so the name doesn't have to be looked up on every call.
+ * </p>
+ * <p>
+ * An entry holds the modification count of each namespace it was looked up in, once either has a member defined
+ * the entry no longer matches, so a name which is later shadowed is looked up again.
+ * </p>
+ */
+final class CallSiteCache {
+
+    /**
+     * Most call sites only ever see one or two namespaces
+     */
+    private static final int SIZE = 4;
+
+    private final Namespace[] namespaces = new Namespace[SIZE];
+    private final int[] modificationCounts = new int[SIZE];
+
+    /**
+     * The namespace the name was found in, which differs for names such as 'io.print'
+     */
+    private final Namespace[] targets = new Namespace[SIZE];
+    private final int[] targetModificationCounts = new int[SIZE];
+
+    private final TowelFunction[] functions = new TowelFunction[SIZE];
+
+    /**
+     * The entry to replace next once all are used
+     */
+    private int next = 0;
+
+    CallSiteCache() {
+
+    }
+
+    /**
+     * @return the function cached for the given namespace, or null if there isn't one or it's out of date
+     */
+    TowelFunction get(Namespace namespace) {
+        for (int i = 0; i < SIZE; i++) {
+            if (namespaces[i] == namespace) {
+                if (modificationCounts[i] == namespace.getModificationCount()
+                        && targetModificationCounts[i] == targets[i].getModificationCount()) {
+                    return functions[i];
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cache the function found when the call was made within the given namespace
+     *
+     * @param namespace the namespace the call was made within
+     * @param target    the namespace the function was found in
+     */
+    void put(Namespace namespace, Namespace target, TowelFunction function) {
+        int entry = indexOf(namespace);
+
+        if (entry < 0) {
+            entry = next;
+            next = (next + 1) % SIZE;
+        }
+
+        namespaces[entry] = namespace;
+        modificationCounts[entry] = namespace.getModificationCount();
+        targets[entry] = target;
+        targetModificationCounts[entry] = target.getModificationCount();
+        functions[entry] = function;
+    }
+
+    private int indexOf(Namespace namespace) {
+        for (int i = 0; i < SIZE; i++) {
+            if (namespaces[i] == namespace) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,48 @@
+package towel.interpreter;
+
+import java.util.Objects;
+
+/**
+ * A compiled unit of bytecode, e.g. a program body, a function body or a sequence
+ * <p>
+ * Instructions are stored in a flat int array, and refer to values or nodes via the constant pool
+ * </p>
+ *
+ * @see OpCode
+ */
+final class Chunk {
+
+    final int[] code;
+    final Object[] constants;
+
+    Chunk(int[] code, Object[] constants) {
+        this.code = Objects.requireNonNull(code);
+        this.constants = Objects.requireNonNull(constants);
+    }
+
+    /**
+     * Human readable listing of the instructions, useful for debugging
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        for (int ip = 0; ip < code.length; ip += OpCode.size(OpCode.opCode(code[ip]))) {
+            int opCode = OpCode.opCode(code[ip]);
+            int operand = OpCode.operand(code[ip]);
+
+            sb.append(String.format("%04d %-20s %d", ip, OpCode.name(opCode), operand));
+
+            for (int i = 1; i < OpCode.size(opCode); i++) {
+                sb.append(" ").append(code[ip + i]);
+            }
+
+            if (opCode == OpCode.PUSH) {
+                sb.append(" (").append(constants[operand]).append(")");
+            }
+            sb.append("\n");
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,343 @@
+package towel.interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a JVM class file, just enough of the format for the classes generated by the {@code JvmCompiler}
+ * <p>
+ * Classes are written as version 49 (Java 5), so methods don't need stack map frames. The older verifier
+ * infers the types at each branch target itself.
+ * </p>
+ *
+ * @see JvmCompiler
+ */
+final class ClassFileWriter {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int VERSION = 49;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    /**
+     * Largest method the JVM will accept
+     */
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    /**
+     * Opcodes used by generated code
+     */
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3A;
+    static final int AALOAD = 0x32;
+    static final int DCONST_0 = 0x0E;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6B;
+    static final int DDIV = 0x6F;
+    static final int DREM = 0x73;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int IFLT = 0x9B;
+    static final int IFGE = 0x9C;
+    static final int IFGT = 0x9D;
+    static final int IFLE = 0x9E;
+    static final int GOTO = 0xA7;
+    static final int RETURN = 0xB1;
+    static final int GETFIELD = 0xB4;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+
+    private final ByteArrayOutputStream constantPool = new ByteArrayOutputStream();
+    private final DataOutputStream constants = new DataOutputStream(constantPool);
+    private final Map<String, Integer> constantIndexes = new HashMap<>();
+    private int constantCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int codeAttribute;
+    private final List<MethodWriter> methods = new ArrayList<>();
+
+    /**
+     * @param name      internal name of the class, e.g. 'towel/generated/Code1'
+     * @param superName internal name of the class it extends
+     */
+    ClassFileWriter(String name, String superName) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        codeAttribute = utf8("Code");
+    }
+
+    MethodWriter method(String name, String descriptor, int maxStack, int maxLocals) {
+        MethodWriter method = new MethodWriter(utf8(name), utf8(descriptor), maxStack, maxLocals);
+        methods.add(method);
+        return method;
+    }
+
+    byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(constantCount);
+            constantPool.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(0);
+
+            out.writeShort(methods.size());
+            for (MethodWriter method : methods) {
+                method.writeTo(out, codeAttribute);
+            }
+
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // can't happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Add an entry to the constant pool, unless an identical one is already there
+     */
+    private int constant(String key, int slots, ConstantWriter writer) {
+        Integer index = constantIndexes.get(key);
+
+        if (index != null) {
+            return index;
+        }
+
+        if (constantCount + slots > 0xFFFF) {
+            throw new IllegalStateException("Too many constants for a class file.");
+        }
+
+        try {
+            writer.write(constants);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        index = constantCount;
+        constantCount += slots;
+        constantIndexes.put(key, index);
+        return index;
+    }
+
+    private interface ConstantWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    int utf8(String value) {
+        return constant("Utf8:" + value, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int classRef(String name) {
+        int nameIndex = utf8(name);
+        return constant("Class:" + name, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    int stringRef(String value) {
+        int valueIndex = utf8(value);
+        return constant("String:" + value, 1, out -> {
+            out.writeByte(8);
+            out.writeShort(valueIndex);
+        });
+    }
+
+    int doubleRef(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return constant("Double:" + bits, 2, out -> {
+            out.writeByte(6);
+            out.writeLong(bits);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = constant("NameAndType:" + name + ":" + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+
+        return constant(tag + ":" + owner + "." + name + ":" + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    /**
+     * A position in a method's code, which can be jumped to
+     */
+    static final class Label {
+        private int position = -1;
+    }
+
+    /**
+     * Writes the code of a single public method
+     */
+    final class MethodWriter {
+
+        private final int name;
+        private final int descriptor;
+        private final int maxStack;
+        private final int maxLocals;
+
+        private byte[] code = new byte[256];
+        private int length = 0;
+
+        /**
+         * Jumps to labels which may not have been marked yet, the position of the jump instruction and its label
+         */
+        private final List<Integer> jumpPositions = new ArrayList<>();
+        private final List<Label> jumpLabels = new ArrayList<>();
+
+        private MethodWriter(int name, int descriptor, int maxStack, int maxLocals) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        void op(int opCode) {
+            write(opCode);
+        }
+
+        /**
+         * An instruction taking a local variable index
+         */
+        void local(int opCode, int index) {
+            write(opCode);
+            write(index);
+        }
+
+        /**
+         * An instruction taking a constant pool index, e.g. a method or field reference
+         */
+        void ref(int opCode, int index) {
+            write(opCode);
+            writeShort(index);
+        }
+
+        void loadInt(int value) {
+            if (value >= -1 && value <= 5) {
+                write(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                write(BIPUSH);
+                write(value);
+            } else {
+                write(SIPUSH);
+                writeShort(value);
+            }
+        }
+
+        /**
+         * Load a single slot constant, e.g. a string
+         */
+        void loadConstant(int index) {
+            if (index <= 0xFF) {
+                write(LDC);
+                write(index);
+            } else {
+                ref(LDC_W, index);
+            }
+        }
+
+        void jump(int opCode, Label label) {
+            jumpPositions.add(length);
+            jumpLabels.add(label);
+            write(opCode);
+            writeShort(0);
+        }
+
+        void mark(Label label) {
+            label.position = length;
+        }
+
+        private void write(int b) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[length++] = (byte) b;
+        }
+
+        private void writeShort(int s) {
+            write(s >> 8);
+            write(s);
+        }
+
+        private void writeTo(DataOutputStream out, int codeAttribute) throws IOException {
+            if (length > MAX_CODE_LENGTH) {
+                throw new IllegalStateException("Method is too large for a class file.");
+            }
+
+            for (int i = 0; i < jumpPositions.size(); i++) {
+                int position = jumpPositions.get(i);
+                int offset = jumpLabels.get(i).position - position;
+
+                if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                    throw new IllegalStateException("Jump is too far for a class file.");
+                }
+                code[position + 1] = (byte) (offset >> 8);
+                code[position + 2] = (byte) offset;
+            }
+
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(length);
+            out.write(code, 0, length);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+    }
+}
@@ -0,0 +1,690 @@
+package towel.interpreter;
+
+import towel.ast.*;
+
+import java.util.*;
+
+/**
+ * Compiles the AST into a tree of {@code Executable}s, for execution by the {@code ClosureInterpreter}
+ * <p>
+ * Each node is compiled into an object with its operands and operation bound, e.g. {@code +} becomes an
+ * {@code Add}, so none of it is decided again each time it runs. Comparisons specialise themselves for the types of
+ * operands they find, see {@code SpecialisingNode}. Definitions, imports, etc. are handed back to the
+ * tree-walking interpreter.
+ * </p>
+ * <p>
+ * Function bodies and sequences are compiled the first time they run, and cached against their node arrays. Node
+ * arrays which were not part of the original AST, e.g. those created at runtime by 'curry', are not cached.
+ * </p>
+ */
+class ClosureCompiler {
+
+    /**
+     * Compiled trees keyed by the node arrays they were compiled from, for function bodies (and branches within them
+     * in tail position) and everything else
+     */
+    private final Map<Node[], Executable> bodies = new IdentityHashMap<>();
+    private final Map<Node[], Executable> sequences = new IdentityHashMap<>();
+
+    /**
+     * Node arrays found within the AST, i.e. function bodies and sequences
+     */
+    private final Set<Node[]> known = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Whether the given nodes are part of something which has been compiled, e.g. a sequence within a function body
+     */
+    boolean isKnown(Node[] nodes) {
+        return known.contains(nodes);
+    }
+
+    /**
+     * Compile the top-level nodes of a program
+     * <p>
+     * These are only executed once, so aren't cached
+     * </p>
+     */
+    Executable compile(List<Node> nodes) {
+        return new TreeBuilder().build(nodes, false);
+    }
+
+    /**
+     * Get the compiled form of the given nodes, e.g. a function body or a sequence
+     *
+     * @param isTail whether the nodes are a function body, or a branch in tail position within one
+     */
+    Executable compile(Node[] nodes, boolean isTail) {
+        Map<Node[], Executable> cache = isTail ? bodies : sequences;
+        Executable tree = cache.get(nodes);
+
+        if (tree == null) {
+            tree = new TreeBuilder().build(Arrays.asList(nodes), isTail);
+
+            if (known.contains(nodes)) {
+                cache.put(nodes, tree);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Builds the tree for a single list of nodes
+     */
+    private class TreeBuilder implements NodeVisitor<Executable> {
+
+        /**
+         * Whether the node being compiled is in tail position
+         */
+        private boolean isTailNode = false;
+
+        Executable build(List<Node> nodes, boolean isTail) {
+            List<Executable> executables = new ArrayList<>(nodes.size());
+
+            for (int i = 0; i < nodes.size(); i++) {
+                isTailNode = isTail && i == nodes.size() - 1;
+                Executable executable = nodes.get(i).accept(this);
+
+                if (executable != null) {
+                    executables.add(executable);
+                }
+            }
+
+            Executable[] body = executables.toArray(new Executable[0]);
+
+            // a node which may replace itself needs a block to do it in
+            if (body.length == 1 && !(body[0] instanceof SpecialisingNode)) {
+                return body[0];
+            }
+            return new Block(body);
+        }
+
+        @Override
+        public Executable visit(Program programNode) {
+            return new Evaluate(programNode);
+        }
+
+        @Override
+        public Executable visit(Literal literalNode) {
+            Object value = literalNode.getToken().getLiteral();
+
+            if (value instanceof Double) {
+                return new PushDouble((Double) value);
+            }
+            if (value instanceof Boolean) {
+                return new PushBoolean((Boolean) value);
+            }
+            return new Push(value);
+        }
+
+        @Override
+        public Executable visit(BinaryOperator binaryOperatorNode) {
+            switch (binaryOperatorNode.getTokenType()) {
+                case PLUS:
+                    return new Add(binaryOperatorNode);
+                case MINUS:
+                    return new Subtract(binaryOperatorNode);
+                case STAR:
+                    return new Multiply(binaryOperatorNode);
+                case SLASH:
+                    return new Divide(binaryOperatorNode);
+                case MOD:
+                    return new Modulo(binaryOperatorNode);
+                default:
+                    return new Evaluate(binaryOperatorNode);
+            }
+        }
+
+        @Override
+        public Executable visit(Comparison comparisonNode) {
+            return new UninitialisedCompare(comparisonNode, numberTestFor(comparisonNode), booleanTestFor(comparisonNode));
+        }
+
+        /**
+         * @return the test for comparing numbers, or null if they can't be compared this way
+         */
+        private NumberTest numberTestFor(Comparison comparisonNode) {
+            switch (comparisonNode.getTokenType()) {
+                case LESS_THAN:
+                    return (left, right) -> left < right;
+                case LESS_THAN_EQUAL:
+                    return (left, right) -> left <= right;
+                case GREATER_THAN:
+                    return (left, right) -> left > right;
+                case GREATER_THAN_EQUAL:
+                    return (left, right) -> left >= right;
+                case EQUAL_EQUAL:
+                    return (left, right) -> left == right;
+                case NOT_EQUAL:
+                    return (left, right) -> left != right;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * @return the test for comparing booleans, or null if they can't be compared this way
+         */
+        private BooleanTest booleanTestFor(Comparison comparisonNode) {
+            switch (comparisonNode.getTokenType()) {
+                case EQUAL_EQUAL:
+                    return (left, right) -> left == right;
+                case NOT_EQUAL:
+                    return (left, right) -> left != right;
+                case AND:
+                    return (left, right) -> left && right;
+                case OR:
+                    return (left, right) -> left || right;
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public Executable visit(Condition conditionNode) {
+            if (conditionNode.hasBranches()) {
+                Sequence elseBranch = conditionNode.getElseBranch();
+
+                return new LiteralBranch(conditionNode,
+                        new TreeBuilder().build(Arrays.asList(conditionNode.getThenBranch().getNodes()), isTailNode),
+                        elseBranch == null ? null : new TreeBuilder().build(Arrays.asList(elseBranch.getNodes()), isTailNode));
+            }
+            return new Branch(conditionNode, isTailNode);
+        }
+
+        @Override
+        public Executable visit(Sequence sequenceNode) {
+            known.add(sequenceNode.getNodes());
+
+            // compiled in place by the condition after it
+            if (sequenceNode.isBranch()) {
+                return null;
+            }
+            return new Push(sequenceNode);
+        }
+
+        @Override
+        public Executable visit(Function functionNode) {
+            known.add(functionNode.getBody());
+            return new Evaluate(functionNode);
+        }
+
+        @Override
+        public Executable visit(Identifier identifierNode) {
+            if (identifierNode.hasSlot()) {
+                return new LoadSlot(identifierNode);
+            }
+            return new Call(identifierNode, isTailNode);
+        }
+
+        @Override
+        public Executable visit(Import importNode) {
+            return new Evaluate(importNode);
+        }
+
+        @Override
+        public Executable visit(Let letNode) {
+            if (letNode.hasSlot()) {
+                return new StoreSlot(letNode);
+            }
+            return new Evaluate(letNode);
+        }
+
+        @Override
+        public Executable visit(Array arrayNode) {
+            return new Evaluate(arrayNode);
+        }
+    }
+
+    /**
+     * Runs each of its nodes in order
+     */
+    static final class Block implements Executable {
+        private final Executable[] body;
+
+        Block(Executable[] body) {
+            this.body = body;
+
+            for (int i = 0; i < body.length; i++) {
+                if (body[i] instanceof SpecialisingNode) {
+                    ((SpecialisingNode) body[i]).adopt(body, i);
+                }
+            }
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            for (Executable executable : body) {
+                executable.execute(frame);
+            }
+        }
+    }
+
+    /**
+     * Hands a node back to the tree-walking interpreter
+     */
+    static final class Evaluate implements Executable {
+        private final Node node;
+
+        Evaluate(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            node.accept(frame.interpreter);
+        }
+    }
+
+    static final class PushDouble implements Executable {
+        private final double value;
+
+        PushDouble(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            frame.stack.pushDouble(value);
+        }
+    }
+
+    static final class PushBoolean implements Executable {
+        private final boolean value;
+
+        PushBoolean(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            frame.stack.pushBoolean(value);
+        }
+    }
+
+    /**
+     * Pushes a string or sequence
+     */
+    static final class Push implements Executable {
+        private final Object value;
+
+        Push(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            frame.stack.push(value);
+        }
+    }
+
+    /**
+     * A binary operator, each operation is its own subclass
+     * <p>
+     * Binary operators only work on numbers, so the full check of the stack is only made when either operand isn't
+     * one, to raise the error
+     * </p>
+     */
+    abstract static class Arithmetic implements Executable {
+        final Token token;
+        private final boolean isVerified;
+
+        Arithmetic(BinaryOperator binaryOperatorNode) {
+            this.token = binaryOperatorNode.getToken();
+            this.isVerified = binaryOperatorNode.isVerified();
+        }
+
+        @Override
+        public final void execute(Frame frame) {
+            Stack stack = frame.stack;
+
+            if (!isVerified && !(stack.isDouble(0) && stack.isDouble(1))) {
+                stack.assertState(ProgramInterpreter.BINARY_OPERANDS, token);
+            }
+
+            double right = stack.popDouble();
+            double left = stack.popDouble();
+            stack.pushDouble(apply(left, right));
+        }
+
+        abstract double apply(double left, double right);
+    }
+
+    static final class Add extends Arithmetic {
+        Add(BinaryOperator binaryOperatorNode) {
+            super(binaryOperatorNode);
+        }
+
+        @Override
+        double apply(double left, double right) {
+            return left + right;
+        }
+    }
+
+    static final class Subtract extends Arithmetic {
+        Subtract(BinaryOperator binaryOperatorNode) {
+            super(binaryOperatorNode);
+        }
+
+        @Override
+        double apply(double left, double right) {
+            return left - right;
+        }
+    }
+
+    static final class Multiply extends Arithmetic {
+        Multiply(BinaryOperator binaryOperatorNode) {
+            super(binaryOperatorNode);
+        }
+
+        @Override
+        double apply(double left, double right) {
+            return left * right;
+        }
+    }
+
+    static final class Divide extends Arithmetic {
+        Divide(BinaryOperator binaryOperatorNode) {
+            super(binaryOperatorNode);
+        }
+
+        @Override
+        double apply(double left, double right) {
+            if (right == 0) {
+                throw new ProgramInterpreter.InterpreterError("Division by zero.", token);
+            }
+            return left / right;
+        }
+    }
+
+    static final class Modulo extends Arithmetic {
+        Modulo(BinaryOperator binaryOperatorNode) {
+            super(binaryOperatorNode);
+        }
+
+        @Override
+        double apply(double left, double right) {
+            if (right == 0) {
+                throw new ProgramInterpreter.InterpreterError("Division by zero.", token);
+            }
+            return left % right;
+        }
+    }
+
+    /**
+     * A node which replaces itself within its block, once it has seen what it's working on
+     * <p>
+     * This lets a node specialise for the types it finds, and only pay for checking them again. If the types change,
+     * it replaces itself with a more general node.
+     * </p>
+     */
+    abstract static class SpecialisingNode implements Executable {
+        private Executable[] owner;
+        private int index;
+
+        void adopt(Executable[] owner, int index) {
+            this.owner = owner;
+            this.index = index;
+        }
+
+        /**
+         * Replace this node, then execute its replacement in its place
+         */
+        final void replace(Executable replacement, Frame frame) {
+            if (replacement instanceof SpecialisingNode) {
+                ((SpecialisingNode) replacement).adopt(owner, index);
+            }
+            owner[index] = replacement;
+            replacement.execute(frame);
+        }
+    }
+
+    /**
+     * The test a comparison applies to two numbers
+     */
+    interface NumberTest {
+        boolean test(double left, double right);
+    }
+
+    /**
+     * The test a comparison applies to two booleans
+     */
+    interface BooleanTest {
+        boolean test(boolean left, boolean right);
+    }
+
+    /**
+     * A comparison which hasn't run yet, it replaces itself with one specialised for the first operands it finds
+     */
+    static final class UninitialisedCompare extends SpecialisingNode {
+        private final Comparison comparisonNode;
+        private final NumberTest numberTest;
+        private final BooleanTest booleanTest;
+
+        UninitialisedCompare(Comparison comparisonNode, NumberTest numberTest, BooleanTest booleanTest) {
+            this.comparisonNode = comparisonNode;
+            this.numberTest = numberTest;
+            this.booleanTest = booleanTest;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            Stack stack = frame.stack;
+
+            if (!comparisonNode.isVerified()) {
+                stack.assertStack(2, "Two arguments are required for comparisons.", comparisonNode.getToken());
+            }
+
+            Token.TokenType type = comparisonNode.getTokenType();
+
+            if (numberTest != null && stack.isDouble(0) && stack.isDouble(1)) {
+                replace(new NumberCompare(comparisonNode, numberTest), frame);
+            } else if (booleanTest != null && stack.isBoolean(0) && stack.isBoolean(1)) {
+                replace(new BooleanCompare(comparisonNode, booleanTest), frame);
+            } else if ((type == Token.TokenType.EQUAL_EQUAL || type == Token.TokenType.NOT_EQUAL)
+                    && stack.isString(0) && stack.isString(1)) {
+                replace(new StringCompare(comparisonNode), frame);
+            } else {
+                replace(new Compare(comparisonNode), frame);
+            }
+        }
+    }
+
+    /**
+     * A comparison which has only seen numbers
+     */
+    static final class NumberCompare extends SpecialisingNode {
+        private final Comparison comparisonNode;
+        private final NumberTest test;
+
+        NumberCompare(Comparison comparisonNode, NumberTest test) {
+            this.comparisonNode = comparisonNode;
+            this.test = test;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            Stack stack = frame.stack;
+
+            if (!stack.isDouble(0) || !stack.isDouble(1)) {
+                replace(new Compare(comparisonNode), frame);
+                return;
+            }
+
+            double right = stack.popDouble();
+            double left = stack.popDouble();
+            stack.pushBoolean(test.test(left, right));
+        }
+    }
+
+    /**
+     * A comparison which has only seen booleans
+     */
+    static final class BooleanCompare extends SpecialisingNode {
+        private final Comparison comparisonNode;
+        private final BooleanTest test;
+
+        BooleanCompare(Comparison comparisonNode, BooleanTest test) {
+            this.comparisonNode = comparisonNode;
+            this.test = test;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            Stack stack = frame.stack;
+
+            if (!stack.isBoolean(0) || !stack.isBoolean(1)) {
+                replace(new Compare(comparisonNode), frame);
+                return;
+            }
+
+            boolean right = stack.popBoolean();
+            boolean left = stack.popBoolean();
+            stack.pushBoolean(test.test(left, right));
+        }
+    }
+
+    /**
+     * An '==' or '!=' which has only seen strings
+     */
+    static final class StringCompare extends SpecialisingNode {
+        private final Comparison comparisonNode;
+        private final boolean isEqual;
+
+        StringCompare(Comparison comparisonNode) {
+            this.comparisonNode = comparisonNode;
+            this.isEqual = comparisonNode.getTokenType() == Token.TokenType.EQUAL_EQUAL;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            Stack stack = frame.stack;
+
+            if (!stack.isString(0) || !stack.isString(1)) {
+                replace(new Compare(comparisonNode), frame);
+                return;
+            }
+
+            String right = stack.popString();
+            String left = stack.popString();
+            stack.pushBoolean(left.equals(right) == isEqual);
+        }
+    }
+
+    /**
+     * A comparison which has seen mixed types, anything is compared by the interpreter
+     */
+    static final class Compare implements Executable {
+        private final Comparison comparisonNode;
+
+        Compare(Comparison comparisonNode) {
+            this.comparisonNode = comparisonNode;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            Stack stack = frame.stack;
+
+            if (!comparisonNode.isVerified()) {
+                stack.assertStack(2, "Two arguments are required for comparisons.", comparisonNode.getToken());
+            }
+
+            Object right = stack.pop();
+            Object left = stack.pop();
+            frame.interpreter.compare(comparisonNode, left, right);
+        }
+    }
+
+    /**
+     * A call to a function, resolved through the identifier's binding by the interpreter
+     */
+    static final class Call implements Executable {
+        private final Identifier identifierNode;
+        private final boolean isTail;
+
+        Call(Identifier identifierNode, boolean isTail) {
+            this.identifierNode = identifierNode;
+            this.isTail = isTail;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            frame.interpreter.call(identifierNode, isTail);
+        }
+    }
+
+    /**
+     * Reads a let held in a slot of the running call
+     */
+    static final class LoadSlot implements Executable {
+        private final Identifier identifierNode;
+
+        LoadSlot(Identifier identifierNode) {
+            this.identifierNode = identifierNode;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            frame.interpreter.loadSlot(identifierNode);
+        }
+    }
+
+    /**
+     * Binds a let held in a slot of the running call
+     */
+    static final class StoreSlot implements Executable {
+        private final Let letNode;
+
+        StoreSlot(Let letNode) {
+            this.letNode = letNode;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            frame.interpreter.storeSlot(letNode);
+        }
+    }
+
+    /**
+     * A condition, the branch taken is run by the interpreter from its compiled form
+     */
+    static final class Branch implements Executable {
+        private final Condition conditionNode;
+        private final boolean isTail;
+
+        Branch(Condition conditionNode, boolean isTail) {
+            this.conditionNode = conditionNode;
+            this.isTail = isTail;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            frame.interpreter.condition(conditionNode, isTail);
+        }
+    }
+
+    /**
+     * A condition whose branches are literal sequences, compiled in place so they're never pushed
+     */
+    static final class LiteralBranch implements Executable {
+        private final Condition conditionNode;
+        private final Executable thenBranch;
+        private final Executable elseBranch;
+
+        LiteralBranch(Condition conditionNode, Executable thenBranch, Executable elseBranch) {
+            this.conditionNode = conditionNode;
+            this.thenBranch = thenBranch;
+            this.elseBranch = elseBranch;
+        }
+
+        @Override
+        public void execute(Frame frame) {
+            frame.interpreter.assertLiteralBranchOperand(conditionNode);
+
+            if (frame.stack.popBoolean()) {
+                thenBranch.execute(frame);
+            } else if (elseBranch != null) {
+                elseBranch.execute(frame);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package towel.interpreter;
+
+import towel.ErrorReporter;
+import towel.ast.Node;
+import towel.ast.Program;
+import towel.ast.Sequence;
+
+import java.util.List;
+
+/**
+ * Interpreter which compiles the AST into a tree of pre-bound {@code Executable}s, then runs those
+ * <p>
+ * This avoids the double dispatch of visiting each node, and the switches on token types within each visit, without
+ * the cost of generating classes. Anything the tree doesn't handle itself is handed back to the tree-walking
+ * interpreter this extends, so all engines share the same semantics.
+ * </p>
+ *
+ * @see ClosureCompiler
+ */
+class ClosureInterpreter extends ProgramInterpreter {
+
+    private final ClosureCompiler compiler = new ClosureCompiler();
+    private final Frame frame = new Frame(this);
+
+    ClosureInterpreter(Program program, NamespaceLoader loader, ErrorReporter reporter, Namespace namespace) {
+        super(program, loader, reporter, namespace);
+    }
+
+    @Override
+    public Object interpret(Node[] node) {
+        compiler.compile(node, false).execute(frame);
+
+        if (getStack().size() > 0) {
+            return getStack().peek();
+        }
+        return null;
+    }
+
+    @Override
+    public void execute(Sequence sequence) {
+        Executable tree = (Executable) getCompiled(sequence);
+
+        if (tree == null) {
+            tree = compiler.compile(sequence.getNodes(), false);
+            setCompiled(sequence, tree);
+        }
+        tree.execute(frame);
+    }
+
+    @Override
+    void executeNodes(List<Node> nodes) {
+        compiler.compile(nodes).execute(frame);
+    }
+
+    @Override
+    void executeBody(Node[] nodes) {
+        compiler.compile(nodes, true).execute(frame);
+    }
+
+    @Override
+    void executeBranch(Sequence branch, boolean isTail) {
+        compiler.compile(branch.getNodes(), isTail).execute(frame);
+    }
+}
@@ -0,0 +1,23 @@
+package towel.interpreter;
+
+/**
+ * Base of the classes generated by the {@code JvmCompiler}, each runs a single function body, sequence or program
+ * <p>
+ * Generated classes are defined by their own class loader, so this and everything they call must be public.
+ * </p>
+ *
+ * @see JvmCompiler
+ */
+public abstract class CompiledCode {
+
+    /**
+     * Nodes referred to by the generated code, e.g. for calls and error reporting
+     */
+    protected final Object[] constants;
+
+    protected CompiledCode(Object[] constants) {
+        this.constants = constants;
+    }
+
+    public abstract void run(JvmRuntime runtime, Stack stack);
+}
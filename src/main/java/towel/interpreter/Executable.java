@@ -0,0 +1,15 @@
+package towel.interpreter;
+
+/**
+ * A node of the closure tree built by the {@code ClosureCompiler}
+ * <p>
+ * Everything a node needs, e.g. its operands and the operation to perform, is decided when it's compiled, so
+ * executing it is a single direct call.
+ * </p>
+ *
+ * @see ClosureCompiler
+ */
+interface Executable {
+
+    void execute(Frame frame);
+}
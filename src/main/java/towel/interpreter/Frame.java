@@ -0,0 +1,17 @@
+package towel.interpreter;
+
+/**
+ * State shared by the nodes of a closure tree while it runs
+ *
+ * @see Executable
+ */
+final class Frame {
+
+    final ProgramInterpreter interpreter;
+    final Stack stack;
+
+    Frame(ProgramInterpreter interpreter) {
+        this.interpreter = interpreter;
+        this.stack = interpreter.getStack();
+    }
+}
@@ -3,9 +3,33 @@ package towel.interpreter;
 import towel.ErrorReporter;
 import towel.ast.Node;
 import towel.ast.Program;
+import towel.ast.Sequence;
 
 public interface Interpreter {
 
+    /**
+     * The available execution engines
+     * <p>
+     * {@code AST} walks the tree directly, {@code CLOSURE} compiles it into a tree of objects with everything each node
+     * needs already bound, {@code BYTECODE} compiles it to bytecode first and keeps its call stack on
+     * the heap, so isn't limited by the size of the Java stack. {@code JVM} compiles it into JVM classes, which the JIT
+     * can then optimise. {@code TIERED} walks the tree, but compiles functions into closure trees once they're hot
+     * </p>
+     */
+    enum Engine {
+        AST, CLOSURE, BYTECODE, JVM, TIERED
+    }
+
+    /**
+     * Default limit on how deeply calls to user defined functions can be nested
+     */
+    int DEFAULT_MAX_CALL_DEPTH = 1000000;
+
+    /**
+     * Default number of times a function runs before the tiered engine compiles it
+     */
+    int DEFAULT_COMPILE_THRESHOLD = 1000;
+
     /**
      * Execute the program, beginning at the root Program node
      */
@@ -16,6 +40,15 @@ public interface Interpreter {
      */
     Object interpret(Node[] node);
 
+    /**
+     * Run a sequence within the context of the running program, e.g. for a function such as 'exec'
+     * <p>
+     * Unlike {@code interpret(Node[])} nothing is returned, whatever the sequence leaves is on the stack. Engines which
+     * compile keep the compiled form of each sequence, so running it repeatedly costs no more than the sequence itself.
+     * </p>
+     */
+    void execute(Sequence sequence);
+
     /**
      * Get the program stack
      *
@@ -23,11 +56,49 @@ public interface Interpreter {
      */
     Stack getStack();
 
+    /**
+     * Limit how deeply calls to user defined functions can be nested, before the program fails
+     * <p>
+     * Tail calls don't count towards this. The AST engine runs calls on the Java stack, so
+     * may fail before this is reached.
+     * </p>
+     */
+    void setMaxCallDepth(int maxCallDepth);
+
+    /**
+     * Set the number of times a function runs before it's compiled
+     * <p>
+     * Only the tiered engine compiles functions as they run, the others ignore this.
+     * </p>
+     */
+    default void setCompileThreshold(int compileThreshold) {
+    }
+
     static Interpreter getFor(Program program, NamespaceLoader loader, ErrorReporter reporter) {
         return getFor(program, loader, reporter, new Namespace());
     }
 
     static Interpreter getFor(Program program, NamespaceLoader loader, ErrorReporter reporter, Namespace namespace) {
-        return new ProgramInterpreter(program, loader, reporter, namespace);
+        return getFor(program, loader, reporter, namespace, Engine.AST);
+    }
+
+    static Interpreter getFor(Program program, NamespaceLoader loader, ErrorReporter reporter, Engine engine) {
+        return getFor(program, loader, reporter, new Namespace(), engine);
+    }
+
+    static Interpreter getFor(Program program, NamespaceLoader loader, ErrorReporter reporter, Namespace namespace, Engine engine) {
+        switch (engine) {
+            case CLOSURE:
+                return new ClosureInterpreter(program, loader, reporter, namespace);
+            case BYTECODE:
+                return new BytecodeInterpreter(program, loader, reporter, namespace);
+            case JVM:
+                return new JvmInterpreter(program, loader, reporter, namespace);
+            case TIERED:
+                return new TieredInterpreter(program, loader, reporter, namespace);
+            case AST:
+            default:
+                return new ProgramInterpreter(program, loader, reporter, namespace);
+        }
     }
 }
@@ -0,0 +1,435 @@
+package towel.interpreter;
+
+import towel.ast.*;
+
+import java.util.*;
+
+import static towel.interpreter.ClassFileWriter.*;
+
+/**
+ * Compiles function bodies, sequences and programs into JVM classes, for execution by the {@code JvmInterpreter}
+ * <p>
+ * Literals, arithmetic and comparisons of numbers are compiled into plain JVM instructions working on the
+ * {@code Stack}, which the JIT is then free to optimise. Anything else, including arithmetic or comparisons
+ * which find something other than numbers, calls back into the interpreter through {@code JvmRuntime}.
+ * </p>
+ * <p>
+ * Each class is defined by a class loader belonging to this compiler, so they can be unloaded along with it.
+ * </p>
+ *
+ * @see CompiledCode
+ * @see ClassFileWriter
+ */
+class JvmCompiler {
+
+    private static final String COMPILED_CODE = "towel/interpreter/CompiledCode";
+    private static final String RUNTIME = "towel/interpreter/JvmRuntime";
+    private static final String STACK = "towel/interpreter/Stack";
+    private static final String CONSTANTS = "[Ljava/lang/Object;";
+    private static final String RUN = "(Ltowel/interpreter/JvmRuntime;Ltowel/interpreter/Stack;)V";
+    private static final String GENERATED_PACKAGE = "towel/generated/";
+
+    /**
+     * Local variables of the generated 'run' method, the temporary double takes two slots
+     */
+    private static final int THIS = 0;
+    private static final int RUNTIME_LOCAL = 1;
+    private static final int STACK_LOCAL = 2;
+    private static final int CONSTANTS_LOCAL = 3;
+    private static final int TEMPORARY = 4;
+    private static final int MAX_LOCALS = 6;
+    private static final int MAX_STACK = 8;
+
+    private final CodeLoader loader = new CodeLoader(JvmCompiler.class.getClassLoader());
+    private int classCount = 0;
+
+    /**
+     * Node arrays found within the AST, i.e. function bodies and sequences
+     */
+    private final Set<Node[]> known = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private static final class CodeLoader extends ClassLoader {
+
+        CodeLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] code) {
+            return defineClass(name, code, 0, code.length);
+        }
+    }
+
+    /**
+     * Whether the given nodes are part of the AST, rather than being created at runtime e.g. by 'curry'
+     * <p>
+     * Only these are worth compiling, others may only ever be run once
+     * </p>
+     */
+    boolean isKnown(Node[] nodes) {
+        return known.contains(nodes);
+    }
+
+    /**
+     * Compile the given nodes into a class
+     *
+     * @param isTail whether the nodes are a function body, or a branch in tail position within one
+     * @return the compiled code, or null if it can't be compiled and should be interpreted instead
+     */
+    CompiledCode compile(List<Node> nodes, boolean isTail) {
+        try {
+            return new Generator().generate(nodes, isTail);
+        } catch (IllegalStateException | LinkageError | ReflectiveOperationException e) {
+            // too large for a class file, or rejected by the JVM
+            return null;
+        }
+    }
+
+    /**
+     * Generates a single class
+     */
+    private class Generator implements NodeVisitor<Void> {
+
+        private final String name = GENERATED_PACKAGE + "Code" + (++classCount);
+        private final ClassFileWriter writer = new ClassFileWriter(name, COMPILED_CODE);
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> constantIndexes = new IdentityHashMap<>();
+        private ClassFileWriter.MethodWriter run;
+
+        /**
+         * Whether the node being compiled is in tail position
+         */
+        private boolean isTailNode = false;
+
+        CompiledCode generate(List<Node> nodes, boolean isTail) throws ReflectiveOperationException {
+            ClassFileWriter.MethodWriter constructor = writer.method("<init>", "(" + CONSTANTS + ")V", 2, 2);
+            constructor.local(ALOAD, THIS);
+            constructor.local(ALOAD, 1);
+            constructor.ref(INVOKESPECIAL, writer.methodRef(COMPILED_CODE, "<init>", "(" + CONSTANTS + ")V"));
+            constructor.op(RETURN);
+
+            run = writer.method("run", RUN, MAX_STACK, MAX_LOCALS);
+            run.local(ALOAD, THIS);
+            run.ref(GETFIELD, writer.fieldRef(COMPILED_CODE, "constants", CONSTANTS));
+            run.local(ASTORE, CONSTANTS_LOCAL);
+
+            generateNodes(nodes, isTail);
+            run.op(RETURN);
+
+            Class<?> generated = loader.define(name.replace('/', '.'), writer.toByteArray());
+
+            return (CompiledCode) generated.getConstructor(Object[].class).newInstance((Object) constants.toArray());
+        }
+
+        private void generateNodes(List<Node> nodes, boolean isTail) {
+            for (int i = 0; i < nodes.size(); i++) {
+                isTailNode = isTail && i == nodes.size() - 1;
+                nodes.get(i).accept(this);
+            }
+        }
+
+        /**
+         * Load an entry of the constants array onto the operand stack
+         */
+        private void loadConstant(Object constant) {
+            Integer index = constantIndexes.get(constant);
+
+            if (index == null) {
+                index = constants.size();
+
+                if (index > Short.MAX_VALUE) {
+                    throw new IllegalStateException("Too many constants for a compiled class.");
+                }
+                constants.add(constant);
+                constantIndexes.put(constant, index);
+            }
+
+            run.local(ALOAD, CONSTANTS_LOCAL);
+            run.loadInt(index);
+            run.op(AALOAD);
+        }
+
+        private void invokeStack(String method, String descriptor) {
+            run.ref(INVOKEVIRTUAL, writer.methodRef(STACK, method, descriptor));
+        }
+
+        /**
+         * Hand the node to one of the runtime's operations
+         */
+        private void invokeRuntime(String method, Node node) {
+            run.local(ALOAD, RUNTIME_LOCAL);
+            loadConstant(node);
+            run.ref(INVOKEVIRTUAL, writer.methodRef(RUNTIME, method, "(Ljava/lang/Object;)V"));
+        }
+
+        private void evaluate(Node node) {
+            invokeRuntime("evaluate", node);
+        }
+
+        /**
+         * Jump to the given label unless the top two items of the stack are numbers
+         */
+        private void guardNumbers(ClassFileWriter.Label otherwise) {
+            for (int fromTop = 0; fromTop < 2; fromTop++) {
+                run.local(ALOAD, STACK_LOCAL);
+                run.loadInt(fromTop);
+                invokeStack("isDouble", "(I)Z");
+                run.jump(IFEQ, otherwise);
+            }
+        }
+
+        /**
+         * Pop the top number into the temporary, then leave the stack and the next number on the operand stack
+         */
+        private void popOperands() {
+            run.local(ALOAD, STACK_LOCAL);
+            invokeStack("popDouble", "()D");
+            run.local(DSTORE, TEMPORARY);
+            run.local(ALOAD, STACK_LOCAL);
+            run.local(ALOAD, STACK_LOCAL);
+            invokeStack("popDouble", "()D");
+            run.local(DLOAD, TEMPORARY);
+        }
+
+        @Override
+        public Void visit(Program programNode) {
+            evaluate(programNode);
+            return null;
+        }
+
+        @Override
+        public Void visit(Literal literalNode) {
+            Object value = literalNode.getToken().getLiteral();
+
+            run.local(ALOAD, STACK_LOCAL);
+
+            if (value instanceof Double) {
+                run.ref(LDC2_W, writer.doubleRef((Double) value));
+                invokeStack("pushDouble", "(D)V");
+            } else if (value instanceof Boolean) {
+                run.op((Boolean) value ? ICONST_1 : ICONST_0);
+                invokeStack("pushBoolean", "(Z)V");
+            } else if (value instanceof String) {
+                run.loadConstant(writer.stringRef((String) value));
+                invokeStack("push", "(Ljava/lang/Object;)V");
+            } else {
+                loadConstant(value);
+                invokeStack("push", "(Ljava/lang/Object;)V");
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(BinaryOperator binaryOperatorNode) {
+            int operation;
+
+            switch (binaryOperatorNode.getTokenType()) {
+                case PLUS:
+                    operation = DADD;
+                    break;
+                case MINUS:
+                    operation = DSUB;
+                    break;
+                case STAR:
+                    operation = DMUL;
+                    break;
+                case SLASH:
+                    operation = DDIV;
+                    break;
+                case MOD:
+                    operation = DREM;
+                    break;
+                default:
+                    evaluate(binaryOperatorNode);
+                    return null;
+            }
+
+            ClassFileWriter.Label interpret = new ClassFileWriter.Label();
+            ClassFileWriter.Label end = new ClassFileWriter.Label();
+            boolean canFail = !binaryOperatorNode.isVerified() || operation == DDIV || operation == DREM;
+
+            if (!binaryOperatorNode.isVerified()) {
+                guardNumbers(interpret);
+            }
+
+            if (operation == DDIV || operation == DREM) {
+                // leave division by zero to the interpreter, which raises the error
+                run.local(ALOAD, STACK_LOCAL);
+                invokeStack("peekDouble", "()D");
+                run.op(DCONST_0);
+                run.op(DCMPL);
+                run.jump(IFEQ, interpret);
+            }
+
+            popOperands();
+            run.op(operation);
+            invokeStack("pushDouble", "(D)V");
+
+            if (canFail) {
+                run.jump(GOTO, end);
+                run.mark(interpret);
+                evaluate(binaryOperatorNode);
+                run.mark(end);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Comparison comparisonNode) {
+            int compare;
+            int jumpIfFalse;
+
+            // as javac compiles comparisons of doubles, so NaN compares the same way
+            switch (comparisonNode.getTokenType()) {
+                case LESS_THAN:
+                    compare = DCMPG;
+                    jumpIfFalse = IFGE;
+                    break;
+                case LESS_THAN_EQUAL:
+                    compare = DCMPG;
+                    jumpIfFalse = IFGT;
+                    break;
+                case GREATER_THAN:
+                    compare = DCMPL;
+                    jumpIfFalse = IFLE;
+                    break;
+                case GREATER_THAN_EQUAL:
+                    compare = DCMPL;
+                    jumpIfFalse = IFLT;
+                    break;
+                case EQUAL_EQUAL:
+                    compare = DCMPL;
+                    jumpIfFalse = IFNE;
+                    break;
+                case NOT_EQUAL:
+                    compare = DCMPL;
+                    jumpIfFalse = IFEQ;
+                    break;
+                default:
+                    evaluate(comparisonNode);
+                    return null;
+            }
+
+            ClassFileWriter.Label interpret = new ClassFileWriter.Label();
+            ClassFileWriter.Label isFalse = new ClassFileWriter.Label();
+            ClassFileWriter.Label push = new ClassFileWriter.Label();
+            ClassFileWriter.Label end = new ClassFileWriter.Label();
+
+            guardNumbers(interpret);
+            popOperands();
+            run.op(compare);
+            run.jump(jumpIfFalse, isFalse);
+            run.op(ICONST_1);
+            run.jump(GOTO, push);
+            run.mark(isFalse);
+            run.op(ICONST_0);
+            run.mark(push);
+            invokeStack("pushBoolean", "(Z)V");
+            run.jump(GOTO, end);
+
+            run.mark(interpret);
+            evaluate(comparisonNode);
+            run.mark(end);
+            return null;
+        }
+
+        @Override
+        public Void visit(Condition conditionNode) {
+            if (conditionNode.hasBranches()) {
+                generateBranches(conditionNode);
+            } else {
+                invokeRuntime(isTailNode ? "tailBranch" : "branch", conditionNode);
+            }
+            return null;
+        }
+
+        /**
+         * Generate literal branches in place, anything other than a boolean is left to the interpreter
+         */
+        private void generateBranches(Condition conditionNode) {
+            boolean isTail = isTailNode;
+            ClassFileWriter.Label interpret = new ClassFileWriter.Label();
+            ClassFileWriter.Label otherwise = new ClassFileWriter.Label();
+            ClassFileWriter.Label end = new ClassFileWriter.Label();
+
+            if (!conditionNode.isVerified()) {
+                run.local(ALOAD, STACK_LOCAL);
+                run.loadInt(0);
+                invokeStack("isBoolean", "(I)Z");
+                run.jump(IFEQ, interpret);
+            }
+
+            run.local(ALOAD, STACK_LOCAL);
+            invokeStack("popBoolean", "()Z");
+            run.jump(IFEQ, otherwise);
+            generateNodes(Arrays.asList(conditionNode.getThenBranch().getNodes()), isTail);
+            run.jump(GOTO, end);
+
+            run.mark(otherwise);
+            if (conditionNode.getElseBranch() != null) {
+                generateNodes(Arrays.asList(conditionNode.getElseBranch().getNodes()), isTail);
+            }
+
+            if (!conditionNode.isVerified()) {
+                run.jump(GOTO, end);
+                run.mark(interpret);
+                invokeRuntime(isTail ? "tailBranch" : "branch", conditionNode);
+            }
+            run.mark(end);
+            isTailNode = isTail;
+        }
+
+        @Override
+        public Void visit(Sequence sequenceNode) {
+            known.add(sequenceNode.getNodes());
+
+            // generated in place by the condition after it
+            if (sequenceNode.isBranch()) {
+                return null;
+            }
+
+            run.local(ALOAD, STACK_LOCAL);
+            loadConstant(sequenceNode);
+            invokeStack("push", "(Ljava/lang/Object;)V");
+            return null;
+        }
+
+        @Override
+        public Void visit(Function functionNode) {
+            known.add(functionNode.getBody());
+            evaluate(functionNode);
+            return null;
+        }
+
+        @Override
+        public Void visit(Identifier identifierNode) {
+            if (identifierNode.hasSlot()) {
+                invokeRuntime("loadSlot", identifierNode);
+            } else {
+                invokeRuntime(isTailNode ? "tailCall" : "call", identifierNode);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Import importNode) {
+            evaluate(importNode);
+            return null;
+        }
+
+        @Override
+        public Void visit(Let letNode) {
+            if (letNode.hasSlot()) {
+                invokeRuntime("storeSlot", letNode);
+            } else {
+                evaluate(letNode);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Array arrayNode) {
+            evaluate(arrayNode);
+            return null;
+        }
+    }
+}
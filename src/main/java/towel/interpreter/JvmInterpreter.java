@@ -0,0 +1,146 @@
+package towel.interpreter;
+
+import towel.ErrorReporter;
+import towel.ast.Node;
+import towel.ast.Program;
+import towel.ast.Sequence;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interpreter which compiles programs, function bodies and sequences into JVM classes, then runs those
+ * <p>
+ * Each list of nodes is compiled once, the first time it runs. Anything the generated code doesn't handle itself,
+ * and anything which can't be compiled, is handed back to the tree-walking interpreter this extends, so both
+ * engines share the same semantics. Calls are made in the same way, so this shares its limits on call depth too.
+ * </p>
+ *
+ * @see JvmCompiler
+ */
+class JvmInterpreter extends ProgramInterpreter {
+
+    /**
+     * Marks node arrays which couldn't be compiled
+     */
+    private static final CompiledCode NOT_COMPILED = new CompiledCode(new Object[0]) {
+        @Override
+        public void run(JvmRuntime runtime, Stack stack) {
+            throw new IllegalStateException("Not compiled.");
+        }
+    };
+
+    private final JvmCompiler compiler = new JvmCompiler();
+    private final JvmRuntime runtime = new JvmRuntime(this);
+
+    /**
+     * Compiled code keyed by the node arrays it was compiled from, for function bodies (and branches within them in
+     * tail position) and everything else
+     */
+    private final Map<Node[], CompiledCode> bodies = new IdentityHashMap<>();
+    private final Map<Node[], CompiledCode> sequences = new IdentityHashMap<>();
+
+    JvmInterpreter(Program program, NamespaceLoader loader, ErrorReporter reporter, Namespace namespace) {
+        super(program, loader, reporter, namespace);
+    }
+
+    @Override
+    public Object interpret(Node[] node) {
+        CompiledCode code = getCompiled(sequences, node, false);
+
+        if (code == null) {
+            return super.interpret(node);
+        }
+        code.run(runtime, getStack());
+
+        if (getStack().size() > 0) {
+            return getStack().peek();
+        }
+        return null;
+    }
+
+    @Override
+    public void execute(Sequence sequence) {
+        Object compiled = getCompiled(sequence);
+
+        if (compiled == null) {
+            // nodes created at runtime, e.g. by 'curry', may only run once so aren't worth compiling
+            if (!compiler.isKnown(sequence.getNodes())) {
+                super.execute(sequence);
+                return;
+            }
+
+            CompiledCode code = getCompiled(sequences, sequence.getNodes(), false);
+            compiled = code == null ? NOT_COMPILED : code;
+            setCompiled(sequence, compiled);
+        }
+
+        if (compiled == NOT_COMPILED) {
+            super.execute(sequence);
+        } else {
+            ((CompiledCode) compiled).run(runtime, getStack());
+        }
+    }
+
+    @Override
+    void executeNodes(List<Node> nodes) {
+        // programs only run once, so aren't cached
+        CompiledCode code = compiler.compile(nodes, false);
+
+        if (code == null) {
+            super.executeNodes(nodes);
+        } else {
+            code.run(runtime, getStack());
+        }
+    }
+
+    @Override
+    void executeBody(Node[] nodes) {
+        CompiledCode code = getCompiled(bodies, nodes, true);
+
+        if (code == null) {
+            super.executeBody(nodes);
+        } else {
+            code.run(runtime, getStack());
+        }
+    }
+
+    @Override
+    void executeBranch(Sequence branch, boolean isTail) {
+        if (isTail) {
+            executeBody(branch.getNodes());
+            return;
+        }
+
+        CompiledCode code = getCompiled(sequences, branch.getNodes(), false);
+
+        if (code == null) {
+            super.executeBranch(branch, false);
+        } else {
+            code.run(runtime, getStack());
+        }
+    }
+
+    /**
+     * Get the compiled code for the given nodes, compiling them if they haven't been already
+     *
+     * @return the compiled code, or null if the nodes should be interpreted
+     */
+    private CompiledCode getCompiled(Map<Node[], CompiledCode> cache, Node[] nodes, boolean isTail) {
+        CompiledCode code = cache.get(nodes);
+
+        if (code == null) {
+            // nodes created at runtime, e.g. by 'curry', may only run once so aren't worth compiling
+            if (!compiler.isKnown(nodes)) {
+                return null;
+            }
+
+            code = compiler.compile(Arrays.asList(nodes), isTail);
+            cache.put(nodes, code == null ? NOT_COMPILED : code);
+        }
+
+        return code == NOT_COMPILED ? null : code;
+    }
+}
@@ -0,0 +1,64 @@
+package towel.interpreter;
+
+import towel.ast.Condition;
+import towel.ast.Identifier;
+import towel.ast.Let;
+import towel.ast.Node;
+
+/**
+ * Operations called by generated code, for anything it doesn't do itself
+ * <p>
+ * Each is handed back to the interpreter, so compiled code shares the same semantics and error reporting.
+ * Nodes are passed as objects, to keep the generated code free of casts.
+ * </p>
+ *
+ * @see CompiledCode
+ */
+public final class JvmRuntime {
+
+    private final ProgramInterpreter interpreter;
+
+    JvmRuntime(ProgramInterpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * Evaluate a node with the tree-walking interpreter
+     */
+    public void evaluate(Object node) {
+        ((Node) node).accept(interpreter);
+    }
+
+    public void call(Object identifierNode) {
+        interpreter.call((Identifier) identifierNode, false);
+    }
+
+    /**
+     * Call from the last node of a function body, leaving a call to a user defined function for the caller to make
+     */
+    public void tailCall(Object identifierNode) {
+        interpreter.call((Identifier) identifierNode, true);
+    }
+
+    /**
+     * Read a let held in a slot of the running call
+     */
+    public void loadSlot(Object identifierNode) {
+        interpreter.loadSlot((Identifier) identifierNode);
+    }
+
+    public void storeSlot(Object letNode) {
+        interpreter.storeSlot((Let) letNode);
+    }
+
+    public void branch(Object conditionNode) {
+        interpreter.condition((Condition) conditionNode, false);
+    }
+
+    /**
+     * Branch from the last node of a function body, the branch taken is in tail position too
+     */
+    public void tailBranch(Object conditionNode) {
+        interpreter.condition((Condition) conditionNode, true);
+    }
+}
@@ -0,0 +1,141 @@
+package towel.interpreter;
+
+import towel.ast.*;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Links each identifier within a program to the binding of its name, so that calls don't need to look names up
+ * <p>
+ * This is run once a program's imports have been processed, at which point any namespace being referred to
+ * (e.g. the 'io' in 'io.println') will exist. Names which aren't defined yet, such as functions defined further on,
+ * are linked to an empty binding which is filled when the definition is reached.
+ * </p>
+ * <p>
+ * Nested programs are skipped, they are linked against their own namespace when they are executed.
+ * </p>
+ * <p>
+ * The links are kept by the interpreter rather than on the identifiers, so a program which is run again, e.g. by
+ * another interpreter, carries nothing over from the previous run.
+ * </p>
+ */
+class Linker implements NodeVisitor<Void> {
+
+    /**
+     * The namespace an identifier was linked in, and the binding it resolved to there
+     */
+    static final class Link {
+
+        private final Namespace namespace;
+        private final Namespace.Binding binding;
+
+        private Link(Namespace namespace, Namespace.Binding binding) {
+            this.namespace = namespace;
+            this.binding = binding;
+        }
+
+        /**
+         * @return the binding, or null if not linked within the given namespace
+         */
+        Namespace.Binding getBinding(Namespace namespace) {
+            return namespace == this.namespace ? binding : null;
+        }
+    }
+
+    private final Namespace namespace;
+    private final Map<Identifier, Link> links;
+
+    /**
+     * @param links where to keep the link of each identifier
+     */
+    Linker(Namespace namespace, Map<Identifier, Link> links) {
+        this.namespace = Objects.requireNonNull(namespace);
+        this.links = Objects.requireNonNull(links);
+    }
+
+    /**
+     * Link every identifier within the given nodes
+     */
+    void link(Iterable<Node> nodes) {
+        for (Node node : nodes) {
+            node.accept(this);
+        }
+    }
+
+    private void link(Node[] nodes) {
+        for (Node node : nodes) {
+            node.accept(this);
+        }
+    }
+
+    @Override
+    public Void visit(Program programNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Literal literalNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(BinaryOperator binaryOperatorNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Condition conditionNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Comparison comparisonNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Sequence sequenceNode) {
+        link(sequenceNode.getNodes());
+        return null;
+    }
+
+    @Override
+    public Void visit(Function functionNode) {
+        link(functionNode.getBody());
+        return null;
+    }
+
+    @Override
+    public Void visit(Identifier identifierNode) {
+        Namespace target = namespace;
+
+        if (identifierNode.isNamespaced()) {
+            Object child = namespace.get(identifierNode.getNamespace());
+
+            // not a valid namespace, leave it unlinked so the error is raised when it's called
+            if (!(child instanceof Namespace)) {
+                return null;
+            }
+            target = (Namespace) child;
+        }
+
+        links.put(identifierNode, new Link(namespace, target.getBinding(identifierNode.getName())));
+        return null;
+    }
+
+    @Override
+    public Void visit(Import importNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Let letNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Array arrayNode) {
+        return null;
+    }
+}
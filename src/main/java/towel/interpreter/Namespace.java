@@ -7,21 +7,65 @@ import java.util.Map;
 
 /**
  * Represents a namespace, tracks identifiers and their values contained within
+ * <p>
+ * Each name is held in a {@code Binding}, once created a name's binding never changes, only its value. This allows
+ * identifiers to be linked directly to a binding, they will still see the correct value if the name is redefined.
+ * </p>
  */
 public class Namespace {
 
+    /**
+     * Holds the current value of a single name
+     */
+    public static final class Binding {
+
+        private Object value;
+
+        private Binding(Object value) {
+            this.value = value;
+        }
+
+        /**
+         * @return the current value, or null if the name is not currently defined
+         */
+        public Object get() {
+            return value;
+        }
+    }
+
     /**
      * All identifiers
      */
-    private Map<String, Object> identifiers = new HashMap<>();
+    private Map<String, Binding> identifiers = new HashMap<>();
 
     /**
      * A list of public identifiers, i.e. those that would be visible to a parent namespace
      */
     private List<String> publicMembers = new ArrayList<>();
 
+    /**
+     * Incremented whenever a member is defined, so anything caching lookups can tell they may be out of date
+     */
+    private int modificationCount = 0;
+
+    /**
+     * Undefine everything
+     * <p>
+     * Bindings are kept, as they may be linked, but are emptied
+     * </p>
+     */
     public void clear() {
-        identifiers.clear();
+        for (Binding binding : identifiers.values()) {
+            binding.value = null;
+        }
+        modificationCount++;
+    }
+
+    /**
+     * @return a count which changes whenever a member is defined or the namespace is cleared
+     */
+    public int getModificationCount() {
+        return modificationCount;
     }
 
     /**
@@ -69,7 +113,31 @@ public class Namespace {
      * @param value value of the member
      */
     public void definePrivateMember(String name, Object value) {
-        identifiers.put(name, value);
+        Binding binding = identifiers.get(name);
+
+        if (binding == null) {
+            identifiers.put(name, new Binding(value));
+        } else {
+            binding.value = value;
+        }
+        modificationCount++;
+    }
+
+    /**
+     * Get the binding for the given name, creating an empty one if the name hasn't been defined yet
+     *
+     * @param name the name to look up
+     * @return the binding, which will hold the value of any future definition of the name
+     */
+    Binding getBinding(String name) {
+        Binding binding = identifiers.get(name);
+
+        if (binding == null) {
+            binding = new Binding(null);
+            identifiers.put(name, binding);
+        }
+
+        return binding;
     }
 
     /**
@@ -78,7 +146,7 @@ public class Namespace {
      * @return whether the name is defined
      */
     public boolean isDefined(String name) {
-        return identifiers.containsKey(name);
+        return get(name) != null;
     }
 
     /**
@@ -88,12 +156,10 @@ public class Namespace {
      * @return the namespace
      */
     public Namespace getNamespace(String name) {
-        if (identifiers.containsKey(name)) {
-            Object ns = identifiers.get(name);
+        Object ns = get(name);
 
-            if (ns instanceof Namespace) {
-                return (Namespace) ns;
-            }
+        if (ns instanceof Namespace) {
+            return (Namespace) ns;
         }
 
         throw new IllegalArgumentException(String.format("Invalid namespace requested '%s'.", name));
@@ -105,8 +171,10 @@ public class Namespace {
      * @return the identifier
      */
     public Object get(String name) {
-        if (identifiers.containsKey(name)) {
-            return identifiers.get(name);
+        Binding binding = identifiers.get(name);
+
+        if (binding != null) {
+            return binding.value;
         }
         return null;
     }
@@ -0,0 +1,166 @@
+package towel.interpreter;
+
+/**
+ * Instruction set for the bytecode interpreter
+ * <p>
+ * Each instruction is packed into a single int, the low byte holds the opcode and the
+ * remaining bits hold the operand. For most instructions the operand is an index into the
+ * constant pool of the {@code Chunk} the instruction belongs to.
+ * </p>
+ * <p>
+ * Superinstructions, which fuse a common run of nodes into one instruction, are followed by
+ * further words which each hold another index into the constant pool.
+ * </p>
+ *
+ * @see Chunk
+ * @see BytecodeCompiler
+ */
+final class OpCode {
+
+    static final int OPCODE_MASK = 0xFF;
+    static final int OPERAND_SHIFT = 8;
+
+    /**
+     * Largest operand which can be packed alongside an opcode
+     */
+    static final int MAX_OPERAND = 0xFFFFFF;
+
+    /**
+     * Push the constant at the operand index, a number, string, boolean or sequence
+     */
+    static final int PUSH = 0;
+
+    /**
+     * Binary operators, operand is the index of the originating node (for error reporting)
+     */
+    static final int ADD = 1;
+    static final int SUBTRACT = 2;
+    static final int MULTIPLY = 3;
+    static final int DIVIDE = 4;
+    static final int MODULO = 5;
+
+    /**
+     * Comparisons, operand is the index of the originating node
+     */
+    static final int LESS_THAN = 6;
+    static final int LESS_THAN_EQUAL = 7;
+    static final int GREATER_THAN = 8;
+    static final int GREATER_THAN_EQUAL = 9;
+    static final int EQUAL = 10;
+    static final int NOT_EQUAL = 11;
+    static final int AND = 12;
+    static final int OR = 13;
+
+    /**
+     * Conditions, operand is the index of the originating node
+     * <p>
+     * {@code BRANCH} is the two-branched '?', {@code BRANCH_SINGLE} is the single-branched '??'
+     * </p>
+     */
+    static final int BRANCH = 14;
+    static final int BRANCH_SINGLE = 15;
+
+    /**
+     * Call the function named by the identifier at the operand index
+     */
+    static final int CALL = 16;
+
+    /**
+     * Evaluate the node at the operand index using the tree-walking interpreter
+     * <p>
+     * Used for nodes which only run once or rarely, e.g. function definitions and imports
+     * </p>
+     */
+    static final int EVALUATE = 17;
+
+    /**
+     * Superinstructions for a number literal followed by a binary operator or comparison, e.g. {@code 1 -}
+     * <p>
+     * Operand is the index of the operator's node, the following word is the index of the number
+     * </p>
+     */
+    static final int ARITHMETIC_CONSTANT = 18;
+    static final int COMPARE_CONSTANT = 19;
+
+    /**
+     * Superinstructions for 'dup', a number literal, then a binary operator or comparison, e.g. {@code dup 1 >}
+     * <p>
+     * Operand is the index of the 'dup' identifier, the following words are the indexes of the operator's node
+     * and the number
+     * </p>
+     */
+    static final int DUP_ARITHMETIC_CONSTANT = 20;
+    static final int DUP_COMPARE_CONSTANT = 21;
+
+    /**
+     * Jumps, for conditions whose branches are literal sequences, which are compiled in place
+     * <p>
+     * {@code JUMP_IF_FALSE} pops a boolean, its operand is the index of the condition's node and the following word
+     * is the position to jump to. {@code JUMP}'s operand is the position to jump to.
+     * </p>
+     */
+    static final int JUMP_IF_FALSE = 22;
+    static final int JUMP = 23;
+
+    /**
+     * Read and bind the lets held in the slots of the running call, the operand is the index of the node
+     */
+    static final int LOAD_SLOT = 24;
+    static final int STORE_SLOT = 25;
+
+    private static final String[] NAMES = new String[]{
+            "PUSH",
+            "ADD", "SUBTRACT", "MULTIPLY", "DIVIDE", "MODULO",
+            "LESS_THAN", "LESS_THAN_EQUAL", "GREATER_THAN", "GREATER_THAN_EQUAL", "EQUAL", "NOT_EQUAL", "AND", "OR",
+            "BRANCH", "BRANCH_SINGLE",
+            "CALL",
+            "EVALUATE",
+            "ARITHMETIC_CONSTANT", "COMPARE_CONSTANT",
+            "DUP_ARITHMETIC_CONSTANT", "DUP_COMPARE_CONSTANT",
+            "JUMP_IF_FALSE", "JUMP",
+            "LOAD_SLOT", "STORE_SLOT",
+    };
+
+    private OpCode() {
+
+    }
+
+    static int encode(int opCode, int operand) {
+        if (operand < 0 || operand > MAX_OPERAND) {
+            throw new IllegalArgumentException(String.format("Operand out of range: %d.", operand));
+        }
+        return opCode | (operand << OPERAND_SHIFT);
+    }
+
+    static int opCode(int instruction) {
+        return instruction & OPCODE_MASK;
+    }
+
+    static int operand(int instruction) {
+        return instruction >>> OPERAND_SHIFT;
+    }
+
+    /**
+     * The number of words taken by an instruction, including its opcode
+     */
+    static int size(int opCode) {
+        switch (opCode) {
+            case ARITHMETIC_CONSTANT:
+            case COMPARE_CONSTANT:
+            case JUMP_IF_FALSE:
+                return 2;
+            case DUP_ARITHMETIC_CONSTANT:
+            case DUP_COMPARE_CONSTANT:
+                return 3;
+            default:
+                return 1;
+        }
+    }
+
+    static String name(int opCode) {
+        if (opCode < 0 || opCode >= NAMES.length) {
+            return "UNKNOWN";
+        }
+        return NAMES[opCode];
+    }
+}
@@ -3,13 +3,36 @@ package towel.interpreter;
 import towel.ErrorReporter;
 import towel.ast.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 /**
  * Default interpreter
  */
 class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
 
+    /**
+     * Binary operators are all mathematical, so need two numbers
+     */
+    static final StackCondition.PreCondition BINARY_OPERANDS =
+            StackCondition.preConditionFor(Double.class, Double.class);
+
+    static final StackCondition.PreCondition BRANCH_OPERANDS =
+            StackCondition.preConditionFor(Sequence.class, Sequence.class, Boolean.class);
+
+    static final StackCondition.PreCondition SINGLE_BRANCH_OPERANDS =
+            StackCondition.preConditionFor(Sequence.class, Boolean.class);
+
+    private static final StackCondition.PreCondition LET_OPERAND = StackCondition.preConditionFor(Object.class);
+
+    static final String MAXIMUM_CALL_DEPTH_EXCEEDED = "Maximum call depth exceeded.";
+
     /**
      * Container for values in the running program
      */
@@ -31,11 +54,72 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
 
     private final ErrorReporter reporter;
 
+    /**
+     * What each identifier was linked to, and the functions it resolved to within namespaces other than the one it
+     * was linked in
+     */
+    private final Map<Identifier, Linker.Link> links = new IdentityHashMap<>();
+    private final Map<Identifier, CallSiteCache> callSiteCaches = new IdentityHashMap<>();
+
+    /**
+     * The compiled form of each sequence which has been run, for the engines which compile them
+     * <p>
+     * Sequences created at runtime, e.g. by 'curry', are let go along with their compiled form once they're no
+     * longer used.
+     * </p>
+     */
+    private final Map<Sequence, Object> compiledSequences = new WeakHashMap<>();
+
     /**
      * Current namespace, containing lookups for identifiers
      */
     private Namespace namespace;
 
+    /**
+     * A call to a user defined function found in tail position, left for the calling function to make
+     * <p>
+     * Making the call from the caller's loop, rather than recursing into it, means tail recursive
+     * functions run in constant Java stack space
+     * </p>
+     */
+    private Identifier tailCall;
+    private UserDefinedFunction tailCallFunction;
+
+    /**
+     * Post-conditions of functions which have been tail called, still to be checked once the final call returns
+     */
+    private final List<PendingPostCondition> pendingPostConditions = new ArrayList<>();
+
+    /**
+     * The number of calls to user defined functions currently being made, and the most allowed at once
+     */
+    private int callDepth = 0;
+    private int maxCallDepth = DEFAULT_MAX_CALL_DEPTH;
+
+    /**
+     * Slots holding the lets of user defined functions, see {@code Function#getSlotCount}
+     * <p>
+     * Each call has a window of them, from {@code slotBase} up to {@code slotTop}, above the windows of the calls
+     * which are still running beneath it
+     * </p>
+     */
+    private Object[] slots = new Object[64];
+    private int slotBase = 0;
+    private int slotTop = 0;
+
+    /**
+     * A post-condition to check, and the identifier which made the call
+     */
+    private static final class PendingPostCondition {
+        final Identifier identifierNode;
+        final StackCondition.PostCondition condition;
+
+        PendingPostCondition(Identifier identifierNode, StackCondition.PostCondition condition) {
+            this.identifierNode = identifierNode;
+            this.condition = condition;
+        }
+    }
+
     /**
      * Thrown when an error is encountered, used only internally
      * as it's easier to throw and unwind the stack to get out of an error condition and quit
@@ -44,12 +128,12 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
 
         final Token token;
 
-        private InterpreterError(String message, Token token) {
+        InterpreterError(String message, Token token) {
             super(message);
             this.token = token;
         }
 
-        private InterpreterError(String message, Token token, Throwable previous) {
+        InterpreterError(String message, Token token, Throwable previous) {
             super(message, previous);
             this.token = token;
         }
@@ -100,6 +184,24 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
         return null;
     }
 
+    @Override
+    public void execute(Sequence sequence) {
+        for (Node n : sequence.getNodes()) {
+            n.accept(this);
+        }
+    }
+
+    /**
+     * @return the compiled form of the sequence, or null if it hasn't been compiled
+     */
+    Object getCompiled(Sequence sequence) {
+        return compiledSequences.get(sequence);
+    }
+
+    void setCompiled(Sequence sequence, Object compiled) {
+        compiledSequences.put(sequence, compiled);
+    }
+
     /**
      * Get the current stack
      *
@@ -110,6 +212,11 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
         return stack;
     }
 
+    @Override
+    public void setMaxCallDepth(int maxCallDepth) {
+        this.maxCallDepth = maxCallDepth;
+    }
+
     /**
      * Get the current namespace
      *
@@ -119,6 +226,10 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
         return namespace;
     }
 
+    void setNamespace(Namespace namespace) {
+        this.namespace = namespace;
+    }
+
     /**
      * Visit the given program node. This could be the root program, or a 'sub program', which will then
      * be loaded into a namespace loader to be queried later on in any import statements
@@ -138,9 +249,15 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
             namespace = new Namespace();
         }
 
-        for (Node node : programNode.getNodes()) {
-            node.accept(this);
-        }
+        // imports are always first, once they have all been processed every name that
+        // is referred to can be linked to its binding in the namespace
+
+        List<Node> nodes = programNode.getNodes();
+        int bodyStart = getBodyStart(programNode);
+
+        executeNodes(nodes.subList(0, bodyStart));
+        new Linker(namespace, links).link(nodes);
+        executeNodes(nodes.subList(bodyStart, nodes.size()));
 
         if (previousNamespace != null) {
             if (programNode.isInternal()) {
@@ -154,6 +271,71 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
         return null;
     }
 
+    /**
+     * Get the index of the first node in the program after its imports
+     * <p>
+     * Any imported programs will have been placed before their import, so will be included before this index
+     * </p>
+     */
+    private int getBodyStart(Program programNode) {
+        List<Import> imports = programNode.getImports();
+
+        if (imports.isEmpty()) {
+            return 0;
+        }
+
+        return programNode.getNodes().indexOf(imports.get(imports.size() - 1)) + 1;
+    }
+
+    /**
+     * Execute each of the given nodes from a program, in order
+     * <p>
+     * Engines which lower the AST into another form override this to run that form instead
+     * </p>
+     */
+    void executeNodes(List<Node> nodes) {
+        for (Node node : nodes) {
+            node.accept(this);
+        }
+    }
+
+    /**
+     * Execute the body of a user defined function, or a branch in tail position within one
+     * <p>
+     * A call to a user defined function as the last node is not made, but left in {@code tailCall}
+     * for the function's caller to make. Engines which lower the AST override this, along with {@code executeNodes}.
+     * </p>
+     */
+    void executeBody(Node[] nodes) {
+        int last = nodes.length - 1;
+
+        for (int i = 0; i < last; i++) {
+            nodes[i].accept(this);
+        }
+
+        if (last < 0) {
+            return;
+        }
+
+        if (nodes[last] instanceof Identifier) {
+            call((Identifier) nodes[last], true);
+        } else if (nodes[last] instanceof Condition) {
+            condition((Condition) nodes[last], true);
+        } else {
+            nodes[last].accept(this);
+        }
+    }
+
+    /**
+     * Execute the body of a user defined function, in the same way as {@code executeBody}
+     * <p>
+     * Engines which compile functions once they've been called enough override this
+     * </p>
+     */
+    void executeFunction(UserDefinedFunction function) {
+        executeBody(function.getBody());
+    }
+
     @Override
     public Void visit(Literal literalNode) {
         stack.push(literalNode.getToken().getLiteral());
@@ -167,39 +349,38 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
         // binary operators are all mathematical, so the
         // stack must have two numbers at the top
 
-        stack.assertState(
-                StackCondition.preConditionFor(Double.class, Double.class),
-                binaryOperatorNode.getToken()
-        );
+        if (!binaryOperatorNode.isVerified()) {
+            stack.assertState(BINARY_OPERANDS, binaryOperatorNode.getToken());
+        }
 
         double right = stack.popDouble();
         double left = stack.popDouble();
 
         switch (binaryOperatorNode.getTokenType()) {
             case PLUS:
-                stack.push(left + right);
+                stack.pushDouble(left + right);
                 return null;
 
             case MINUS:
-                stack.push(left - right);
+                stack.pushDouble(left - right);
                 return null;
 
             case STAR:
-                stack.push(left * right);
+                stack.pushDouble(left * right);
                 return null;
 
             case MOD:
                 if (right == 0) {
                     throw new InterpreterError("Division by zero.", binaryOperatorNode.getToken());
                 }
-                stack.push(left % right);
+                stack.pushDouble(left % right);
                 return null;
 
             case SLASH:
                 if (right == 0) {
                     throw new InterpreterError("Division by zero.", binaryOperatorNode.getToken());
                 }
-                stack.push(left / right);
+                stack.pushDouble(left / right);
                 return null;
         }
 
@@ -209,27 +390,44 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
     @Override
     public Void visit(Comparison comparisonNode) {
 
-        stack.assertStack(2, "Two arguments are required for comparisons.", comparisonNode.getToken());
+        if (!comparisonNode.isVerified()) {
+            stack.assertStack(2, "Two arguments are required for comparisons.", comparisonNode.getToken());
+        }
 
         // comparisons can happen on most types, so it's partitioned off
         // into separate methods for each compatible set of types
 
+        if (stack.isDouble(0) && stack.isDouble(1)) {
+            double right = stack.popDouble();
+            double left = stack.popDouble();
+            doNumberComparison(comparisonNode, left, right);
+            return null;
+        }
+
         Object right = stack.pop();
         Object left = stack.pop();
 
-        if (areAllOfType(Double.class, right, left)) {
+        compare(comparisonNode, left, right);
+        return null;
+    }
+
+    /**
+     * Compare two values of any type, leave result on the top of the stack
+     */
+    void compare(Comparison comparisonNode, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) {
             doNumberComparison(comparisonNode, (double) left, (double) right);
-            return null;
+            return;
         }
 
-        if (areAllOfType(String.class, right, left)) {
+        if (left instanceof String && right instanceof String) {
             doStringComparison(comparisonNode, left.toString(), right.toString());
-            return null;
+            return;
         }
 
-        if (areAllOfType(Boolean.class, left, right)) {
+        if (left instanceof Boolean && right instanceof Boolean) {
             doBooleanComparison(comparisonNode, (boolean) left, (boolean) right);
-            return null;
+            return;
         }
 
         String message = String.format("This comparison cannot be done between '%s' and '%s'.",
@@ -275,7 +473,7 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
                 throw new InterpreterError("Invalid comparison: " + node, node.getToken());
         }
 
-        stack.push(wasTruthy);
+        stack.pushBoolean(wasTruthy);
     }
 
     /**
@@ -283,11 +481,11 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
      */
     private void doStringComparison(Comparison node, String left, String right) {
         if (node.getTokenType() == Token.TokenType.EQUAL_EQUAL) {
-            stack.push(left.equals(right));
+            stack.pushBoolean(left.equals(right));
             return;
         }
         if (node.getTokenType() == Token.TokenType.NOT_EQUAL) {
-            stack.push(!left.equals(right));
+            stack.pushBoolean(!left.equals(right));
             return;
         }
         throw new InterpreterError("Strings can only be checked with == and !=.", node.getToken());
@@ -298,19 +496,19 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
      */
     private void doBooleanComparison(Comparison node, boolean left, boolean right) {
         if (node.getTokenType() == Token.TokenType.EQUAL_EQUAL) {
-            stack.push(left == right);
+            stack.pushBoolean(left == right);
             return;
         }
         if (node.getTokenType() == Token.TokenType.NOT_EQUAL) {
-            stack.push(left != right);
+            stack.pushBoolean(left != right);
             return;
         }
         if (node.getTokenType() == Token.TokenType.OR) {
-            stack.push(left || right);
+            stack.pushBoolean(left || right);
             return;
         }
         if (node.getTokenType() == Token.TokenType.AND) {
-            stack.push(left && right);
+            stack.pushBoolean(left && right);
             return;
         }
         throw new InterpreterError("Booleans can only be checked with '==', '!=', '||' and '&&'.", node.getToken());
@@ -318,26 +516,64 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
 
     @Override
     public Void visit(Condition conditionNode) {
+        condition(conditionNode, false);
+        return null;
+    }
 
-        if (conditionNode.getTokenType() == Token.TokenType.QUESTION_MARK) {
-            branchedCondition(conditionNode);
+    /**
+     * @param isTail whether the condition is the last node of a function body, so the chosen branch is too
+     */
+    void condition(Condition conditionNode, boolean isTail) {
+        if (conditionNode.hasBranches()) {
+            literalBranchCondition(conditionNode, isTail);
+        } else if (conditionNode.getTokenType() == Token.TokenType.QUESTION_MARK) {
+            branchedCondition(conditionNode, isTail);
         } else if (conditionNode.getTokenType() == Token.TokenType.DOUBLE_QUESTION_MARK) {
-            singleBranchCondition(conditionNode);
+            singleBranchCondition(conditionNode, isTail);
+        }
+    }
+
+    /**
+     * The branches are literal sequences which were never pushed, so only the boolean is on the stack
+     */
+    private void literalBranchCondition(Condition node, boolean isTail) {
+        assertLiteralBranchOperand(node);
+
+        Sequence chosen = stack.popBoolean() ? node.getThenBranch() : node.getElseBranch();
+
+        if (chosen != null) {
+            executeBranch(chosen, isTail);
+        }
+    }
+
+    /**
+     * Check there's a boolean for a condition whose branches are literal sequences
+     * <p>
+     * If not, the branches are pushed after all so the error is the same as if they had been
+     * </p>
+     */
+    void assertLiteralBranchOperand(Condition node) {
+        if (node.isVerified() || stack.isBoolean(0)) {
+            return;
+        }
+
+        stack.push(node.getThenBranch());
+
+        if (node.getElseBranch() == null) {
+            stack.assertState(SINGLE_BRANCH_OPERANDS, node.getToken());
+        } else {
+            stack.push(node.getElseBranch());
+            stack.assertState(BRANCH_OPERANDS, node.getToken());
         }
-        return null;
     }
 
     /**
      * This condition has two branches, e.g. a 'then' and an 'else'
      */
-    private void branchedCondition(Condition node) {
-        stack.assertState(
-                StackCondition.preConditionFor(
-                        Sequence.class,
-                        Sequence.class,
-                        Boolean.class),
-                node.getToken()
-        );
+    private void branchedCondition(Condition node, boolean isTail) {
+        if (!node.isVerified()) {
+            stack.assertState(BRANCH_OPERANDS, node.getToken());
+        }
 
         Sequence elseBranch = stack.popSequence();
         Sequence thenBranch = stack.popSequence();
@@ -346,35 +582,48 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
         Sequence chosen;
         chosen = condition ? thenBranch : elseBranch;
 
-        for (Node e : chosen.getNodes()) {
-            e.accept(this);
-        }
+        executeBranch(chosen, isTail);
     }
 
     /**
      * This condition has one branch, so just a 'then', if the condition fails then nothing happens
      */
-    private void singleBranchCondition(Condition node) {
-        stack.assertState(
-                StackCondition.preConditionFor(
-                        Sequence.class,
-                        Boolean.class),
-                node.getToken()
-        );
+    private void singleBranchCondition(Condition node, boolean isTail) {
+        if (!node.isVerified()) {
+            stack.assertState(SINGLE_BRANCH_OPERANDS, node.getToken());
+        }
 
         Sequence thenBranch = stack.popSequence();
         boolean condition = stack.popBoolean();
 
         if (condition) {
-            for (Node e : thenBranch.getNodes()) {
-                e.accept(this);
-            }
+            executeBranch(thenBranch, isTail);
+        }
+    }
+
+    /**
+     * Execute the branch taken by a condition
+     * <p>
+     * Engines which compile the branches themselves override this
+     * </p>
+     */
+    void executeBranch(Sequence branch, boolean isTail) {
+        if (isTail) {
+            executeBody(branch.getNodes());
+            return;
+        }
+
+        for (Node e : branch.getNodes()) {
+            e.accept(this);
         }
     }
 
     @Override
     public Void visit(Sequence sequenceNode) {
-        stack.push(sequenceNode);
+        // a branch is run by the condition after it, without being pushed
+        if (!sequenceNode.isBranch()) {
+            stack.push(sequenceNode);
+        }
         return null;
     }
 
@@ -388,6 +637,7 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
         UserDefinedFunction function = new UserDefinedFunction(
                 functionNode.getToken(),
                 functionNode.getBody(),
+                functionNode.getSlotCount(),
                 StackCondition.preConditionFor(functionNode.getPreConditions()),
                 StackCondition.postConditionFor(functionNode.getPostConditions()),
                 namespace
@@ -407,12 +657,44 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
         // identifier visit is a function call, as even 'let' variables are
         // parsed into a function (one that just pushes its value onto the stack)
 
-        Namespace previousNamespace = null;
+        call(identifierNode, false);
+        return null;
+    }
 
-        try {
-            TowelFunction function = getFunction(identifierNode);
+    /**
+     * @param isTail whether the identifier is the last node of a function body, in which
+     *               case a call to a user defined function is left for the caller to make
+     */
+    void call(Identifier identifierNode, boolean isTail) {
+        if (identifierNode.hasSlot()) {
+            loadSlot(identifierNode);
+            return;
+        }
+
+        TowelFunction function = getFunction(identifierNode);
+
+        // static analysis may have proven the conditions will always be met here
+        if (!identifierNode.isVerified()) {
             stack.assertState(function.getPreCondition(), identifierNode.getToken());
+        }
+
+        if (!(function instanceof UserDefinedFunction)) {
+            callFunction(identifierNode, function);
+        } else if (isTail) {
+            tailCall = identifierNode;
+            tailCallFunction = (UserDefinedFunction) function;
+        } else {
+            callUserDefinedFunction(identifierNode, (UserDefinedFunction) function);
+        }
+    }
+
+    /**
+     * Call a function once its pre-conditions have been met, used for all but user defined functions
+     */
+    void callFunction(Identifier identifierNode, TowelFunction function) {
+        Namespace previousNamespace = null;
 
+        try {
             if (function instanceof ExecuteInOriginalContext) {
                 previousNamespace = namespace;
                 namespace = ((ExecuteInOriginalContext) function).getOriginalContext();
@@ -420,7 +702,9 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
 
             function.call(this);
 
-            stack.assertState(function.getPostCondition(), identifierNode.getToken());
+            if (!identifierNode.isResultVerified()) {
+                stack.assertState(function.getPostCondition(), identifierNode.getToken());
+            }
         } catch (FunctionExecutionError e) {
 
             Token errorIdentifier = identifierNode.getToken();
@@ -429,19 +713,229 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
             }
 
             throw new InterpreterError(e.getMessage(), errorIdentifier, e);
+        } catch (StackOverflowError e) {
+            // functions such as 'exec' run code themselves, so can still recurse
+            throw new InterpreterError(MAXIMUM_CALL_DEPTH_EXCEEDED, identifierNode.getToken());
         } finally {
             if (previousNamespace != null) {
                 namespace = previousNamespace;
             }
         }
+    }
 
-        return null;
+    /**
+     * Call a user defined function, then keep making any tail call it leaves until there are none left
+     * <p>
+     * The post-condition of each function called is checked once the last call returns, innermost first, as it
+     * would be if the calls were nested. A post-condition which is already waiting to be checked is only checked at
+     * its innermost point, checking it again would find the same stack, so the pending checks stay bounded.
+     * </p>
+     */
+    private void callUserDefinedFunction(Identifier identifierNode, UserDefinedFunction function) {
+        Namespace previousNamespace = namespace;
+        int firstPending = pendingPostConditions.size();
+
+        int callerSlotBase = slotBase;
+        int callerSlotTop = slotTop;
+
+        enterCall(identifierNode);
+        openSlots();
+
+        try {
+            while (true) {
+                addPendingPostCondition(firstPending, identifierNode, function);
+
+                namespace = function.getOriginalContext();
+                sizeSlots(function.getSlotCount());
+                executeFunction(function);
+
+                if (tailCall == null) {
+                    break;
+                }
+
+                identifierNode = tailCall;
+                function = tailCallFunction;
+                tailCall = null;
+                tailCallFunction = null;
+            }
+
+            checkPendingPostConditions(firstPending);
+        } catch (StackOverflowError e) {
+            throw new InterpreterError(MAXIMUM_CALL_DEPTH_EXCEEDED, identifierNode.getToken());
+        } finally {
+            namespace = previousNamespace;
+            tailCall = null;
+            tailCallFunction = null;
+            discardPendingPostConditions(firstPending);
+            restoreSlots(callerSlotBase, callerSlotTop);
+            exitCall();
+        }
+    }
+
+    /**
+     * Start an empty window of slots for a new call, above those in use
+     */
+    void openSlots() {
+        slotBase = slotTop;
+    }
+
+    /**
+     * Size the current window for the function about to run in it, clearing anything left by a function it replaces
+     */
+    void sizeSlots(int count) {
+        Arrays.fill(slots, slotBase, slotTop, null);
+        slotTop = slotBase + count;
+
+        if (slotTop > slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(slots.length * 2, slotTop));
+        }
+    }
+
+    /**
+     * Go back to the window of a caller once a call has returned
+     */
+    void restoreSlots(int base, int top) {
+        Arrays.fill(slots, top, slotTop, null);
+        slotBase = base;
+        slotTop = top;
+    }
+
+    int getSlotBase() {
+        return slotBase;
+    }
+
+    int getSlotTop() {
+        return slotTop;
+    }
+
+    /**
+     * Push the value of a let held in a slot of the running call
+     */
+    void loadSlot(Identifier identifierNode) {
+        Object value = slots[slotBase + identifierNode.getSlot()];
+
+        if (value == null) {
+            throw new InterpreterError(String.format("Unknown identifier '%s'.", identifierNode.getName()), identifierNode.getToken());
+        }
+        stack.push(value);
+    }
+
+    /**
+     * Bind a let held in a slot of the running call
+     */
+    void storeSlot(Let letNode) {
+        if (!letNode.isVerified()) {
+            stack.assertState(LET_OPERAND, letNode.getToken());
+        }
+
+        slots[slotBase + letNode.getSlot()] = stack.pop();
+    }
+
+    /**
+     * Track the depth of nested calls to user defined functions, so runaway recursion fails cleanly
+     */
+    void enterCall(Identifier identifierNode) {
+        if (callDepth == maxCallDepth) {
+            throw new InterpreterError(MAXIMUM_CALL_DEPTH_EXCEEDED, identifierNode.getToken());
+        }
+        callDepth++;
+    }
+
+    void exitCall() {
+        callDepth--;
+    }
+
+    int getPendingPostConditionCount() {
+        return pendingPostConditions.size();
+    }
+
+    /**
+     * Queue the post-condition of a user defined function for checking once the current call returns
+     *
+     * @param firstPending the number of post-conditions pending before the current call was made
+     */
+    void addPendingPostCondition(int firstPending, Identifier identifierNode, UserDefinedFunction function) {
+        if (identifierNode.isResultVerified() || function.getPostCondition().length() == 0) {
+            return;
+        }
+
+        addPendingPostCondition(firstPending, identifierNode, function.getPostCondition());
+    }
+
+    /**
+     * Check the post-conditions pending for the current call, innermost first
+     */
+    void checkPendingPostConditions(int firstPending) {
+        for (int i = pendingPostConditions.size() - 1; i >= firstPending; i--) {
+            PendingPostCondition pending = pendingPostConditions.get(i);
+            stack.assertState(pending.condition, pending.identifierNode.getToken());
+        }
+        discardPendingPostConditions(firstPending);
+    }
+
+    void discardPendingPostConditions(int firstPending) {
+        pendingPostConditions.subList(firstPending, pendingPostConditions.size()).clear();
+    }
+
+    private void addPendingPostCondition(int firstPending, Identifier identifierNode, StackCondition.PostCondition condition) {
+        for (int i = firstPending; i < pendingPostConditions.size(); i++) {
+            PendingPostCondition pending = pendingPostConditions.get(i);
+
+            if (pending.identifierNode == identifierNode && pending.condition == condition) {
+                pendingPostConditions.remove(i);
+                break;
+            }
+        }
+
+        pendingPostConditions.add(new PendingPostCondition(identifierNode, condition));
     }
 
     /**
      * Get the function identified by 'identifierNode'
      */
-    private TowelFunction getFunction(Identifier identifierNode) {
+    TowelFunction getFunction(Identifier identifierNode) {
+        Linker.Link link = links.get(identifierNode);
+        Namespace.Binding binding = link == null ? null : link.getBinding(namespace);
+
+        if (binding == null) {
+            return lookupFunction(identifierNode);
+        }
+
+        Object target = binding.get();
+
+        if (target == null) {
+            throw new InterpreterError(String.format("Unknown identifier '%s'.", identifierNode.getName()), identifierNode.getToken());
+        }
+
+        if (!(target instanceof TowelFunction)) {
+            // This should really be impossible
+            throw new IllegalStateException("Not a valid function.");
+        }
+
+        return (TowelFunction) target;
+    }
+
+    /**
+     * Look up the function identified by 'identifierNode' by its name, for identifiers that
+     * haven't been linked within the current namespace
+     * <p>
+     * The result is cached for the identifier against the current namespace
+     * </p>
+     */
+    private TowelFunction lookupFunction(Identifier identifierNode) {
+        CallSiteCache cache = callSiteCaches.get(identifierNode);
+
+        if (cache == null) {
+            cache = new CallSiteCache();
+            callSiteCaches.put(identifierNode, cache);
+        }
+
+        TowelFunction function = cache.get(namespace);
+
+        if (function != null) {
+            return function;
+        }
+
         Namespace targetNamespace = namespace;
 
         if (identifierNode.isNamespaced()) {
@@ -459,13 +953,21 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
             throw new IllegalStateException("Not a valid function.");
         }
 
+        cache.put(namespace, targetNamespace, (TowelFunction) target);
+
         return (TowelFunction) target;
     }
 
     @Override
     public Void visit(Import importNode) {
 
+        // the imported file was left out, as nothing it exports is used
+        if (importNode.isUnused()) {
+            return null;
+        }
+
         ImportNodeResolver adapter = ImportNodeResolver.wrap(importNode);
+        Set<String> usedNames = importNode.getUsedNames();
 
         String[] funcNames = loader.getPublicNamesInNamespace(adapter.getNamespace());
 
@@ -475,12 +977,16 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
             // so take everything in <io> and add it to the namespace
             // with 'io.' prefix, e.g. io.print
             if (adapter.isImportingWholeNamespace()) {
-                TowelFunction func = loader.getFunction(adapter.getNamespace(), functionName);
-
                 if (!namespace.isDefined(adapter.getNormalized())) {
                     namespace.definePrivateMember(adapter.getNormalized(), new Namespace());
                 }
 
+                if (usedNames != null && !usedNames.contains(functionName)) {
+                    continue;
+                }
+
+                TowelFunction func = loader.getFunction(adapter.getNamespace(), functionName);
+
                 namespace.getNamespace(adapter.getNormalized()).definePrivateMember(functionName, func);
             } else {
                 // there's a pattern such as
@@ -491,13 +997,17 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
                     continue;
                 }
 
-                TowelFunction func = loader.getFunction(adapter.getNamespace(), functionName);
-
                 // check for an alias
                 // import print from <io> as my_print
                 String alias = adapter.isAliased()
                         ? adapter.getAlias() : functionName;
 
+                if (usedNames != null && !usedNames.contains(alias)) {
+                    continue;
+                }
+
+                TowelFunction func = loader.getFunction(adapter.getNamespace(), functionName);
+
                 namespace.definePrivateMember(alias, func);
             }
         }
@@ -508,12 +1018,17 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
     @Override
     public Void visit(Let letNode) {
 
+        if (letNode.hasSlot()) {
+            storeSlot(letNode);
+            return null;
+        }
+
         // a let is converted into a function which pushes
         // the value of the let onto the stack when called
 
-        stack.assertState(StackCondition.preConditionFor(new Class[]{
-                Object.class
-        }), letNode.getToken());
+        if (!letNode.isVerified()) {
+            stack.assertState(LET_OPERAND, letNode.getToken());
+        }
 
         final Object value = stack.pop();
 
@@ -558,13 +1073,4 @@ class ProgramInterpreter implements Interpreter, NodeVisitor<Void> {
 
         return false;
     }
-
-    private boolean areAllOfType(Class expectedType, Object... objects) {
-        for (Object object : objects) {
-            if (!expectedType.isInstance(object)) {
-                return false;
-            }
-        }
-        return true;
-    }
 }
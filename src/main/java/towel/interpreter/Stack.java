@@ -3,8 +3,7 @@ package towel.interpreter;
 import towel.ast.Sequence;
 import towel.ast.Token;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Represent the stack, container for values in the running program
@@ -12,17 +11,66 @@ import java.util.List;
  * The {@code <T>popAsType} and {@code pop*} methods will be safe to use provided the stack has been asserted to contain
  * the correct types first
  * </p>
+ * <p>
+ * Numbers and booleans are held unboxed, as raw bits alongside a tag saying what each slot holds, only strings,
+ * sequences and arrays are held as references. Using {@code pushDouble}/{@code popDouble} and
+ * {@code pushBoolean}/{@code popBoolean} won't allocate, the untyped {@code push} and {@code pop} box and unbox
+ * as needed.
+ * </p>
  */
 public class Stack {
 
-    private List<Object> stack = new ArrayList<>();
+    private static final byte REFERENCE = 0;
+    private static final byte NUMBER = 1;
+    private static final byte BOOLEAN = 2;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private byte[] tags = new byte[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    private Object[] references = new Object[INITIAL_CAPACITY];
+    private int size = 0;
 
     public void push(Object item) {
-        stack.add(stack.size(), item);
+        if (item instanceof Double) {
+            pushDouble((Double) item);
+        } else if (item instanceof Boolean) {
+            pushBoolean((Boolean) item);
+        } else {
+            ensureCapacity();
+            tags[size] = REFERENCE;
+            references[size++] = item;
+        }
+    }
+
+    public void pushDouble(double item) {
+        ensureCapacity();
+        tags[size] = NUMBER;
+        values[size++] = Double.doubleToRawLongBits(item);
+    }
+
+    public void pushBoolean(boolean item) {
+        ensureCapacity();
+        tags[size] = BOOLEAN;
+        values[size++] = item ? 1 : 0;
     }
 
     public Object pop() {
-        return stack.remove(stack.size() - 1);
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Stack is empty");
+        }
+        int top = --size;
+
+        switch (tags[top]) {
+            case NUMBER:
+                return Double.longBitsToDouble(values[top]);
+            case BOOLEAN:
+                return values[top] != 0;
+            default:
+                Object item = references[top];
+                references[top] = null;
+                return item;
+        }
     }
 
     public String popString() {
@@ -30,10 +78,16 @@ public class Stack {
     }
 
     public boolean popBoolean() {
+        if (tags[size - 1] == BOOLEAN) {
+            return values[--size] != 0;
+        }
         return this.<Boolean>popAsType();
     }
 
     public double popDouble() {
+        if (tags[size - 1] == NUMBER) {
+            return Double.longBitsToDouble(values[--size]);
+        }
         return this.<Double>popAsType();
     }
 
@@ -50,12 +104,49 @@ public class Stack {
         return (T) pop();
     }
 
+    /**
+     * Check whether the item at the given depth is a number, without boxing it
+     *
+     * @param fromTop 0 for the top of the stack, 1 for the item below it, etc.
+     */
+    public boolean isDouble(int fromTop) {
+        return fromTop < size && tags[size - 1 - fromTop] == NUMBER;
+    }
+
+    /**
+     * Check whether the item at the given depth is a boolean, without boxing it
+     *
+     * @param fromTop 0 for the top of the stack, 1 for the item below it, etc.
+     */
+    public boolean isBoolean(int fromTop) {
+        return fromTop < size && tags[size - 1 - fromTop] == BOOLEAN;
+    }
+
+    /**
+     * Check whether the item at the given depth is a string
+     *
+     * @param fromTop 0 for the top of the stack, 1 for the item below it, etc.
+     */
+    public boolean isString(int fromTop) {
+        return fromTop < size && tags[size - 1 - fromTop] == REFERENCE && references[size - 1 - fromTop] instanceof String;
+    }
+
+    /**
+     * Get, but don't remove the number on top of the stack, without boxing it
+     * <p>
+     * Only valid when {@code isDouble(0)} is true
+     * </p>
+     */
+    public double peekDouble() {
+        return Double.longBitsToDouble(values[size - 1]);
+    }
+
     /**
      *
      * @return the current size of the stack
      */
     public int size() {
-        return stack.size();
+        return size;
     }
 
     /**
@@ -64,36 +155,76 @@ public class Stack {
      * @return top of the stack
      */
     public Object peek() {
-        return stack.get(stack.size() - 1);
+        return get(size - 1);
+    }
+
+    /**
+     * Get the item at the given index, boxing it if needed
+     */
+    private Object get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        switch (tags[index]) {
+            case NUMBER:
+                return Double.longBitsToDouble(values[index]);
+            case BOOLEAN:
+                return values[index] != 0;
+            default:
+                return references[index];
+        }
+    }
+
+    /**
+     * Get the type of the item at the given index, without boxing it
+     */
+    private Class<?> typeOf(int index) {
+        switch (tags[index]) {
+            case NUMBER:
+                return Double.class;
+            case BOOLEAN:
+                return Boolean.class;
+            default:
+                return references[index].getClass();
+        }
+    }
+
+    private void ensureCapacity() {
+        if (size == tags.length) {
+            int capacity = tags.length * 2;
+            tags = Arrays.copyOf(tags, capacity);
+            values = Arrays.copyOf(values, capacity);
+            references = Arrays.copyOf(references, capacity);
+        }
     }
 
     /**
      * Assert that the stack is at least the given length
      */
     public void assertStack(int length, String message, Token token) throws StackAssertionError {
-        if (stack.size() < length) {
+        if (size < length) {
             throw new StackAssertionError(message, token);
         }
     }
 
     /**
      * Assert the stack is in the state described by {@code StackCondition}
-     *
+     * <p>
+     * Nothing is allocated unless the assertion fails, the error message is only built then
+     * </p>
      */
     public void assertState(StackCondition condition, Token token) throws StackAssertionError {
         if (condition.length() == 0) {
             return;
         }
 
-        if (stack.size() < condition.length()) {
+        if (size < condition.length()) {
             throw new StackAssertionError(createErrorForInvalidState(condition, "length", token), token);
         }
 
-        assertStack( condition.length(), "Stack does not meet length preConditions.\n" +
-                "Length must be at least " +  condition.length() + ", current length is " + stack.size() + ".", token);
-
-        for (int i = 0; i <  condition.length(); i++) {
-            if (! condition.condition()[i].isInstance(stack.get(stack.size() - 1 - i))) {
+        for (int i = 0; i < condition.length(); i++) {
+            if (!condition.type(i).isAssignableFrom(typeOf(size - 1 - i))) {
                 throw new StackAssertionError(createErrorForInvalidState(condition, "type", token), token);
             }
         }
@@ -114,7 +245,7 @@ public class Stack {
                 .append("Length must be at least ")
                 .append(condition.length())
                 .append(", current length is ")
-                .append(stack.size())
+                .append(size)
                 .append(".");
 
         if (condition.length() > 0) {
@@ -125,11 +256,11 @@ public class Stack {
             message.append("Item ")
                     .append(i)
                     .append(" from the top of the stack must be of type '")
-                    .append(TypeNameTranslator.get(condition.condition()[i]));
+                    .append(TypeNameTranslator.get(condition.type(i)));
 
-            if (i < stack.size()) {
+            if (i < size) {
                 message.append("', '")
-                        .append(TypeNameTranslator.get(stack.get(stack.size() - 1 - i).getClass()))
+                        .append(TypeNameTranslator.get(typeOf(size - 1 - i)))
                         .append("' was found.");
             } else {
                 message.append("', nothing was found.");
@@ -147,9 +278,9 @@ public class Stack {
         StringBuilder stringBuilder = new StringBuilder();
         stringBuilder.append("Stack{\n--Top--\n");
 
-        for (int i = stack.size() - 1; i >= 0; i--) {
+        for (int i = size - 1; i >= 0; i--) {
             stringBuilder.append("\t");
-            stringBuilder.append(stack.get(i).toString());
+            stringBuilder.append(get(i).toString());
             stringBuilder.append("\n");
         }
 
@@ -18,29 +18,52 @@ package towel.interpreter;
  * StackCondition.preConditionFor(Object.class, TowelArray.class);
  * </pre>
  *
+ * Conditions are immutable, so they should be created once and shared rather than created on each call. Empty
+ * conditions are always the shared {@code EMPTY_PRE_CONDITION} and {@code EMPTY_POST_CONDITION}.
+ *
  * @todo rethink the heirachy in here
- * @todo consider caching an empty postcondition
  */
 public abstract class StackCondition {
 
+    public static final PreCondition EMPTY_PRE_CONDITION = new PreCondition(new Class[0]);
+    public static final PostCondition EMPTY_POST_CONDITION = new PostCondition(new Class[0]);
+
     public static PreCondition preConditionFor(Class... condition) {
-        return new PreCondition(condition);
+        if (condition.length == 0) {
+            return EMPTY_PRE_CONDITION;
+        }
+        return new PreCondition(condition.clone());
     }
 
     public static PostCondition postConditionFor(Class... condition) {
-        return new PostCondition(condition);
+        if (condition.length == 0) {
+            return EMPTY_POST_CONDITION;
+        }
+        return new PostCondition(condition.clone());
     }
 
-    private Class[] conditions;
-    private boolean isPre;
+    private final Class[] conditions;
+    private final boolean isPre;
 
     private StackCondition(Class[] conditions, boolean isPre) {
         this.conditions = conditions;
         this.isPre = isPre;
     }
 
+    /**
+     * @return a copy of the types, see {@code type} to access one without copying
+     */
     public Class[] condition() {
-        return conditions;
+        return conditions.clone();
+    }
+
+    /**
+     * Get the type required at the given position
+     *
+     * @param fromTop 0 for the top of the stack, 1 for the item below it, etc.
+     */
+    public Class type(int fromTop) {
+        return conditions[fromTop];
     }
 
     public int length() {
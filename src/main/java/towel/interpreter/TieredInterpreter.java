@@ -0,0 +1,100 @@
+package towel.interpreter;
+
+import towel.ErrorReporter;
+import towel.ast.Node;
+import towel.ast.Program;
+import towel.ast.Sequence;
+
+/**
+ * Interpreter which starts out walking the tree, then compiles functions into closure trees once they're hot
+ * <p>
+ * Each user defined function counts how many times it runs, once that passes the threshold its body is compiled
+ * and stored on the function, so every call site uses it from then on. Code which only runs a few times, e.g. most
+ * of a large imported library, never pays the cost of being compiled.
+ * </p>
+ * <p>
+ * Sequences within a compiled function, e.g. its branches or a sequence it passes to 'repeat', run compiled too.
+ * </p>
+ *
+ * @see ClosureCompiler
+ */
+class TieredInterpreter extends ProgramInterpreter {
+
+    private final ClosureCompiler compiler = new ClosureCompiler();
+    private final Frame frame = new Frame(this);
+    private int compileThreshold = DEFAULT_COMPILE_THRESHOLD;
+
+    TieredInterpreter(Program program, NamespaceLoader loader, ErrorReporter reporter, Namespace namespace) {
+        super(program, loader, reporter, namespace);
+    }
+
+    @Override
+    public void setCompileThreshold(int compileThreshold) {
+        this.compileThreshold = compileThreshold;
+    }
+
+    @Override
+    public Object interpret(Node[] node) {
+        if (!compiler.isKnown(node)) {
+            return super.interpret(node);
+        }
+
+        compiler.compile(node, false).execute(frame);
+
+        if (getStack().size() > 0) {
+            return getStack().peek();
+        }
+        return null;
+    }
+
+    @Override
+    public void execute(Sequence sequence) {
+        Executable tree = (Executable) getCompiled(sequence);
+
+        if (tree == null) {
+            if (!compiler.isKnown(sequence.getNodes())) {
+                super.execute(sequence);
+                return;
+            }
+
+            tree = compiler.compile(sequence.getNodes(), false);
+            setCompiled(sequence, tree);
+        }
+        tree.execute(frame);
+    }
+
+    @Override
+    void executeFunction(UserDefinedFunction function) {
+        Executable compiled = function.getCompiled();
+
+        if (compiled == null) {
+            if (function.countExecution() < compileThreshold) {
+                super.executeFunction(function);
+                return;
+            }
+
+            compiled = compiler.compile(function.getBody(), true);
+            function.setCompiled(compiled);
+        }
+
+        compiled.execute(frame);
+    }
+
+    @Override
+    void executeBody(Node[] nodes) {
+        if (compiler.isKnown(nodes)) {
+            compiler.compile(nodes, true).execute(frame);
+        } else {
+            super.executeBody(nodes);
+        }
+    }
+
+    @Override
+    void executeBranch(Sequence branch, boolean isTail) {
+        if (compiler.isKnown(branch.getNodes())) {
+            compiler.compile(branch.getNodes(), isTail).execute(frame);
+        } else {
+            super.executeBranch(branch, isTail);
+        }
+    }
+}
@@ -9,14 +9,14 @@ public interface TowelFunction {
      * Pre-conditions are asserted on the stack before the function is executed
      */
     default StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor();
+        return StackCondition.EMPTY_PRE_CONDITION;
     }
 
     /**
      * Post-conditions are asserted on the stack after the function has been executed
      */
     default StackCondition.PostCondition getPostCondition() {
-        return StackCondition.postConditionFor();
+        return StackCondition.EMPTY_POST_CONDITION;
     }
 
     /**
@@ -12,6 +12,11 @@ class UserDefinedFunction implements TowelFunction, ExecuteInOriginalContext {
 
     private final Token name;
     private final Node[] body;
+
+    /**
+     * Number of slots each call needs for the function's lets
+     */
+    private final int slotCount;
     private final StackCondition.PreCondition preConditions;
     private final StackCondition.PostCondition postConditions;
 
@@ -23,9 +28,23 @@ class UserDefinedFunction implements TowelFunction, ExecuteInOriginalContext {
      */
     private final Namespace context;
 
-    UserDefinedFunction(Token name, Node[] body, StackCondition.PreCondition preConditions, StackCondition.PostCondition postConditions, Namespace originalContext) {
+    /**
+     * The number of times the body has run, including tail calls, which is how loops are written
+     */
+    private int executionCount = 0;
+
+    /**
+     * The body compiled by the tiered engine, once the function has become hot
+     * <p>
+     * Every call site finds the function through its binding, so setting this switches them all over at once
+     * </p>
+     */
+    private volatile Executable compiled;
+
+    UserDefinedFunction(Token name, Node[] body, int slotCount, StackCondition.PreCondition preConditions, StackCondition.PostCondition postConditions, Namespace originalContext) {
         this.name = name;
         this.body = body;
+        this.slotCount = slotCount;
         this.preConditions = preConditions;
         this.postConditions = postConditions;
         context = originalContext;
@@ -36,6 +55,31 @@ class UserDefinedFunction implements TowelFunction, ExecuteInOriginalContext {
         interpreter.interpret(body);
     }
 
+    Node[] getBody() {
+        return body;
+    }
+
+    int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Count another execution of the body
+     *
+     * @return the number of executions, including this one
+     */
+    int countExecution() {
+        return ++executionCount;
+    }
+
+    Executable getCompiled() {
+        return compiled;
+    }
+
+    void setCompiled(Executable compiled) {
+        this.compiled = compiled;
+    }
+
     @Override
     public StackCondition.PreCondition getPreCondition() {
         return preConditions;
@@ -3,16 +3,69 @@ package towel.parser;
 import towel.ErrorReporter;
 import towel.ast.Token;
 
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 import java.util.List;
 
 /**
- * Convert source code into a list of tokens
+ * Convert source code into tokens
+ * <p>
+ * Reading the source can fail part way through for a reader or channel, which is thrown as an
+ * {@link java.io.UncheckedIOException}
+ * </p>
  */
 public interface Lexer {
 
+    /**
+     * Lex the whole source into a list, ending with the EOF token
+     */
     List<Token> tokenize();
 
+    /**
+     * Lex the next token, the EOF token is returned once the end of the source is reached
+     */
+    Token next();
+
+    /**
+     * Have any syntax errors been found so far
+     */
+    boolean hasErrors();
+
     static Lexer getFor(String sourceCode, ErrorReporter reporter) {
-        return new StringLexer(sourceCode, reporter);
+        return new StreamingLexer(new StringReader(sourceCode), reporter);
+    }
+
+    /**
+     * The reader is read as tokens are lexed, and isn't closed by the lexer
+     */
+    static Lexer getFor(Reader source, ErrorReporter reporter) {
+        return new StreamingLexer(source, reporter);
+    }
+
+    /**
+     * Lex UTF-8 encoded source from the buffer's position to its limit, e.g. a memory mapped file
+     * <p>
+     * Malformed input is replaced, as it is when decoding the source into a string
+     * </p>
+     */
+    static Lexer getFor(ByteBuffer utf8Source, ErrorReporter reporter) {
+        return new StreamingLexer(new Utf8BufferReader(utf8Source), reporter);
+    }
+
+    /**
+     * The channel is read as tokens are lexed, and isn't closed by the lexer
+     * <p>
+     * Malformed input is replaced, as it is when decoding the source into a string
+     * </p>
+     */
+    static Lexer getFor(ReadableByteChannel source, Charset charset, ErrorReporter reporter) {
+        return getFor(Channels.newReader(source, charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), -1), reporter);
     }
 }
@@ -0,0 +1,43 @@
+package towel.parser;
+
+import towel.ast.Token;
+
+import java.util.Objects;
+
+import static towel.ast.Token.TokenType.EOF;
+
+/**
+ * Cursor which lexes each token as the parser reaches it, so the whole list of tokens is never held
+ */
+class LexerTokenCursor implements TokenCursor {
+
+    private final Lexer lexer;
+    private Token current;
+
+    LexerTokenCursor(Lexer lexer) {
+        this.lexer = Objects.requireNonNull(lexer);
+    }
+
+    @Override
+    public Token peek() {
+        if (current == null) {
+            current = lexer.next();
+        }
+        return current;
+    }
+
+    @Override
+    public Token advance() {
+        Token token = peek();
+        current = null;
+        return token;
+    }
+
+    @Override
+    public boolean hasLexicalErrors() {
+        while (peek().getType() != EOF) {
+            advance();
+        }
+        return lexer.hasErrors();
+    }
+}
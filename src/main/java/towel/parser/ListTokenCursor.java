@@ -0,0 +1,35 @@
+package towel.parser;
+
+import towel.ast.Token;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Cursor over tokens which have already been lexed, which are expected to have been checked for errors
+ */
+class ListTokenCursor implements TokenCursor {
+
+    private final List<Token> tokens;
+    private int pos = 0;
+
+    ListTokenCursor(List<Token> tokens) {
+        this.tokens = Objects.requireNonNull(tokens);
+    }
+
+    @Override
+    public Token peek() {
+        return tokens.get(pos);
+    }
+
+    @Override
+    public Token advance() {
+        pos++;
+        return tokens.get(pos - 1);
+    }
+
+    @Override
+    public boolean hasLexicalErrors() {
+        return false;
+    }
+}
@@ -10,10 +10,21 @@ public interface Parser {
     Program parse();
 
     static Parser getFor(List<Token> tokens, ErrorReporter reporter, String namespace) {
-        return new TokenParser(tokens, reporter, namespace);
+        return new TokenParser(new ListTokenCursor(tokens), reporter, namespace);
     }
 
     static Parser getFor(List<Token> tokens, ErrorReporter reporter) {
-        return new TokenParser(tokens, reporter, Program.DEFAULT_NAMESPACE);
+        return getFor(tokens, reporter, Program.DEFAULT_NAMESPACE);
+    }
+
+    /**
+     * Parse the tokens as they're lexed
+     * <p>
+     * Syntax errors are reported by the lexer as they're found. If there are any, parsing fails and errors from the
+     * parser are left out, as they would only be caused by the syntax errors.
+     * </p>
+     */
+    static Parser getFor(Lexer lexer, ErrorReporter reporter, String namespace) {
+        return new TokenParser(new LexerTokenCursor(lexer), reporter, namespace);
     }
 }
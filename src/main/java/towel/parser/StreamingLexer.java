@@ -0,0 +1,557 @@
+package towel.parser;
+
+import towel.ErrorReporter;
+import towel.ast.Token;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+import static towel.ast.Token.TokenType.*;
+
+/**
+ * Convert source code into tokens, lexing each one as it's asked for
+ * <p>
+ * The source is read in blocks, only the characters of the token currently being lexed are kept, so a source much
+ * larger than memory can be lexed as long as its tokens aren't. Tokens handed out one at a time aren't kept either,
+ * they're lexed into a small buffer which is replaced once it's full. Only {@link #tokenize} keeps every token in the
+ * one buffer.
+ * </p>
+ */
+class StreamingLexer implements Lexer {
+
+    private final static int BUFFER_SIZE = 8192;
+
+    /**
+     * How many tokens handed out one at a time are lexed into a buffer before it's replaced
+     */
+    private final static int STREAMED_TOKENS = 256;
+
+    private final Reader source;
+
+    /**
+     * Buffered characters of the source, the first is at position 'bufferStart' in the source
+     */
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int bufferStart = 0;
+    private int bufferEnd = 0;
+    private boolean isSourceRead = false;
+
+    /**
+     * Position of the first character which needs to stay buffered
+     */
+    private int keepFrom = 0;
+
+    private TokenBuffer tokens = new TokenBuffer();
+
+    /**
+     * Index of the token lexed by the last step, or -1 if it didn't produce one
+     */
+    private int lexed = -1;
+    private int eofToken = -1;
+    private boolean hasErrors = false;
+
+    private int pointer = 0;
+    private int line = 1;
+    private int character = 1;
+    private int startPointer = pointer;
+    private int startLine = line;
+    private int startCharacter = character;
+    private final ErrorReporter reporter;
+
+    private final static Map<String, Token.TokenType> keywords = new HashMap<>();
+
+    private final static int DIGIT = 1;
+    private final static int LETTER = 2;
+    private final static int IDENTIFIER_CHAR = 4;
+
+    /**
+     * Classes of the ASCII characters, indexed by the character
+     */
+    private final static byte[] characterClasses = new byte[128];
+
+    /**
+     * Tokens which are always a single character, indexed by the character
+     */
+    private final static Token.TokenType[] singleCharTokens = new Token.TokenType[128];
+
+    static {
+        keywords.put("import", IMPORT);
+        keywords.put("from", FROM);
+        keywords.put("as", AS);
+        keywords.put("def", DEF);
+        keywords.put("let", LET);
+        keywords.put("num", NUM);
+        keywords.put("bool", BOOL);
+        keywords.put("str", STR);
+        keywords.put("seq", SEQ);
+        keywords.put("void", VOID);
+        keywords.put("any", ANY);
+        keywords.put("array", ARRAY);
+        keywords.put("public", PUBLIC);
+        singleCharTokens['{'] = LEFT_BRACE;
+        singleCharTokens['}'] = RIGHT_BRACE;
+        singleCharTokens['+'] = PLUS;
+        singleCharTokens['-'] = MINUS;
+        singleCharTokens['*'] = STAR;
+        singleCharTokens['/'] = SLASH;
+        singleCharTokens[','] = COMMA;
+        singleCharTokens['%'] = MOD;
+        singleCharTokens['('] = LEFT_BRACKET;
+        singleCharTokens[')'] = RIGHT_BRACKET;
+        singleCharTokens['['] = LEFT_SQ_BRACKET;
+        singleCharTokens[']'] = RIGHT_SQ_BRACKET;
+        singleCharTokens['.'] = DOT;
+
+        for (char c = '0'; c <= '9'; c++) {
+            characterClasses[c] = DIGIT | IDENTIFIER_CHAR;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            characterClasses[c] = LETTER | IDENTIFIER_CHAR;
+            characterClasses[Character.toUpperCase(c)] = LETTER | IDENTIFIER_CHAR;
+        }
+        characterClasses['_'] = IDENTIFIER_CHAR;
+        characterClasses['-'] = IDENTIFIER_CHAR;
+    }
+
+    StreamingLexer(Reader source, ErrorReporter reporter) {
+        this.source = Objects.requireNonNull(source);
+        this.reporter = Objects.requireNonNull(reporter);
+    }
+
+    @Override
+    public List<Token> tokenize() {
+        // every token is kept in the buffer as it's lexed
+        int index = nextIndex();
+        while (index != eofToken) {
+            index = nextIndex();
+        }
+        return tokens.asList();
+    }
+
+    @Override
+    public Token next() {
+        // the tokens already handed out stay as they are, they're only let go once nothing refers to them,
+        // and the EOF token is handed out again for every call after it
+        if (tokens.size() >= STREAMED_TOKENS && eofToken < 0) {
+            tokens = new TokenBuffer();
+        }
+        return tokens.get(nextIndex());
+    }
+
+    /**
+     * Lex the next token into the buffer, returning its index
+     */
+    private int nextIndex() {
+        while (lexed < 0) {
+            if (eof()) {
+                if (eofToken < 0) {
+                    eofToken = tokens.add(EOF, "\0", null, line, character, pointer);
+                }
+                return eofToken;
+            }
+            step();
+        }
+
+        int index = lexed;
+        lexed = -1;
+        return index;
+    }
+
+    @Override
+    public boolean hasErrors() {
+        return hasErrors;
+    }
+
+    /**
+     * Lex a single character, or the token it starts
+     */
+    private void step() {
+        // store positions for easily extracting the lexeme later
+        startPointer = pointer;
+        startLine = line;
+        startCharacter = character;
+        keepFrom = pointer;
+        char c = advance();
+        switch (c) {
+
+            case '\n':
+                line++;
+                character = 1;
+                break;
+
+            case ' ':
+            case '\r':
+            case '\t':
+                break;
+
+            case '?':
+                if (peekIs('?')) {
+                    advance();
+                    addToken(DOUBLE_QUESTION_MARK, "??");
+                } else {
+                    addToken(QUESTION_MARK, "?");
+                }
+                break;
+
+            case '&':
+                if (peekIs('&')) {
+                    advance();
+                    addToken(AND, "&&");
+                } else {
+                    syntaxError("Unexpected character '" + c + "'.");
+                }
+                break;
+
+            case '|':
+                if (peekIs('|')) {
+                    advance();
+                    addToken(OR, "||");
+                } else {
+                    syntaxError("Unexpected character '" + c + "'.");
+                }
+                break;
+
+            case '-':
+                if (peekIs('>')) {
+                    advance();
+                    addToken(ARROW, "->");
+                } else if (numeric(peek())) {
+                    parseNumber();
+                } else {
+                    addToken(MINUS);
+                }
+                break;
+
+            case '<':
+                if (peekIs('=')) {
+                    advance();
+                    addToken(LESS_THAN_EQUAL, "<=");
+                } else {
+                    addToken(LESS_THAN);
+                }
+                break;
+
+            case '>':
+                if (peekIs('=')) {
+                    advance();
+                    addToken(GREATER_THAN_EQUAL, ">=");
+                } else {
+                    addToken(GREATER_THAN);
+                }
+                break;
+
+            case '=':
+                if (peekIs('=')) {
+                    advance();
+                    addToken(EQUAL_EQUAL, "==");
+                } else {
+                    addToken(EQUAL);
+                }
+                break;
+
+            case '!':
+                if (peekIs('=')) {
+                    advance();
+                    addToken(NOT_EQUAL, "!=");
+                } else {
+                    syntaxError("Unexpected character '" + c + "'.");
+                }
+                break;
+
+            case '/':
+                commentOrSlash(c);
+                break;
+
+            case '"':
+                parseString();
+                break;
+
+            default:
+                if (c < singleCharTokens.length && singleCharTokens[c] != null) {
+                    addToken(singleCharTokens[c]);
+                } else if (validIdentifierStart(c)) {
+                    identifierOrKeyword();
+                } else if (numeric(c)) {
+                    parseNumber();
+                } else {
+                    syntaxError("Unexpected character '" + c + "'.");
+                }
+        }
+    }
+
+    private void addToken(Token.TokenType type) {
+        lexed = tokens.add(type, buffer, startPointer - bufferStart, pointer - startPointer,
+                startLine, startCharacter, startPointer);
+    }
+
+    private void addToken(Token.TokenType type, String lexeme) {
+        addToken(type, lexeme, null);
+    }
+
+    /**
+     * @param literal the literal value of the lexeme, or null if it's the lexeme itself
+     */
+    private void addToken(Token.TokenType type, String lexeme, Object literal) {
+        lexed = tokens.add(type, lexeme, literal, startLine, startCharacter, startPointer);
+    }
+
+    /**
+     * An error is only logged, the Lexer continues to tokenize the rest of the input
+     *
+     * This makes for a better user experience as you'll get a full list of errors instead of one at a time
+     */
+    private void syntaxError(String message) {
+        hasErrors = true;
+        reporter.error(
+                message + String.format(" At line %d, character %d.", line, character)
+        );
+    }
+
+    /**
+     * This is either a comment or a slash
+     */
+    private void commentOrSlash(char c) {
+        // single line comment
+        // keep going until finding a newline or EOF
+        if (peekIs('/')) {
+            advance();
+            while (!eof()) {
+                keepFrom = pointer;
+                if (peekIs('\n')) {
+                    character = 1;
+                    line++;
+                    break;
+                }
+                advance();
+            }
+        }
+        // multiline comment
+        // keep going until finding a */ which denotes the end of a multiline comment
+        // OR until finding an EOF, which just means there's an unterminated comment which doesn't really matter
+        // (though it could be user error)
+
+        else if (peekIs('*')) {
+            advance();
+            while (!eof()) {
+                keepFrom = pointer;
+                if (peekIs('\n')) {
+                    character = 1;
+                    line++;
+                    advance();
+                }
+                if (peekIs('*') && lookAhead() == '/') {
+                    advance();
+                    advance();
+                    break;
+                }
+                if (!eof()) {
+                    advance();
+                }
+            }
+        } else {
+            addToken(SLASH, "/");
+        }
+    }
+
+    /**
+     * A numeric character
+     */
+    private static boolean numeric(char c) {
+        return c < characterClasses.length && (characterClasses[c] & DIGIT) != 0;
+    }
+
+    /**
+     * A valid character or using as the start of an identifier
+     */
+    private static boolean validIdentifierStart(char c) {
+        if (c < characterClasses.length) {
+            return (characterClasses[c] & LETTER) != 0;
+        }
+        // a few other characters lower case to a letter, e.g. the kelvin sign, this is rare enough not to need a table
+        return "abcdefghijklmnopqrstuvwxyz".contains(String.valueOf(c).toLowerCase());
+    }
+
+    /**
+     * A valid character for use within an identifier
+     */
+    private static boolean validIdentifierChar(char c) {
+        if (c < characterClasses.length) {
+            return (characterClasses[c] & IDENTIFIER_CHAR) != 0;
+        }
+        return validIdentifierStart(c);
+    }
+
+    /**
+     * Try to parse an identifier or a token
+     */
+    private void identifierOrKeyword() {
+        while (!eof() && validIdentifierChar(peek())) {
+            advance();
+        }
+
+        String identifier = lexeme(startPointer, pointer);
+
+        if (identifier.equals("true") || identifier.equals("false")) {
+            addToken(BOOLEAN_LITERAL, identifier, identifier.equals("true"));
+            return;
+        }
+
+        Token.TokenType type = keywords.getOrDefault(identifier, IDENTIFIER);
+        addToken(type, identifier);
+    }
+
+    /**
+     * Parse a number
+     *
+     * e.g. 5 -6 1.5
+     */
+    private void parseNumber() {
+        boolean foundDot = false;
+        while (!eof() && numeric(peek()) || peekIs('.')) {
+            if (peekIs('.')) {
+                if (foundDot) {
+                    break;
+                }
+                foundDot = true;
+            }
+            advance();
+        }
+
+        String lexeme = lexeme(startPointer, pointer);
+
+        addToken(NUMBER_LITERAL, lexeme, Double.parseDouble(lexeme));
+    }
+
+    /**
+     * Get the current character
+     */
+    private char peek() {
+        if (eof()) {
+            return '\0';
+        }
+        return buffer[pointer - bufferStart];
+    }
+
+    /**
+     * Does the current character match the given character?
+     */
+    private boolean peekIs(char character) {
+        return !eof() && buffer[pointer - bufferStart] == character;
+    }
+
+    /**
+     * Get the character one position ahead
+     */
+    private char lookAhead() {
+        if (isAvailable(pointer + 2)) {
+            return buffer[pointer + 1 - bufferStart];
+        }
+        return '\0';
+    }
+
+    /**
+     * Advance the pointer and return the next character
+     */
+    private char advance() {
+        isAvailable(pointer);
+        character++;
+        return buffer[pointer++ - bufferStart];
+    }
+
+    /**
+     * Has the end been reached?
+     */
+    private boolean eof() {
+        return !isAvailable(pointer);
+    }
+
+    /**
+     * Part of the source which is still buffered
+     */
+    private String lexeme(int start, int end) {
+        return new String(buffer, start - bufferStart, end - start);
+    }
+
+    /**
+     * Is there a character at the given position, reading more of the source into the buffer if needed
+     */
+    private boolean isAvailable(int position) {
+        while (position >= bufferEnd) {
+            if (isSourceRead) {
+                return false;
+            }
+            read();
+        }
+        return true;
+    }
+
+    /**
+     * Read the next block of the source into the buffer, first dropping the characters before 'keepFrom'
+     * <p>
+     * The buffer only grows when a single token doesn't fit into it
+     * </p>
+     */
+    private void read() {
+        int kept = bufferEnd - keepFrom;
+
+        if (keepFrom > bufferStart) {
+            System.arraycopy(buffer, keepFrom - bufferStart, buffer, 0, kept);
+            bufferStart = keepFrom;
+        }
+
+        if (kept == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        try {
+            int count = source.read(buffer, kept, buffer.length - kept);
+
+            if (count < 0) {
+                isSourceRead = true;
+            } else {
+                bufferEnd += count;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parse a quote-delimited string
+     *
+     * e.g. "this is a string"
+     */
+    private void parseString() {
+        // search until we find a closing "
+        while (!eof() && !peekIs('"')) {
+            advance();
+        }
+
+        if (eof()) {
+            syntaxError("Unterminated string literal.");
+            return;
+        }
+
+        // remove closing "
+        advance();
+        String lexeme = lexeme(startPointer, pointer);
+        String literal = lexeme(startPointer + 1, pointer - 1);
+
+        addToken(STRING_LITERAL, lexeme, canonicalizeString(literal));
+    }
+
+    /**
+     * Replace literals with special escape characters so tabs, newlines etc. work correctly
+     */
+    private String canonicalizeString(String str) {
+        if (str.indexOf('\\') < 0) {
+            return str;
+        }
+        return str.replace("\\t", "\t")
+                .replace("\\n", "\n")
+                .replace("\\r", "\r");
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,272 @@
+package towel.parser;
+
+import towel.ast.Token;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static towel.ast.Token.TokenType.IDENTIFIER;
+
+/**
+ * The tokens lexed from a source, packed into arrays rather than held as an object each
+ * <p>
+ * Tokens are handed out as views onto the buffer, which only slice their lexeme from the buffered text when it's
+ * asked for. Identifiers are the exception, their names are looked up whenever they're run so they're kept as strings.
+ * Names and string literals are shared between every token with the same text.
+ * </p>
+ * <p>
+ * A view keeps the whole buffer alive, so the tokens which are held on to after parsing, e.g. by the AST, are copied
+ * into a buffer of their own with {@link #keep}.
+ * </p>
+ */
+final class TokenBuffer {
+
+    private final static int INITIAL_CAPACITY = 256;
+    private final static Token.TokenType[] types = Token.TokenType.values();
+
+    private byte[] tokenTypes = new byte[INITIAL_CAPACITY];
+
+    /**
+     * Line in the upper 32 bits, character in the lower
+     */
+    private long[] lineCharacters = new long[INITIAL_CAPACITY];
+    private int[] positions = new int[INITIAL_CAPACITY];
+
+    /**
+     * The lexeme of token 'i' runs from textOffsets[i] to textOffsets[i + 1] within the text
+     */
+    private int[] textOffsets = new int[INITIAL_CAPACITY + 1];
+    private char[] text = new char[INITIAL_CAPACITY * 4];
+
+    /**
+     * Literal values, or names for identifiers, null when the literal is the lexeme itself
+     */
+    private Object[] values = new Object[INITIAL_CAPACITY];
+
+    private Map<String, String> strings = new HashMap<>();
+    private int size = 0;
+
+    /**
+     * @param literal the literal value of the lexeme, or null if it's the lexeme itself
+     * @return index of the token
+     */
+    int add(Token.TokenType type, String lexeme, Object literal, int line, int character, int position) {
+        if (literal instanceof String) {
+            literal = share((String) literal);
+        }
+
+        int index = addPosition(type, literal, line, character, position);
+
+        if (type == IDENTIFIER) {
+            values[index] = share(lexeme);
+            textOffsets[index + 1] = textOffsets[index];
+        } else {
+            int offset = reserveText(index, lexeme.length());
+            lexeme.getChars(0, lexeme.length(), text, offset);
+        }
+        return index;
+    }
+
+    /**
+     * Add a token whose lexeme is a slice of the given characters, and whose literal is the lexeme itself
+     *
+     * @return index of the token
+     */
+    int add(Token.TokenType type, char[] chars, int offset, int length, int line, int character, int position) {
+        if (type == IDENTIFIER) {
+            return add(type, new String(chars, offset, length), null, line, character, position);
+        }
+
+        int index = addPosition(type, null, line, character, position);
+        int textOffset = reserveText(index, length);
+        System.arraycopy(chars, offset, text, textOffset, length);
+        return index;
+    }
+
+    private String share(String string) {
+        return strings.computeIfAbsent(string, key -> key);
+    }
+
+    private int addPosition(Token.TokenType type, Object literal, int line, int character, int position) {
+        if (size == tokenTypes.length) {
+            int capacity = Math.max(size * 2, INITIAL_CAPACITY);
+            tokenTypes = Arrays.copyOf(tokenTypes, capacity);
+            lineCharacters = Arrays.copyOf(lineCharacters, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            textOffsets = Arrays.copyOf(textOffsets, capacity + 1);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        tokenTypes[size] = (byte) type.ordinal();
+        lineCharacters[size] = ((long) line << 32) | (character & 0xFFFFFFFFL);
+        positions[size] = position;
+        values[size] = literal;
+        return size++;
+    }
+
+    /**
+     * Make room for a token's lexeme at the end of the text
+     *
+     * @return offset of the lexeme within the text
+     */
+    private int reserveText(int index, int length) {
+        int offset = textOffsets[index];
+
+        if (offset + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, offset + length));
+        }
+        textOffsets[index + 1] = offset + length;
+        return offset;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Token get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return new TokenView(this, index);
+    }
+
+    /**
+     * Add a copy of a token from another buffer, or one which isn't buffered
+     *
+     * @return a view onto the copy
+     */
+    Token keep(Token token) {
+        if (!(token instanceof TokenView)) {
+            Object literal = token.getLiteral();
+            int index = add(token.getType(), token.getLexeme(), token.getLexeme().equals(literal) ? null : literal,
+                    token.getLine(), token.getCharacter(), token.getPosition());
+            return new TokenView(this, index);
+        }
+
+        TokenView view = (TokenView) token;
+        TokenBuffer from = view.buffer;
+        int fromIndex = view.index;
+
+        if (from == this) {
+            return token;
+        }
+
+        Object value = from.values[fromIndex];
+        long lineCharacter = from.lineCharacters[fromIndex];
+        int index = addPosition(from.getType(fromIndex), value instanceof String ? share((String) value) : value,
+                (int) (lineCharacter >>> 32), (int) lineCharacter, from.positions[fromIndex]);
+
+        int length = from.textOffsets[fromIndex + 1] - from.textOffsets[fromIndex];
+        int offset = reserveText(index, length);
+        System.arraycopy(from.text, from.textOffsets[fromIndex], text, offset, length);
+        return new TokenView(this, index);
+    }
+
+    /**
+     * Shrink the buffer to the tokens it holds, once no more are going to be added
+     * <p>
+     * Strings added after this are no longer shared with those added before
+     * </p>
+     */
+    void trimToSize() {
+        tokenTypes = Arrays.copyOf(tokenTypes, size);
+        lineCharacters = Arrays.copyOf(lineCharacters, size);
+        positions = Arrays.copyOf(positions, size);
+        textOffsets = Arrays.copyOf(textOffsets, size + 1);
+        text = Arrays.copyOf(text, textOffsets[size]);
+        values = Arrays.copyOf(values, size);
+        strings = new HashMap<>();
+    }
+
+    /**
+     * Every token in the buffer, a view is created as each is fetched
+     */
+    List<Token> asList() {
+        return new AbstractList<Token>() {
+            @Override
+            public Token get(int index) {
+                return TokenBuffer.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private Token.TokenType getType(int index) {
+        return types[tokenTypes[index]];
+    }
+
+    private String getLexeme(int index) {
+        if (getType(index) == IDENTIFIER) {
+            return (String) values[index];
+        }
+        return new String(text, textOffsets[index], textOffsets[index + 1] - textOffsets[index]);
+    }
+
+    private Object getLiteral(int index) {
+        Object value = values[index];
+        return value != null ? value : getLexeme(index);
+    }
+
+    /**
+     * A single token within the buffer
+     */
+    private static final class TokenView implements Token {
+
+        private final TokenBuffer buffer;
+        private final int index;
+
+        private TokenView(TokenBuffer buffer, int index) {
+            this.buffer = buffer;
+            this.index = index;
+        }
+
+        @Override
+        public TokenType getType() {
+            return buffer.getType(index);
+        }
+
+        @Override
+        public String getLexeme() {
+            return buffer.getLexeme(index);
+        }
+
+        @Override
+        public Object getLiteral() {
+            return buffer.getLiteral(index);
+        }
+
+        @Override
+        public int getLine() {
+            return (int) (buffer.lineCharacters[index] >>> 32);
+        }
+
+        @Override
+        public int getCharacter() {
+            return (int) buffer.lineCharacters[index];
+        }
+
+        @Override
+        public int getPosition() {
+            return buffer.positions[index];
+        }
+
+        @Override
+        public String toString() {
+            return "Token{" +
+                    "type=" + getType() +
+                    ", lexeme='" + getLexeme() + '\'' +
+                    ", literal=" + getLiteral() +
+                    ", line=" + getLine() +
+                    ", character=" + getCharacter() +
+                    ", position=" + getPosition() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package towel.parser;
+
+import towel.ast.Token;
+
+/**
+ * The tokens being parsed, read one at a time
+ */
+interface TokenCursor {
+
+    /**
+     * Get the current token, without moving past it
+     */
+    Token peek();
+
+    /**
+     * Move past the current token and return it
+     */
+    Token advance();
+
+    /**
+     * Were any syntax errors found when lexing the tokens
+     * <p>
+     * Any tokens not yet lexed are lexed first, so that every error is reported
+     * </p>
+     */
+    boolean hasLexicalErrors();
+}
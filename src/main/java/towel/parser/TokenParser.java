@@ -35,17 +35,22 @@ class TokenParser implements Parser {
     /**
      * Unparsed tokens
      */
-    private final List<Token> tokens;
+    private final TokenCursor tokens;
 
     /**
      * Parsed AST
      */
     private final List<Node> nodes = new ArrayList<>();
-    private int pos = 0;
+
+    /**
+     * The tokens held by the AST, copied out of the lexer's buffers so the tokens which are dropped aren't kept too
+     */
+    private final TokenBuffer kept = new TokenBuffer();
+
     private final ErrorReporter reporter;
     private final String namespace;
 
-    TokenParser(List<Token> tokens, ErrorReporter reporter, String namespace) {
+    TokenParser(TokenCursor tokens, ErrorReporter reporter, String namespace) {
         this.tokens = Objects.requireNonNull(tokens);
         this.reporter = Objects.requireNonNull(reporter);
         this.namespace = Objects.requireNonNull(namespace);
@@ -66,11 +71,19 @@ class TokenParser implements Parser {
                 Node node = doParse(t);
                 nodes.add(node);
             } catch (ParseError e) {
-                reporter.error(e.getMessage(), e.token.getLine(), e.token.getCharacter());
+                if (!tokens.hasLexicalErrors()) {
+                    reporter.error(e.getMessage(), e.token.getLine(), e.token.getCharacter());
+                }
                 return null;
             }
         }
 
+        if (tokens.hasLexicalErrors()) {
+            return null;
+        }
+
+        kept.trimToSize();
+
         // Extract all Import and FileImport nodes from the node list
 
         // It would probably be better to change this at some point to
@@ -90,16 +103,22 @@ class TokenParser implements Parser {
     }
 
     private Token advance() {
-        pos++;
-        return tokens.get(pos - 1);
+        return tokens.advance();
     }
 
     private Token peek() {
-        return tokens.get(pos);
+        return tokens.peek();
+    }
+
+    /**
+     * Keep a token which the AST holds on to, the token returned must be used in its place
+     */
+    private Token keep(Token token) {
+        return kept.keep(token);
     }
 
     private boolean eof() {
-        return is(tokens.get(pos), EOF);
+        return is(tokens.peek(), EOF);
     }
 
     /**
@@ -237,7 +256,7 @@ class TokenParser implements Parser {
         advance();
 
         return new Function(
-                name,
+                keep(name),
                 isPublic,
                 bodyNodes.toArray(new Node[0]),
                 preConditions,
@@ -262,7 +281,7 @@ class TokenParser implements Parser {
 
         Token name = expect(IDENTIFIER, "Expecting identifier after 'let'.");
 
-        return new Let(name, isPublic);
+        return new Let(keep(name), isPublic);
     }
 
     /**
@@ -288,7 +307,7 @@ class TokenParser implements Parser {
         // throw away the closing brace after determining whether this is unterminated or not
         advance();
 
-        return new Sequence(token, nodes.toArray(new Node[0]));
+        return new Sequence(keep(token), nodes.toArray(new Node[0]));
     }
 
     /**
@@ -300,7 +319,7 @@ class TokenParser implements Parser {
                 NUMBER_LITERAL,
                 BOOLEAN_LITERAL)) {
 
-            return new Literal(token);
+            return new Literal(keep(token));
         }
 
         return binaryOperator(token);
@@ -316,7 +335,7 @@ class TokenParser implements Parser {
                 STAR,
                 SLASH,
                 MOD)) {
-            return new BinaryOperator(token);
+            return new BinaryOperator(keep(token));
         }
 
         return condition(token);
@@ -329,7 +348,7 @@ class TokenParser implements Parser {
      */
     private Node condition(Token token) {
         if (is(token, QUESTION_MARK, DOUBLE_QUESTION_MARK)) {
-            return new Condition(token);
+            return new Condition(keep(token));
         }
 
         return comparison(token);
@@ -349,7 +368,7 @@ class TokenParser implements Parser {
                 NOT_EQUAL,
                 OR,
                 AND)) {
-            return new Comparison(token);
+            return new Comparison(keep(token));
         }
 
         return identifier(token);
@@ -372,7 +391,7 @@ class TokenParser implements Parser {
                 token = expect(IDENTIFIER, "Expecting identifier after '.'.");
             }
 
-            return new Identifier(token, namespace);
+            return new Identifier(keep(token), namespace == null ? null : keep(namespace));
         }
 
         if (is(token, IMPORT)) {
@@ -415,7 +434,7 @@ class TokenParser implements Parser {
             throw new ParseError("Expecting closing ']' after array definition.", next);
         }
 
-        return new Array(token, initialContents.isEmpty() ? Array.EMPTY : initialContents.toArray());
+        return new Array(keep(token), initialContents.isEmpty() ? Array.EMPTY : initialContents.toArray());
     }
 
     private void unexpectedToken(Token token) {
@@ -437,7 +456,7 @@ class TokenParser implements Parser {
 
         // import <io>
         if (isPeek(LESS_THAN, STRING_LITERAL)) {
-            return new Import(token, getImportNamespace(), Import.NO_TARGET, null);
+            return new Import(keep(token), getImportNamespace(), Import.NO_TARGET, null);
         }
 
         String[] target = getImportTarget();
@@ -462,7 +481,7 @@ class TokenParser implements Parser {
             alias = expect(IDENTIFIER, "Expecting identifier to use as alias after 'as'.").getLexeme();
         }
 
-        return new Import(token, namespace, target, alias);
+        return new Import(keep(token), namespace, target, alias);
     }
 
     private String getImportNamespace() {
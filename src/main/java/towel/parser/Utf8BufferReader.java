@@ -0,0 +1,109 @@
+package towel.parser;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Reads UTF-8 encoded source straight from a byte buffer, e.g. a memory mapped file
+ * <p>
+ * ASCII bytes are copied across as they are. Only runs of other bytes go through a decoder, malformed input within
+ * them is replaced as it is when decoding the source into a string.
+ * </p>
+ */
+class Utf8BufferReader extends Reader {
+
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Second half of a surrogate pair, when there was only room for the first
+     */
+    private char leftover;
+    private boolean hasLeftover = false;
+
+    Utf8BufferReader(ByteBuffer bytes) {
+        this.bytes = Objects.requireNonNull(bytes);
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+
+        int count = 0;
+
+        if (hasLeftover) {
+            buffer[offset] = leftover;
+            hasLeftover = false;
+            count++;
+        } else if (!bytes.hasRemaining()) {
+            return -1;
+        }
+
+        int position = bytes.position();
+        int limit = bytes.limit();
+
+        while (count < length && position < limit) {
+            byte b = bytes.get(position);
+
+            if (b >= 0) {
+                buffer[offset + count++] = (char) b;
+                position++;
+                continue;
+            }
+
+            // an ASCII byte can't be part of a multi-byte character, so the run ends at the next one
+            int end = position + 1;
+            while (end < limit && bytes.get(end) < 0) {
+                end++;
+            }
+
+            ByteBuffer run = bytes.duplicate();
+            run.position(position).limit(end);
+            CharBuffer decoded = CharBuffer.wrap(buffer, offset + count, length - count);
+            decode(run, decoded);
+
+            if (run.position() == position) {
+                // the next character may be a surrogate pair, with only room left for its first half
+                if (count == 0) {
+                    CharBuffer pair = CharBuffer.allocate(2);
+                    decode(run, pair);
+                    buffer[offset] = pair.get(0);
+                    count++;
+                    position = run.position();
+
+                    if (pair.position() == 2) {
+                        leftover = pair.get(1);
+                        hasLeftover = true;
+                    }
+                }
+                break;
+            }
+
+            count = decoded.position() - offset;
+            position = run.position();
+        }
+
+        bytes.position(position);
+        return count;
+    }
+
+    private void decode(ByteBuffer run, CharBuffer out) {
+        decoder.reset();
+        decoder.decode(run, out, true);
+        decoder.flush(out);
+    }
+
+    @Override
+    public void close() {
+        // nothing to release, the buffer is unmapped once it's no longer referenced
+    }
+}
@@ -0,0 +1,216 @@
+package towel.pass;
+
+import towel.ast.*;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Finds conditions whose branches are literal sequences pushed right before them, e.g. {@code { 1 } { 2 } ?}, and
+ * attaches the branches to the condition
+ * </p>
+ * <p>
+ * The sequences are then never pushed onto the stack, the condition only pops the boolean and runs the branch it
+ * chooses. This doesn't change the behaviour of the program, so it always runs, after everything else.
+ * </p>
+ * <p>
+ * Inlining can leave the same nodes in more than one place, a condition is only resolved if it has the same
+ * branches everywhere it appears, and they don't appear anywhere else.
+ * </p>
+ */
+class BranchResolver implements NodeVisitor<Void> {
+
+    /**
+     * Marks a node found in more than one context, so it's left alone
+     */
+    private static final Object CONFLICT = new Object();
+
+    /**
+     * Marks a sequence found where it's pushed onto the stack
+     */
+    private static final Object PUSHED = new Object();
+
+    /**
+     * The branches found for each condition, and the condition each sequence was found to be a branch of
+     */
+    private final Map<Condition, Object> conditions = new IdentityHashMap<>();
+    private final Map<Sequence, Object> sequences = new IdentityHashMap<>();
+
+    private boolean isInProgram = false;
+
+    @Override
+    public Void visit(Program programNode) {
+
+        // a program spliced in from an import has already been resolved on its own
+        if (isInProgram) {
+            return null;
+        }
+
+        isInProgram = true;
+        collect(programNode.getNodes());
+        isInProgram = false;
+
+        for (Map.Entry<Condition, Object> entry : conditions.entrySet()) {
+            if (entry.getValue() instanceof Sequence[]) {
+                resolve(entry.getKey(), (Sequence[]) entry.getValue());
+            }
+        }
+
+        conditions.clear();
+        sequences.clear();
+        return null;
+    }
+
+    private void resolve(Condition conditionNode, Sequence[] branches) {
+        for (Sequence branch : branches) {
+            if (branch != null && sequences.get(branch) != conditionNode) {
+                return;
+            }
+        }
+
+        for (Sequence branch : branches) {
+            if (branch != null) {
+                branch.markBranch();
+            }
+        }
+        conditionNode.setBranches(branches[0], branches[1]);
+    }
+
+    /**
+     * Record the context of each condition and sequence within the given nodes, then carry on into nested nodes
+     */
+    private void collect(List<Node> nodes) {
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+
+            if (node instanceof Condition) {
+                Sequence[] branches = branchesAt(nodes, i);
+                record(conditions, (Condition) node, branches == null ? CONFLICT : branches);
+
+                if (branches != null) {
+                    for (Sequence branch : branches) {
+                        if (branch != null) {
+                            record(sequences, branch, node);
+                        }
+                    }
+                }
+            } else if (node instanceof Sequence && !isBranchAt(nodes, i)) {
+                record(sequences, (Sequence) node, PUSHED);
+            }
+
+            node.accept(this);
+        }
+    }
+
+    /**
+     * Get the literal branches of the condition at the given index
+     *
+     * @return the 'then' and 'else', the latter null for a single-branched condition, or null if they aren't literal
+     */
+    private static Sequence[] branchesAt(List<Node> nodes, int index) {
+        boolean isBranched = ((Condition) nodes.get(index)).getTokenType() == Token.TokenType.QUESTION_MARK;
+        int operands = isBranched ? 2 : 1;
+
+        if (index < operands) {
+            return null;
+        }
+
+        for (int i = index - operands; i < index; i++) {
+            if (!(nodes.get(i) instanceof Sequence)) {
+                return null;
+            }
+        }
+
+        Sequence thenBranch = (Sequence) nodes.get(index - operands);
+        Sequence elseBranch = isBranched ? (Sequence) nodes.get(index - 1) : null;
+
+        return new Sequence[]{thenBranch, elseBranch};
+    }
+
+    /**
+     * Is the sequence at the given index one of the literal branches of a following condition
+     */
+    private static boolean isBranchAt(List<Node> nodes, int index) {
+        for (int i = index + 1; i <= index + 2 && i < nodes.size(); i++) {
+            if (nodes.get(i) instanceof Condition) {
+                Sequence[] branches = branchesAt(nodes, i);
+                return branches != null && (branches[0] == nodes.get(index) || branches[1] == nodes.get(index));
+            }
+            if (!(nodes.get(i) instanceof Sequence)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static <K> void record(Map<K, Object> contexts, K node, Object context) {
+        Object existing = contexts.get(node);
+
+        if (existing == null) {
+            contexts.put(node, context);
+        } else if (!isSameContext(existing, context)) {
+            contexts.put(node, CONFLICT);
+        }
+    }
+
+    private static boolean isSameContext(Object existing, Object context) {
+        if (existing instanceof Sequence[] && context instanceof Sequence[]) {
+            Sequence[] a = (Sequence[]) existing;
+            Sequence[] b = (Sequence[]) context;
+            return a[0] == b[0] && a[1] == b[1];
+        }
+        return existing == context;
+    }
+
+    @Override
+    public Void visit(Literal literalNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(BinaryOperator binaryOperatorNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Condition conditionNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Comparison comparisonNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Sequence sequenceNode) {
+        collect(Arrays.asList(sequenceNode.getNodes()));
+        return null;
+    }
+
+    @Override
+    public Void visit(Function functionNode) {
+        collect(Arrays.asList(functionNode.getBody()));
+        return null;
+    }
+
+    @Override
+    public Void visit(Identifier identifierNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Import importNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Let letNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Array arrayNode) {
+        return null;
+    }
+}
@@ -0,0 +1,399 @@
+package towel.pass;
+
+import towel.ast.*;
+import towel.interpreter.ImportNodeResolver;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Optimisation pass which evaluates anything that only depends on literals ahead of time
+ * </p>
+ * <p>
+ * Each list of nodes (the program, function bodies and sequences) is rebuilt, folding as it goes:
+ * </p>
+ * <ul>
+ * <li>binary operators and comparisons on two literals are replaced by their result, e.g. {@code 5 5 *} becomes
+ * {@code 25}</li>
+ * <li>conditions on a literal boolean are replaced by the contents of the branch that would be taken</li>
+ * <li>top-level lets bound once to a literal have the literal substituted for their uses, wherever it's certain the
+ * let will have been bound first, and no let from another file may bind the name</li>
+ * </ul>
+ * <p>
+ * Anything which would raise an error when run, e.g. division by zero or comparing a string to a number, is left
+ * alone so that the error is still raised with the same message.
+ * </p>
+ */
+class ConstantFolder implements NodeVisitor<Void> {
+
+    private final ForeignLets foreignLets;
+
+    /**
+     * The rebuilt list of nodes currently being folded into, if any
+     */
+    private List<Node> output = null;
+
+    /**
+     * Literals to substitute for identifiers, keyed by name
+     */
+    private final Map<String, Literal> constants = new HashMap<>();
+
+    ConstantFolder(ForeignLets foreignLets) {
+        this.foreignLets = Objects.requireNonNull(foreignLets);
+    }
+
+    @Override
+    public Void visit(Program programNode) {
+
+        // a program spliced in from an import has already been folded on its own
+        if (output != null) {
+            output.add(programNode);
+            return null;
+        }
+
+        List<Node> nodes = programNode.getNodes();
+
+        fold(nodes);
+        inlineConstants(nodes);
+        fold(nodes);
+
+        return null;
+    }
+
+    /**
+     * Fold the program's nodes in place, the list has to be kept as imports refer back to it
+     */
+    private void fold(List<Node> nodes) {
+        List<Node> folded = foldNodes(nodes);
+        nodes.clear();
+        nodes.addAll(folded);
+    }
+
+    private List<Node> foldNodes(Iterable<Node> nodes) {
+        List<Node> previousOutput = output;
+        output = new ArrayList<>();
+
+        for (Node node : nodes) {
+            node.accept(this);
+        }
+
+        List<Node> folded = output;
+        output = previousOutput;
+        return folded;
+    }
+
+    private Node[] foldNodes(Node[] nodes) {
+        return foldNodes(Arrays.asList(nodes)).toArray(new Node[0]);
+    }
+
+    /**
+     * Find the top-level lets which are only ever bound to a literal, and substitute the literal for their uses
+     * <p>
+     * Only uses after the let at the top level, or within functions defined after it, are substituted. These can't
+     * run before the let has been bound. Sequences are left alone, they can be executed from other files.
+     * </p>
+     */
+    private void inlineConstants(List<Node> nodes) {
+        Map<String, Integer> bindings = new HashMap<>();
+        Set<String> importable = new HashSet<>();
+        boolean hasStarImport = countBindings(nodes, bindings, importable);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+
+            if (node instanceof Let && i > 0 && nodes.get(i - 1) instanceof Literal) {
+                String name = ((Let) node).getName();
+
+                if (bindings.get(name) == 1 && !hasStarImport && !importable.contains(name)
+                        && !foreignLets.mayBind(name)) {
+                    constants.put(name, (Literal) nodes.get(i - 1));
+                }
+            } else if (node instanceof Identifier) {
+                Literal constant = getConstant((Identifier) node);
+
+                if (constant != null) {
+                    nodes.set(i, constant);
+                }
+            } else if (node instanceof Function && !constants.isEmpty()) {
+                Function functionNode = (Function) node;
+                Node[] body = functionNode.getBody().clone();
+
+                for (int j = 0; j < body.length; j++) {
+                    if (body[j] instanceof Identifier) {
+                        Literal constant = getConstant((Identifier) body[j]);
+
+                        if (constant != null) {
+                            body[j] = constant;
+                        }
+                    }
+                }
+                nodes.set(i, rebuild(functionNode, body));
+            }
+        }
+
+        constants.clear();
+    }
+
+    /**
+     * Count the number of times each name is bound, by either a let or a function
+     *
+     * @return whether there are any star imports, which could bind any name
+     */
+    private boolean countBindings(Iterable<Node> nodes, Map<String, Integer> bindings, Set<String> importable) {
+        boolean hasStarImport = false;
+
+        for (Node node : nodes) {
+            if (node instanceof Let) {
+                bindings.merge(((Let) node).getName(), 1, Integer::sum);
+            } else if (node instanceof Function) {
+                bindings.merge(((Function) node).getLexeme(), 1, Integer::sum);
+                countBindings(Arrays.asList(((Function) node).getBody()), bindings, importable);
+            } else if (node instanceof Sequence) {
+                countBindings(Arrays.asList(((Sequence) node).getNodes()), bindings, importable);
+            } else if (node instanceof Import) {
+                Import importNode = (Import) node;
+                importable.addAll(Arrays.asList(importNode.getTarget()));
+                hasStarImport |= ImportNodeResolver.wrap(importNode).isStarImport();
+
+                if (importNode.getAlias() != null) {
+                    importable.add(importNode.getAlias());
+                }
+            }
+        }
+
+        return hasStarImport;
+    }
+
+    private Literal getConstant(Identifier identifierNode) {
+        if (identifierNode.isNamespaced() || !constants.containsKey(identifierNode.getName())) {
+            return null;
+        }
+
+        Token value = constants.get(identifierNode.getName()).getToken();
+        Token position = identifierNode.getToken();
+
+        return new Literal(Token.create(value.getType(), value.getLexeme(), value.getLiteral(),
+                position.getLine(), position.getCharacter(), position.getPosition()));
+    }
+
+    private static Function rebuild(Function functionNode, Node[] body) {
+        return new Function(functionNode.getToken(), functionNode.isPublic(), body,
+                functionNode.getPreConditions(), functionNode.getPostConditions());
+    }
+
+    /**
+     * Get the literal value of the node a given distance from the end of the output, if it is a literal
+     */
+    private Object literalAt(int fromEnd) {
+        int index = output.size() - 1 - fromEnd;
+
+        if (index < 0 || !(output.get(index) instanceof Literal)) {
+            return null;
+        }
+        return ((Literal) output.get(index)).getToken().getLiteral();
+    }
+
+    private Sequence sequenceAt(int fromEnd) {
+        int index = output.size() - 1 - fromEnd;
+
+        if (index < 0 || !(output.get(index) instanceof Sequence)) {
+            return null;
+        }
+        return (Sequence) output.get(index);
+    }
+
+    /**
+     * Replace the last {@code count} nodes of the output with a literal
+     */
+    private void replaceWithLiteral(int count, Token at, Object value) {
+        removeLast(count);
+
+        if (value instanceof Boolean) {
+            output.add(new Literal(Token.create(Token.TokenType.BOOLEAN_LITERAL, value.toString(), value,
+                    at.getLine(), at.getCharacter(), at.getPosition())));
+        } else {
+            double number = (Double) value;
+            String lexeme = number == Math.rint(number) && !Double.isInfinite(number)
+                    ? String.valueOf((long) number) : String.valueOf(number);
+
+            output.add(new Literal(Token.create(Token.TokenType.NUMBER_LITERAL, lexeme, value,
+                    at.getLine(), at.getCharacter(), at.getPosition())));
+        }
+    }
+
+    private void removeLast(int count) {
+        for (int i = 0; i < count; i++) {
+            output.remove(output.size() - 1);
+        }
+    }
+
+    @Override
+    public Void visit(Literal literalNode) {
+        output.add(literalNode);
+        return null;
+    }
+
+    @Override
+    public Void visit(BinaryOperator binaryOperatorNode) {
+        Object left = literalAt(1);
+        Object right = literalAt(0);
+
+        if (!(left instanceof Double) || !(right instanceof Double)) {
+            output.add(binaryOperatorNode);
+            return null;
+        }
+
+        double l = (Double) left;
+        double r = (Double) right;
+        Double result = null;
+
+        switch (binaryOperatorNode.getTokenType()) {
+            case PLUS:
+                result = l + r;
+                break;
+            case MINUS:
+                result = l - r;
+                break;
+            case STAR:
+                result = l * r;
+                break;
+            case SLASH:
+                result = r == 0 ? null : l / r;
+                break;
+            case MOD:
+                result = r == 0 ? null : l % r;
+                break;
+        }
+
+        if (result == null) {
+            output.add(binaryOperatorNode);
+        } else {
+            replaceWithLiteral(2, binaryOperatorNode.getToken(), result);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Comparison comparisonNode) {
+        Boolean result = compare(comparisonNode.getTokenType(), literalAt(1), literalAt(0));
+
+        if (result == null) {
+            output.add(comparisonNode);
+        } else {
+            replaceWithLiteral(2, comparisonNode.getToken(), result);
+        }
+        return null;
+    }
+
+    /**
+     * Compare two literals, in the same way as the interpreter
+     *
+     * @return the result, or null if it can't be compared without an error
+     */
+    private static Boolean compare(Token.TokenType type, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) {
+            double l = (Double) left;
+            double r = (Double) right;
+
+            switch (type) {
+                case LESS_THAN:
+                    return l < r;
+                case LESS_THAN_EQUAL:
+                    return l <= r;
+                case GREATER_THAN:
+                    return l > r;
+                case GREATER_THAN_EQUAL:
+                    return l >= r;
+                case EQUAL_EQUAL:
+                    return l == r;
+                case NOT_EQUAL:
+                    return l != r;
+                default:
+                    return null;
+            }
+        }
+
+        if ((left instanceof String && right instanceof String) || (left instanceof Boolean && right instanceof Boolean)) {
+            switch (type) {
+                case EQUAL_EQUAL:
+                    return left.equals(right);
+                case NOT_EQUAL:
+                    return !left.equals(right);
+            }
+        }
+
+        if (left instanceof Boolean && right instanceof Boolean) {
+            switch (type) {
+                case OR:
+                    return (Boolean) left || (Boolean) right;
+                case AND:
+                    return (Boolean) left && (Boolean) right;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visit(Condition conditionNode) {
+        boolean isBranched = conditionNode.getTokenType() == Token.TokenType.QUESTION_MARK;
+        int operands = isBranched ? 3 : 2;
+
+        Object condition = literalAt(operands - 1);
+        Sequence thenBranch = sequenceAt(operands - 2);
+        Sequence elseBranch = isBranched ? sequenceAt(0) : null;
+
+        if (!(condition instanceof Boolean) || thenBranch == null || (isBranched && elseBranch == null)) {
+            output.add(conditionNode);
+            return null;
+        }
+
+        removeLast(operands);
+
+        // the branch taken is run in place, so it can be folded into whatever came before it
+
+        Sequence chosen = (Boolean) condition ? thenBranch : elseBranch;
+        if (chosen != null) {
+            for (Node node : chosen.getNodes()) {
+                node.accept(this);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Sequence sequenceNode) {
+        output.add(new Sequence(sequenceNode.getToken(), foldNodes(sequenceNode.getNodes())));
+        return null;
+    }
+
+    @Override
+    public Void visit(Function functionNode) {
+        output.add(rebuild(functionNode, foldNodes(functionNode.getBody())));
+        return null;
+    }
+
+    @Override
+    public Void visit(Identifier identifierNode) {
+        output.add(identifierNode);
+        return null;
+    }
+
+    @Override
+    public Void visit(Import importNode) {
+        output.add(importNode);
+        return null;
+    }
+
+    @Override
+    public Void visit(Let letNode) {
+        output.add(letNode);
+        return null;
+    }
+
+    @Override
+    public Void visit(Array arrayNode) {
+        output.add(arrayNode);
+        return null;
+    }
+}
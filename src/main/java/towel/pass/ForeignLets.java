@@ -0,0 +1,69 @@
+package towel.pass;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * <p>
+ * The names which lets from other files may bind within a file's namespace
+ * </p>
+ * <p>
+ * A sequence runs in the namespace of whatever executes it, so a let within a sequence from one file can bind a name
+ * within another. Which names those are is only known once the whole program has been parsed, so each file is
+ * analysed with the names known so far. A pass asks before relying on a name only being bound within its own file,
+ * and each name it relied on is kept, so the file can be analysed again if a let within a sequence elsewhere turns
+ * out to bind it.
+ * </p>
+ */
+public class ForeignLets {
+
+    private final Set<String> names;
+    private final Set<String> reliedOn = new HashSet<>();
+    private final Set<String> letsInSequences = new HashSet<>();
+
+    public ForeignLets() {
+        this(Collections.emptySet());
+    }
+
+    /**
+     * @param names the names lets from other files are known to bind
+     */
+    public ForeignLets(Set<String> names) {
+        this.names = new HashSet<>(Objects.requireNonNull(names));
+    }
+
+    /**
+     * @return whether a let from another file may bind the name, if not the name is relied on not to be bound
+     */
+    boolean mayBind(String name) {
+        if (names.contains(name)) {
+            return true;
+        }
+
+        reliedOn.add(name);
+        return false;
+    }
+
+    /**
+     * Add a let within a sequence of the file, once it has been given its final name
+     */
+    void addLetInSequence(String name) {
+        letsInSequences.add(name);
+    }
+
+    /**
+     * @return the names the file was analysed as if nothing else could bind
+     */
+    public Set<String> getReliedOn() {
+        return reliedOn;
+    }
+
+    /**
+     * @return the names the file's own sequences may bind within another file's namespace
+     */
+    public Set<String> getLetsInSequences() {
+        return letsInSequences;
+    }
+}
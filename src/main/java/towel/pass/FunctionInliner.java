@@ -0,0 +1,273 @@
+package towel.pass;
+
+import towel.ast.*;
+import towel.interpreter.ImportNodeResolver;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Optimisation pass which replaces calls to small functions with the function's body
+ * </p>
+ * <p>
+ * A function can be inlined if it's defined once at the top level of the program, its body is no more than
+ * {@code MAX_INLINED_SIZE} nodes, it doesn't call itself and it doesn't bind anything with a let. No let may bind its
+ * name either, including a let from another file, as a sequence from elsewhere can be executed within this file's
+ * namespace. Calls are inlined at the top level after the definition, within functions defined after it, and within
+ * branches pushed right before their condition. Other sequences are left alone, they can be executed from other
+ * files.
+ * </p>
+ * <p>
+ * This runs once the stack effects have been verified. A call is only inlined when its pre-conditions and
+ * post-conditions have been proven, or the function doesn't declare any, otherwise the call is left to check them.
+ * The inlined nodes keep their own tokens, so any error within them is reported where it would have been.
+ * </p>
+ */
+class FunctionInliner implements NodeVisitor<Void> {
+
+    static final int MAX_INLINED_SIZE = 8;
+
+    private final ForeignLets foreignLets;
+
+    /**
+     * The rebuilt list of nodes currently being inlined into, if any
+     */
+    private List<Node> output = null;
+
+    /**
+     * Whether the sequence being visited is a branch of the condition following it
+     */
+    private boolean isBranch = false;
+
+    /**
+     * Functions which have been defined so far and can be inlined, keyed by name
+     */
+    private final Map<String, Function> inlinable = new HashMap<>();
+
+    /**
+     * Names bound more than once, bound by a let, or which could be imported, so can't be inlined
+     */
+    private final Set<String> excluded = new HashSet<>();
+
+    FunctionInliner(ForeignLets foreignLets) {
+        this.foreignLets = Objects.requireNonNull(foreignLets);
+    }
+
+    @Override
+    public Void visit(Program programNode) {
+
+        // a program spliced in from an import has already been inlined on its own
+        if (output != null) {
+            output.add(programNode);
+            return null;
+        }
+
+        List<Node> nodes = programNode.getNodes();
+
+        if (!excludeNames(nodes)) {
+            List<Node> inlined = inlineNodes(nodes);
+            nodes.clear();
+            nodes.addAll(inlined);
+        }
+
+        inlinable.clear();
+        excluded.clear();
+        return null;
+    }
+
+    /**
+     * Find the names which can't be inlined
+     *
+     * @return whether there are any star imports, in which case nothing can be
+     */
+    private boolean excludeNames(List<Node> nodes) {
+        Set<String> bound = new HashSet<>();
+        boolean hasStarImport = false;
+
+        for (Node node : nodes) {
+            if (node instanceof Function) {
+                String name = ((Function) node).getLexeme();
+
+                if (!bound.add(name)) {
+                    excluded.add(name);
+                }
+                excludeLets(((Function) node).getBody());
+            } else if (node instanceof Sequence) {
+                excludeLets(((Sequence) node).getNodes());
+            } else if (node instanceof Let) {
+                excluded.add(((Let) node).getName());
+            } else if (node instanceof Import) {
+                Import importNode = (Import) node;
+                excluded.addAll(Arrays.asList(importNode.getTarget()));
+                hasStarImport |= ImportNodeResolver.wrap(importNode).isStarImport();
+
+                if (importNode.getAlias() != null) {
+                    excluded.add(importNode.getAlias());
+                }
+            }
+        }
+
+        return hasStarImport;
+    }
+
+    private void excludeLets(Node[] nodes) {
+        for (Node node : nodes) {
+            if (node instanceof Let) {
+                excluded.add(((Let) node).getName());
+            } else if (node instanceof Sequence) {
+                excludeLets(((Sequence) node).getNodes());
+            }
+        }
+    }
+
+    private List<Node> inlineNodes(List<Node> nodes) {
+        List<Node> previousOutput = output;
+        output = new ArrayList<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            isBranch = isBranch(nodes, i);
+            nodes.get(i).accept(this);
+        }
+
+        List<Node> inlined = output;
+        output = previousOutput;
+        return inlined;
+    }
+
+    private Node[] inlineNodes(Node[] nodes) {
+        return inlineNodes(Arrays.asList(nodes)).toArray(new Node[0]);
+    }
+
+    /**
+     * Is the node at the given index a sequence pushed right before the condition which executes it
+     */
+    private static boolean isBranch(List<Node> nodes, int index) {
+        if (!(nodes.get(index) instanceof Sequence)) {
+            return false;
+        }
+
+        Node next = index + 1 < nodes.size() ? nodes.get(index + 1) : null;
+        Node afterNext = index + 2 < nodes.size() ? nodes.get(index + 2) : null;
+
+        return next instanceof Condition
+                || (next instanceof Sequence && afterNext instanceof Condition
+                && ((Condition) afterNext).getTokenType() == Token.TokenType.QUESTION_MARK);
+    }
+
+    /**
+     * Can the given function's body be inlined into its callers, it mustn't call itself, bind anything or be rebound
+     */
+    private boolean isInlinable(Function functionNode) {
+        String name = functionNode.getLexeme();
+
+        return !excluded.contains(name)
+                && functionNode.getBody().length <= MAX_INLINED_SIZE
+                && !refersTo(functionNode.getBody(), name)
+                && !foreignLets.mayBind(name);
+    }
+
+    /**
+     * Does anything within the nodes call the given name, or bind anything with a let
+     */
+    private static boolean refersTo(Node[] nodes, String name) {
+        for (Node node : nodes) {
+            if (node instanceof Let) {
+                return true;
+            }
+            if (node instanceof Identifier && !((Identifier) node).isNamespaced()
+                    && ((Identifier) node).getName().equals(name)) {
+                return true;
+            }
+            if (node instanceof Sequence && refersTo(((Sequence) node).getNodes(), name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Can this call be replaced by the body, the function's conditions must either be proven or not exist
+     */
+    private static boolean canInline(Identifier identifierNode, Function functionNode) {
+        return (identifierNode.isVerified() || functionNode.getPreConditions().length == 0)
+                && (identifierNode.isResultVerified() || functionNode.getPostConditions().length == 0);
+    }
+
+    @Override
+    public Void visit(Literal literalNode) {
+        output.add(literalNode);
+        return null;
+    }
+
+    @Override
+    public Void visit(BinaryOperator binaryOperatorNode) {
+        output.add(binaryOperatorNode);
+        return null;
+    }
+
+    @Override
+    public Void visit(Condition conditionNode) {
+        output.add(conditionNode);
+        return null;
+    }
+
+    @Override
+    public Void visit(Comparison comparisonNode) {
+        output.add(comparisonNode);
+        return null;
+    }
+
+    @Override
+    public Void visit(Sequence sequenceNode) {
+        if (isBranch) {
+            output.add(new Sequence(sequenceNode.getToken(), inlineNodes(sequenceNode.getNodes())));
+        } else {
+            output.add(sequenceNode);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Function functionNode) {
+        Function rebuilt = new Function(functionNode.getToken(), functionNode.isPublic(),
+                inlineNodes(functionNode.getBody()), functionNode.getPreConditions(), functionNode.getPostConditions());
+
+        // only defined once it has been visited, so it's never inlined into code which could run before it
+        if (isInlinable(rebuilt)) {
+            inlinable.put(rebuilt.getLexeme(), rebuilt);
+        }
+
+        output.add(rebuilt);
+        return null;
+    }
+
+    @Override
+    public Void visit(Identifier identifierNode) {
+        Function functionNode = identifierNode.isNamespaced() ? null : inlinable.get(identifierNode.getName());
+
+        if (functionNode != null && canInline(identifierNode, functionNode)) {
+            output.addAll(Arrays.asList(functionNode.getBody()));
+        } else {
+            output.add(identifierNode);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Import importNode) {
+        output.add(importNode);
+        return null;
+    }
+
+    @Override
+    public Void visit(Let letNode) {
+        output.add(letNode);
+        return null;
+    }
+
+    @Override
+    public Void visit(Array arrayNode) {
+        output.add(arrayNode);
+        return null;
+    }
+}
@@ -0,0 +1,195 @@
+package towel.pass;
+
+import towel.ast.*;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Gives the lets of each function a slot in the frame of each call, so they're bound and read by index rather than
+ * by name in the function's namespace
+ * </p>
+ * <p>
+ * A let is only given a slot if it's certain nothing outside the call can see it. Each let of its name has to be at
+ * the top level of the body, and each use of it has to be either there or within a literal branch, which runs in
+ * place. A sequence which is pushed may run after the call has returned, so any name bound or used within one is
+ * left in the namespace, as are public lets. The names have already been made unique to the function by the
+ * {@code ScopeResolver}, and a use can only come after the let it refers to.
+ * </p>
+ * <p>
+ * Each call has its own slots, whereas a let in the namespace is rebound by every call of the function, so a call
+ * which runs while the function's own call is still running, i.e. a recursive one, may change what a later use reads.
+ * Any identifier other than one of the function's lets may be such a call, so a name is left in the namespace if it's
+ * used after one which follows its let.
+ * </p>
+ */
+class LetSlotAllocator implements NodeVisitor<Void> {
+
+    /**
+     * Lets at the top level of the function body being allocated, and the names which have to stay in the namespace
+     */
+    private final Map<String, Integer> slots = new LinkedHashMap<>();
+    private final Set<String> excluded = new HashSet<>();
+
+    /**
+     * Lets bound so far within the call, and those which a call since may have rebound
+     */
+    private final Set<String> bound = new HashSet<>();
+    private final Set<String> mayBeRebound = new HashSet<>();
+
+    private boolean isInProgram = false;
+
+    @Override
+    public Void visit(Program programNode) {
+
+        // a program spliced in from an import has already been allocated on its own
+        if (isInProgram) {
+            return null;
+        }
+
+        isInProgram = true;
+        for (Node node : programNode.getNodes()) {
+            node.accept(this);
+        }
+        isInProgram = false;
+
+        return null;
+    }
+
+    @Override
+    public Void visit(Function functionNode) {
+        Node[] body = functionNode.getBody();
+
+        for (Node node : body) {
+            if (node instanceof Let && !((Let) node).isPublic()) {
+                slots.putIfAbsent(((Let) node).getName(), slots.size());
+            }
+        }
+
+        collectExclusions(body, true, true);
+        slots.keySet().removeAll(excluded);
+
+        if (!slots.isEmpty()) {
+            // number the slots left from zero, in the order the lets appear
+            int slot = 0;
+            for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+                entry.setValue(slot++);
+            }
+
+            assign(body);
+            functionNode.setSlotCount(slots.size());
+        }
+
+        slots.clear();
+        excluded.clear();
+        bound.clear();
+        mayBeRebound.clear();
+        return null;
+    }
+
+    /**
+     * Find the names which can't be given a slot, going through the nodes which run within the call in the order
+     * they may run
+     *
+     * @param isBody   whether the nodes are the top level of the function body
+     * @param isInCall whether the nodes can only run within the call, i.e. aren't within a pushed sequence
+     */
+    private void collectExclusions(Node[] nodes, boolean isBody, boolean isInCall) {
+        for (Node node : nodes) {
+            if (node instanceof Let) {
+                Let letNode = (Let) node;
+
+                if (!isBody || letNode.isPublic()) {
+                    excluded.add(letNode.getName());
+                } else {
+                    bound.add(letNode.getName());
+                    mayBeRebound.remove(letNode.getName());
+                }
+            } else if (node instanceof Identifier) {
+                Identifier identifierNode = (Identifier) node;
+                String name = identifierNode.getName();
+
+                if (!isInCall) {
+                    excluded.add(name);
+                } else if (identifierNode.isNamespaced() || !slots.containsKey(name)) {
+                    // may call back into the function, which would rebind its lets
+                    mayBeRebound.addAll(bound);
+                } else if (mayBeRebound.contains(name)) {
+                    excluded.add(name);
+                }
+            } else if (node instanceof Sequence) {
+                Sequence sequenceNode = (Sequence) node;
+                collectExclusions(sequenceNode.getNodes(), false, isInCall && sequenceNode.isBranch());
+            }
+        }
+    }
+
+    /**
+     * Give the slot of its name to each let and identifier which runs within the call
+     */
+    private void assign(Node[] nodes) {
+        for (Node node : nodes) {
+            if (node instanceof Let) {
+                Integer slot = slots.get(((Let) node).getName());
+
+                if (slot != null) {
+                    ((Let) node).setSlot(slot);
+                }
+            } else if (node instanceof Identifier) {
+                Identifier identifierNode = (Identifier) node;
+                Integer slot = identifierNode.isNamespaced() ? null : slots.get(identifierNode.getName());
+
+                if (slot != null) {
+                    identifierNode.setSlot(slot);
+                }
+            } else if (node instanceof Sequence && ((Sequence) node).isBranch()) {
+                assign(((Sequence) node).getNodes());
+            }
+        }
+    }
+
+    @Override
+    public Void visit(Literal literalNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(BinaryOperator binaryOperatorNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Condition conditionNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Comparison comparisonNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Sequence sequenceNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Identifier identifierNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Import importNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Let letNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Array arrayNode) {
+        return null;
+    }
+}
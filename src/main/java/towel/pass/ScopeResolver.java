@@ -37,6 +37,7 @@ class ScopeResolver implements NodeVisitor<Void> {
     private static final String IDENTIFIER_RENAME_SCHEME = "%s$%s";
 
     private final ErrorReporter reporter;
+    private final ForeignLets foreignLets;
 
     /**
      * All of the identifiers what have been renamed in the current scope
@@ -50,8 +51,17 @@ class ScopeResolver implements NodeVisitor<Void> {
 
     private String currentFunctionName = null;
 
-    ScopeResolver(ErrorReporter reporter) {
+    /**
+     * How many sequences deep the current node is
+     */
+    private int sequenceDepth = 0;
+
+    /**
+     * @param foreignLets where the lets within sequences are added, as they may bind names in other files
+     */
+    ScopeResolver(ErrorReporter reporter, ForeignLets foreignLets) {
         this.reporter = Objects.requireNonNull(reporter);
+        this.foreignLets = Objects.requireNonNull(foreignLets);
     }
 
     private void rename(Renameable identifier, String scope) {
@@ -93,9 +103,11 @@ class ScopeResolver implements NodeVisitor<Void> {
 
     @Override
     public Void visit(Sequence sequenceNode) {
+        sequenceDepth++;
         for (Node e : sequenceNode.getNodes()) {
             e.accept(this);
         }
+        sequenceDepth--;
 
         return null;
     }
@@ -166,6 +178,10 @@ class ScopeResolver implements NodeVisitor<Void> {
             rename(letNode, currentFunctionName);
             identifiersRenamedInScope.put(original, letNode.getName());
         }
+
+        if (sequenceDepth > 0) {
+            foreignLets.addLetInSequence(letNode.getName());
+        }
         return null;
     }
 
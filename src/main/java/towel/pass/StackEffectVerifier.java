@@ -0,0 +1,614 @@
+package towel.pass;
+
+import towel.ErrorReporter;
+import towel.ast.*;
+import towel.interpreter.ImportNodeResolver;
+import towel.interpreter.TowelArray;
+import towel.interpreter.TypeNameTranslator;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Infers the effect each node has on the stack, so that stack conditions can be proven before the program is run
+ * </p>
+ * <p>
+ * Only what is certain is tracked, e.g. the results of literals, operators and comparisons, and of functions defined
+ * within the same file. Anything else, such as a call to a native function, leaves the stack in an unknown state from
+ * which nothing can be proven until more is pushed onto it.
+ * </p>
+ * <p>
+ * Nodes whose requirements are proven are marked as verified, and the interpreter won't check them when they are
+ * executed. Requirements which can never be met are reported as errors, using the message the interpreter would give.
+ * </p>
+ * <p>
+ * Identifiers are only trusted outside of sequences, as a sequence can be executed from another file where the same
+ * name refers to something else. The branches of a condition are the exception, when they are pushed right before
+ * the condition they can only ever be executed by it. A function is only trusted while no let from another file may
+ * bind its name, as a sequence from elsewhere can be executed within this file's namespace.
+ * </p>
+ * <p>
+ * A root program starts with an empty stack, anything else may have been left on the stack by an earlier file.
+ * Internal imports are assumed to leave the stack as they found it.
+ * </p>
+ */
+class StackEffectVerifier implements NodeVisitor<Void> {
+
+    private static final Class[] BINARY_OPERANDS = {Double.class, Double.class};
+    private static final Class[] BRANCH_OPERANDS = {Sequence.class, Sequence.class, Boolean.class};
+    private static final Class[] SINGLE_BRANCH_OPERANDS = {Sequence.class, Boolean.class};
+    private static final Class[] LET_OPERAND = {Object.class};
+
+    /**
+     * An item on the stack, along with the sequence node which pushed it if there was one
+     */
+    private static class Item {
+        final Class type;
+        final Sequence origin;
+
+        Item(Class type, Sequence origin) {
+            this.type = type;
+            this.origin = origin;
+        }
+
+        Item(Class type) {
+            this(type, null);
+        }
+
+        boolean isKnown() {
+            return type != Object.class;
+        }
+    }
+
+    private static final Item UNKNOWN = new Item(Object.class);
+
+    /**
+     * What is known about the stack at a point in the program
+     * <p>
+     * The known items are the top of the stack, there may be any number of unknown items below them unless the
+     * state is exact
+     * </p>
+     */
+    private static class State {
+
+        /**
+         * Top of the stack is last
+         */
+        private final List<Item> items = new ArrayList<>();
+
+        /**
+         * Whether the known items are all that is on the stack
+         */
+        private boolean exact;
+
+        /**
+         * Set once anything unknown happened to the stack, afterwards the effect of the code as a whole isn't known
+         */
+        private boolean lostTrack = false;
+
+        /**
+         * The fewest known items there have been, and the number of unknown items popped from below them
+         * <p>
+         * Together these give the number of items consumed by a function body
+         * </p>
+         */
+        private int floor;
+        private int borrowed = 0;
+
+        State(List<Item> initial, boolean exact) {
+            items.addAll(initial);
+            this.exact = exact;
+            floor = items.size();
+        }
+
+        int size() {
+            return items.size();
+        }
+
+        Item peek(int fromTop) {
+            return items.get(items.size() - 1 - fromTop);
+        }
+
+        void push(Item item) {
+            items.add(item);
+        }
+
+        Item pop() {
+            if (!items.isEmpty()) {
+                Item item = items.remove(items.size() - 1);
+                floor = Math.min(floor, items.size());
+                return item;
+            }
+
+            // popping from an empty stack would have failed when run, so whatever happens next isn't known
+            if (exact) {
+                forget();
+            }
+            borrowed++;
+            return UNKNOWN;
+        }
+
+        void forget() {
+            items.clear();
+            exact = false;
+            lostTrack = true;
+        }
+
+        State copy() {
+            State copy = new State(items, exact);
+            copy.lostTrack = lostTrack;
+            copy.floor = floor;
+            copy.borrowed = borrowed;
+            return copy;
+        }
+
+        /**
+         * The state after either of two branches
+         */
+        static State join(State a, State b) {
+            State joined = a.copy();
+
+            if (a.lostTrack || b.lostTrack || a.exact != b.exact || a.size() != b.size() || a.borrowed != b.borrowed) {
+                joined.forget();
+                return joined;
+            }
+
+            for (int i = 0; i < a.items.size(); i++) {
+                Item left = a.items.get(i);
+                Item right = b.items.get(i);
+
+                if (left != right) {
+                    joined.items.set(i, left.type == right.type ? new Item(left.type) : UNKNOWN);
+                }
+            }
+            joined.floor = Math.min(a.floor, b.floor);
+
+            return joined;
+        }
+    }
+
+    /**
+     * The effect of calling a function, the number of items it consumes and those it leaves in their place
+     */
+    private static class Summary {
+        final int consumed;
+        final List<Item> produced;
+
+        Summary(int consumed, List<Item> produced) {
+            this.consumed = consumed;
+            this.produced = produced;
+        }
+    }
+
+    private final ErrorReporter reporter;
+    private final ForeignLets foreignLets;
+
+    /**
+     * Functions and lets defined within the program, and those which may have been brought in by imports
+     */
+    private final Map<String, Function> functions = new HashMap<>();
+    private final Set<String> lets = new HashSet<>();
+    private final Set<String> ambiguous = new HashSet<>();
+    private final Set<String> importedNames = new HashSet<>();
+    private boolean hasStarImport = false;
+
+    private final Map<Function, Summary> summaries = new IdentityHashMap<>();
+    private final Set<Function> inProgress = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Sequences which have been pushed, and those among them which were executed in place by a condition
+     * <p>
+     * Any which weren't are analysed on their own once the program has been
+     * </p>
+     */
+    private final Deque<Sequence> sequences = new ArrayDeque<>();
+    private final Set<Sequence> inlined = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private State state = null;
+
+    /**
+     * Whether it's known which function identifiers refer to
+     */
+    private boolean identifiersResolved = true;
+
+    StackEffectVerifier(ErrorReporter reporter, ForeignLets foreignLets) {
+        this.reporter = Objects.requireNonNull(reporter);
+        this.foreignLets = Objects.requireNonNull(foreignLets);
+    }
+
+    @Override
+    public Void visit(Program programNode) {
+
+        // a program that was spliced in from an import will have already been analysed
+        // on its own, anything could have been left on the stack by it
+
+        if (state != null) {
+            state.forget();
+            return null;
+        }
+
+        collectDefinitions(programNode.getNodes());
+
+        state = new State(Collections.emptyList(), programNode.isRootNode());
+        identifiersResolved = true;
+        analyse(programNode.getNodes());
+
+        while (!sequences.isEmpty()) {
+            Sequence sequence = sequences.removeFirst();
+
+            if (!inlined.contains(sequence)) {
+                state = new State(Collections.emptyList(), false);
+                identifiersResolved = false;
+                analyse(Arrays.asList(sequence.getNodes()));
+            }
+        }
+
+        state = null;
+        return null;
+    }
+
+    private void collectDefinitions(Iterable<Node> nodes) {
+        for (Node node : nodes) {
+            if (node instanceof Function) {
+                Function function = (Function) node;
+
+                if (functions.put(function.getLexeme(), function) != null) {
+                    ambiguous.add(function.getLexeme());
+                }
+                collectDefinitions(Arrays.asList(function.getBody()));
+            } else if (node instanceof Sequence) {
+                collectDefinitions(Arrays.asList(((Sequence) node).getNodes()));
+            } else if (node instanceof Let) {
+                lets.add(((Let) node).getName());
+            } else if (node instanceof Import) {
+                Import importNode = (Import) node;
+                importedNames.addAll(Arrays.asList(importNode.getTarget()));
+                hasStarImport |= ImportNodeResolver.wrap(importNode).isStarImport();
+
+                if (importNode.getAlias() != null) {
+                    importedNames.add(importNode.getAlias());
+                }
+            }
+        }
+    }
+
+    private void analyse(Iterable<Node> nodes) {
+        for (Node node : nodes) {
+            node.accept(this);
+        }
+    }
+
+    @Override
+    public Void visit(Literal literalNode) {
+        Object literal = literalNode.getToken().getLiteral();
+
+        if (literal instanceof Double || literal instanceof String || literal instanceof Boolean) {
+            state.push(new Item(literal.getClass()));
+        } else {
+            state.push(UNKNOWN);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Array arrayNode) {
+        state.push(new Item(TowelArray.class));
+        return null;
+    }
+
+    @Override
+    public Void visit(BinaryOperator binaryOperatorNode) {
+        if (prove(BINARY_OPERANDS, true, binaryOperatorNode.getToken())) {
+            binaryOperatorNode.markVerified();
+        }
+
+        state.pop();
+        state.pop();
+        state.push(new Item(Double.class));
+        return null;
+    }
+
+    @Override
+    public Void visit(Comparison comparisonNode) {
+        if (state.size() >= 2) {
+            comparisonNode.markVerified();
+            checkComparable(comparisonNode, state.peek(1).type, state.peek(0).type);
+        } else if (state.exact) {
+            logErrorAtToken("Two arguments are required for comparisons.", comparisonNode.getToken());
+            state.forget();
+        }
+
+        state.pop();
+        state.pop();
+        state.push(new Item(Boolean.class));
+        return null;
+    }
+
+    /**
+     * Report comparisons which can never succeed, these follow the checks made by the interpreter
+     */
+    private void checkComparable(Comparison comparisonNode, Class left, Class right) {
+        if (left == Object.class || right == Object.class) {
+            return;
+        }
+
+        Token.TokenType type = comparisonNode.getTokenType();
+        boolean isEquality = type == Token.TokenType.EQUAL_EQUAL || type == Token.TokenType.NOT_EQUAL;
+
+        if (left == Double.class && right == Double.class) {
+            return;
+        }
+
+        if (left == String.class && right == String.class) {
+            if (!isEquality) {
+                logErrorAtToken("Strings can only be checked with == and !=.", comparisonNode.getToken());
+                state.forget();
+            }
+            return;
+        }
+
+        if (left == Boolean.class && right == Boolean.class) {
+            if (!isEquality && type != Token.TokenType.OR && type != Token.TokenType.AND) {
+                logErrorAtToken("Booleans can only be checked with '==', '!=', '||' and '&&'.", comparisonNode.getToken());
+                state.forget();
+            }
+            return;
+        }
+
+        logErrorAtToken(String.format("This comparison cannot be done between '%s' and '%s'.",
+                TypeNameTranslator.get(left),
+                TypeNameTranslator.get(right)
+        ), comparisonNode.getToken());
+        state.forget();
+    }
+
+    @Override
+    public Void visit(Condition conditionNode) {
+        boolean isBranched = conditionNode.getTokenType() == Token.TokenType.QUESTION_MARK;
+
+        if (prove(isBranched ? BRANCH_OPERANDS : SINGLE_BRANCH_OPERANDS, true, conditionNode.getToken())) {
+            conditionNode.markVerified();
+        }
+
+        Item elseBranch = isBranched ? state.pop() : null;
+        Item thenBranch = state.pop();
+        state.pop();
+
+        // if it isn't known which sequences are being branched to, then anything could happen
+
+        if (thenBranch.origin == null || (isBranched && elseBranch.origin == null)) {
+            state.forget();
+            return null;
+        }
+
+        State before = state;
+
+        inlined.add(thenBranch.origin);
+        state = before.copy();
+        analyse(Arrays.asList(thenBranch.origin.getNodes()));
+        State afterThen = state;
+
+        state = before.copy();
+        if (isBranched) {
+            inlined.add(elseBranch.origin);
+            analyse(Arrays.asList(elseBranch.origin.getNodes()));
+        }
+
+        state = State.join(afterThen, state);
+        return null;
+    }
+
+    @Override
+    public Void visit(Sequence sequenceNode) {
+        sequences.add(sequenceNode);
+        state.push(new Item(Sequence.class, sequenceNode));
+        return null;
+    }
+
+    @Override
+    public Void visit(Function functionNode) {
+        summarise(functionNode);
+        return null;
+    }
+
+    /**
+     * Work out the effect of calling a function, analysing its body along the way
+     *
+     * @return the effect, or null if it isn't known
+     */
+    private Summary summarise(Function functionNode) {
+        if (summaries.containsKey(functionNode)) {
+            return summaries.get(functionNode);
+        }
+
+        // recursive, so it can't be known yet
+        if (!inProgress.add(functionNode)) {
+            return null;
+        }
+
+        State outerState = state;
+        boolean outerResolved = identifiersResolved;
+
+        // the body is only run once the pre-conditions are met, and in the context it was defined in
+
+        Class[] preConditions = functionNode.getPreConditions();
+        List<Item> entry = new ArrayList<>();
+        for (int i = preConditions.length - 1; i >= 0; i--) {
+            entry.add(new Item(preConditions[i]));
+        }
+
+        state = new State(entry, false);
+        identifiersResolved = true;
+        analyse(Arrays.asList(functionNode.getBody()));
+
+        Summary summary = null;
+        if (!state.lostTrack) {
+            List<Item> produced = new ArrayList<>();
+            for (Item item : state.items.subList(state.floor, state.size())) {
+                produced.add(new Item(item.type));
+            }
+            summary = new Summary(preConditions.length - state.floor + state.borrowed, produced);
+        }
+
+        state = outerState;
+        identifiersResolved = outerResolved;
+        inProgress.remove(functionNode);
+        summaries.put(functionNode, summary);
+
+        return summary;
+    }
+
+    @Override
+    public Void visit(Identifier identifierNode) {
+        String name = identifierNode.getName();
+
+        // a name defined more than once could refer to either definition
+
+        if (!identifiersResolved || identifierNode.isNamespaced() || ambiguous.contains(name)
+                || (lets.contains(name) && functions.containsKey(name))) {
+            state.forget();
+            return null;
+        }
+
+        if (lets.contains(name)) {
+            if (isImportable(name)) {
+                state.forget();
+            } else {
+                state.push(UNKNOWN);
+            }
+            return null;
+        }
+
+        Function function = functions.get(name);
+        if (function == null || foreignLets.mayBind(name)) {
+            state.forget();
+            return null;
+        }
+
+        if (prove(function.getPreConditions(), true, identifierNode.getToken())) {
+            identifierNode.markVerified();
+        }
+
+        Summary summary = summarise(function);
+        if (summary == null) {
+            state.forget();
+            return null;
+        }
+
+        for (int i = 0; i < summary.consumed; i++) {
+            state.pop();
+        }
+        summary.produced.forEach(state::push);
+
+        if (prove(function.getPostConditions(), false, identifierNode.getToken())) {
+            identifierNode.markResultVerified();
+        }
+        return null;
+    }
+
+    /**
+     * Could the name have been brought in by an import, a let within a function never could as it will have been
+     * renamed
+     */
+    private boolean isImportable(String name) {
+        return hasStarImport || importedNames.contains(name);
+    }
+
+    @Override
+    public Void visit(Import importNode) {
+        if (ImportNodeResolver.wrap(importNode).isExternal()) {
+            state.forget();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Let letNode) {
+        if (prove(LET_OPERAND, true, letNode.getToken())) {
+            letNode.markVerified();
+        }
+
+        state.pop();
+        return null;
+    }
+
+    /**
+     * Check a condition against the known state of the stack
+     * <p>
+     * If the condition can never be met it's reported, and nothing is known about the stack afterwards
+     * </p>
+     *
+     * @return whether the condition has been proven
+     */
+    private boolean prove(Class[] condition, boolean isPreCondition, Token token) {
+        boolean proven = true;
+        boolean failsLength = state.exact && state.size() < condition.length;
+        boolean failsType = false;
+
+        for (int i = 0; i < condition.length; i++) {
+            if (i >= state.size()) {
+                proven = false;
+                continue;
+            }
+
+            Class type = state.peek(i).type;
+            if (!condition[i].isAssignableFrom(type)) {
+                proven = false;
+                failsType |= state.peek(i).isKnown();
+            }
+        }
+
+        if (failsLength || failsType) {
+            logErrorAtToken(createErrorForInvalidState(condition, isPreCondition, failsLength ? "length" : "type", token), token);
+            state.forget();
+            return false;
+        }
+
+        return proven;
+    }
+
+    /**
+     * Create the same message the interpreter would, as far as is known about the stack
+     */
+    private String createErrorForInvalidState(Class[] condition, boolean isPreCondition, String error, Token token) {
+
+        StringBuilder message = new StringBuilder("Stack does not meet ")
+                .append(error)
+                .append(" ")
+                .append(isPreCondition ? "pre-conditions" : "post-conditions")
+                .append(" for ")
+                .append(token.getLexeme())
+                .append(".");
+
+        if (state.exact) {
+            message.append("\nLength must be at least ")
+                    .append(condition.length)
+                    .append(", current length is ")
+                    .append(state.size())
+                    .append(".");
+        }
+
+        for (int i = 0; i < condition.length; i++) {
+            message.append("\nItem ")
+                    .append(i)
+                    .append(" from the top of the stack must be of type '")
+                    .append(TypeNameTranslator.get(condition[i]));
+
+            if (i < state.size() && state.peek(i).isKnown()) {
+                message.append("', '")
+                        .append(TypeNameTranslator.get(state.peek(i).type))
+                        .append("' was found.");
+            } else if (i >= state.size() && state.exact) {
+                message.append("', nothing was found.");
+            } else {
+                message.append("'.");
+            }
+        }
+
+        return message.toString();
+    }
+
+    private void logErrorAtToken(String message, Token token) {
+        reporter.error(message, token.getLine(), token.getCharacter());
+    }
+}
@@ -8,12 +8,59 @@ import towel.ast.Program;
  */
 public interface StaticPass {
 
+    /**
+     * Optimisation levels, each includes the optimisations of those below it
+     */
+    int NO_OPTIMISATION = 0;
+    int FOLD_CONSTANTS = 1;
+    int INLINE_FUNCTIONS = 2;
+    int ELIMINATE_DEAD_CODE = 3;
+
     void performAnalysis(Program program);
 
     static StaticPass getDefaultPass(ErrorReporter reporter) {
+        return getDefaultPass(reporter, NO_OPTIMISATION);
+    }
+
+    static StaticPass getDefaultPass(ErrorReporter reporter, int optimisationLevel) {
+        return getDefaultPass(reporter, optimisationLevel, new ForeignLets());
+    }
+
+    /**
+     * @param foreignLets the names lets from other files may bind, which is added to as the program is analysed
+     */
+    static StaticPass getDefaultPass(ErrorReporter reporter, int optimisationLevel, ForeignLets foreignLets) {
         StaticPassStack stack = new StaticPassStack();
         stack.addPass(new ImportResolver(reporter));
-        stack.addPass(new ScopeResolver(reporter));
+        stack.addPass(new ScopeResolver(reporter, foreignLets));
+
+        if (optimisationLevel >= FOLD_CONSTANTS) {
+            stack.addPass(new ConstantFolder(foreignLets));
+        }
+
+        stack.addPass(new StackEffectVerifier(reporter, foreignLets));
+
+        // inlining relies on which calls have been verified
+        if (optimisationLevel >= INLINE_FUNCTIONS) {
+            stack.addPass(new FunctionInliner(foreignLets));
+        }
+
+        stack.addPass(new BranchResolver());
+
+        // which nodes run within a call depends on the branches
+        stack.addPass(new LetSlotAllocator());
+        return stack;
+    }
+
+    /**
+     * Get the pass over the whole program, run once every imported file has been parsed and analysed on its own
+     */
+    static StaticPass getWholeProgramPass(int optimisationLevel) {
+        StaticPassStack stack = new StaticPassStack();
+
+        if (optimisationLevel >= ELIMINATE_DEAD_CODE) {
+            stack.addPass(new TreeShaker());
+        }
         return stack;
     }
 
@@ -0,0 +1,402 @@
+package towel.pass;
+
+import towel.ast.*;
+import towel.interpreter.ImportNodeResolver;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Optimisation pass over the whole program, once every import has been parsed and placed before its import, which
+ * removes whatever is never used
+ * </p>
+ * <ul>
+ * <li>functions whose names are never used, other than by themselves, are removed from the top level of each
+ * file</li>
+ * <li>lets whose names are never used are removed along with the literal bound to them</li>
+ * <li>imports only bind the names which are used</li>
+ * <li>imported files which nothing is used from are left out entirely, provided running them does nothing but
+ * define things</li>
+ * </ul>
+ * <p>
+ * A sequence may be run within a function from another file, where its names are looked up in that file's namespace,
+ * so names are counted across every file rather than just the file they're in. Anything defined more than once, or
+ * which may clash with an imported name, is left alone so the error for it is still raised.
+ * </p>
+ */
+class TreeShaker implements NodeVisitor<Void> {
+
+    /**
+     * The number of identifiers using each name across the whole program, and the names used within each namespace,
+     * e.g. 'print' for 'io.print'
+     */
+    private final Map<String, Integer> uses = new HashMap<>();
+    private final Map<String, Set<String>> namespacedUses = new HashMap<>();
+
+    /**
+     * Every program, with the lists of nodes it has been placed in
+     */
+    private final Map<Program, List<List<Node>>> programs = new IdentityHashMap<>();
+
+    private boolean isInProgram = false;
+
+    @Override
+    public Void visit(Program programNode) {
+        if (isInProgram) {
+            return null;
+        }
+
+        isInProgram = true;
+        programs.put(programNode, new ArrayList<>());
+        collectPrograms(programNode);
+
+        for (Program program : programs.keySet()) {
+            countUses(program.getNodes(), 1);
+            countAliasedTargets(program);
+        }
+
+        // removing a function can leave those only it used unused too
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (Program program : programs.keySet()) {
+                changed |= eliminate(program);
+            }
+        }
+
+        for (Program program : programs.keySet()) {
+            resolveImports(program);
+        }
+
+        for (Map.Entry<Program, List<List<Node>>> entry : programs.entrySet()) {
+            if (entry.getKey() != programNode) {
+                leaveOutIfUnused(entry.getKey(), entry.getValue());
+            }
+        }
+
+        uses.clear();
+        namespacedUses.clear();
+        programs.clear();
+        isInProgram = false;
+        return null;
+    }
+
+    private void collectPrograms(Program programNode) {
+        for (Node node : programNode.getNodes()) {
+            if (node instanceof Program) {
+                Program imported = (Program) node;
+                boolean isNew = !programs.containsKey(imported);
+
+                programs.computeIfAbsent(imported, key -> new ArrayList<>()).add(programNode.getNodes());
+
+                if (isNew) {
+                    collectPrograms(imported);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add to the uses of each name within the given nodes, nested programs are counted on their own
+     *
+     * @param change 1 to count the uses, -1 once the nodes have been removed
+     */
+    private void countUses(Iterable<Node> nodes, int change) {
+        for (Node node : nodes) {
+            if (node instanceof Identifier) {
+                Identifier identifierNode = (Identifier) node;
+                uses.merge(identifierNode.getName(), change, Integer::sum);
+
+                if (identifierNode.isNamespaced() && change > 0) {
+                    namespacedUses.computeIfAbsent(identifierNode.getNamespace(), key -> new HashSet<>())
+                            .add(identifierNode.getName());
+                }
+            } else if (node instanceof Function) {
+                countUses(Arrays.asList(((Function) node).getBody()), change);
+            } else if (node instanceof Sequence) {
+                countUses(Arrays.asList(((Sequence) node).getNodes()), change);
+            }
+        }
+    }
+
+    /**
+     * Count the names an import binds under an alias as used, as they're only ever called by the alias
+     */
+    private void countAliasedTargets(Program programNode) {
+        for (Import importNode : programNode.getImports()) {
+            ImportNodeResolver adapter = ImportNodeResolver.wrap(importNode);
+
+            if (adapter.isAliased() && !adapter.isStarImport()) {
+                for (String target : adapter.getTarget()) {
+                    uses.merge(target, 1, Integer::sum);
+                }
+            }
+        }
+    }
+
+    private boolean isUsed(String name) {
+        return uses.getOrDefault(name, 0) > 0;
+    }
+
+    /**
+     * Remove the unused functions and lets from the top level of a program
+     *
+     * @return whether anything was removed
+     */
+    private boolean eliminate(Program programNode) {
+        List<Node> nodes = programNode.getNodes();
+        Map<String, Integer> bindings = countBindings(nodes);
+        Set<String> importable = new HashSet<>();
+
+        // any name could be imported, and a function can't be defined with the same name as one
+        boolean hasStarImport = collectImportable(programNode, importable);
+        boolean changed = false;
+
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            Node node = nodes.get(i);
+
+            if (node instanceof Function) {
+                Function functionNode = (Function) node;
+                String name = functionNode.getLexeme();
+
+                if (hasStarImport || importable.contains(name) || bindings.get(name) != 1) {
+                    continue;
+                }
+
+                if (uses.getOrDefault(name, 0) == countSelfUses(functionNode)) {
+                    nodes.remove(i);
+                    countUses(Collections.singletonList(functionNode), -1);
+                    changed = true;
+                }
+            } else if (node instanceof Let && i > 0 && isPushOnly(nodes.get(i - 1))) {
+                Let letNode = (Let) node;
+
+                if (!letNode.isPublic() && bindings.get(letNode.getName()) == 1 && !isUsed(letNode.getName())) {
+                    Node bound = nodes.remove(i - 1);
+                    nodes.remove(i - 1);
+                    countUses(Collections.singletonList(bound), -1);
+                    changed = true;
+                    i--;
+                }
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Count the number of times each name is bound at the top level of a program
+     */
+    private static Map<String, Integer> countBindings(List<Node> nodes) {
+        Map<String, Integer> bindings = new HashMap<>();
+
+        for (Node node : nodes) {
+            if (node instanceof Function) {
+                bindings.merge(((Function) node).getLexeme(), 1, Integer::sum);
+            } else if (node instanceof Let) {
+                bindings.merge(((Let) node).getName(), 1, Integer::sum);
+            }
+        }
+        return bindings;
+    }
+
+    /**
+     * Collect the names a program's imports may bind, including the names of whole namespaces
+     *
+     * @return whether there are any star imports, which could bind any name
+     */
+    private static boolean collectImportable(Program programNode, Set<String> importable) {
+        boolean hasStarImport = false;
+
+        for (Import importNode : programNode.getImports()) {
+            ImportNodeResolver adapter = ImportNodeResolver.wrap(importNode);
+            hasStarImport |= adapter.isStarImport();
+
+            if (adapter.isImportingWholeNamespace()) {
+                importable.add(adapter.getNormalized());
+            } else if (adapter.isAliased()) {
+                importable.add(adapter.getAlias());
+            } else {
+                importable.addAll(Arrays.asList(adapter.getTarget()));
+            }
+        }
+        return hasStarImport;
+    }
+
+    private static int countSelfUses(Function functionNode) {
+        return countUsesOf(functionNode.getLexeme(), Arrays.asList(functionNode.getBody()));
+    }
+
+    private static int countUsesOf(String name, Iterable<Node> nodes) {
+        int count = 0;
+
+        for (Node node : nodes) {
+            if (node instanceof Identifier && ((Identifier) node).getName().equals(name)) {
+                count++;
+            } else if (node instanceof Sequence) {
+                count += countUsesOf(name, Arrays.asList(((Sequence) node).getNodes()));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Does the node do nothing but push a value, so it can be removed along with the let it's bound to
+     * <p>
+     * Arrays aren't, creating one can fail
+     * </p>
+     */
+    private static boolean isPushOnly(Node node) {
+        return node instanceof Literal || node instanceof Sequence;
+    }
+
+    /**
+     * Restrict each of a program's imports to the names which are used
+     */
+    private void resolveImports(Program programNode) {
+        Set<String> bound = countBindings(programNode.getNodes()).keySet();
+
+        for (Import importNode : programNode.getImports()) {
+            ImportNodeResolver adapter = ImportNodeResolver.wrap(importNode);
+            Set<String> used = new HashSet<>();
+
+            if (adapter.isImportingWholeNamespace()) {
+                if (bound.contains(adapter.getNormalized())) {
+                    // leave the namespace to clash with the definition
+                    continue;
+                }
+                used.addAll(namespacedUses.getOrDefault(adapter.getNormalized(), Collections.emptySet()));
+            } else if (adapter.isStarImport()) {
+                if (adapter.isAliased()) {
+                    continue;
+                }
+
+                for (Map.Entry<String, Integer> entry : uses.entrySet()) {
+                    if (entry.getValue() > 0) {
+                        used.add(entry.getKey());
+                    }
+                }
+                used.addAll(bound);
+            } else {
+                for (String target : adapter.getTarget()) {
+                    String name = adapter.isAliased() ? adapter.getAlias() : target;
+
+                    if (isUsed(name) || bound.contains(name)) {
+                        used.add(name);
+                    }
+                }
+            }
+
+            importNode.setUsedNames(used);
+        }
+    }
+
+    /**
+     * Remove an imported program from everywhere it was placed, if nothing it exports is used and running it would
+     * only define things
+     */
+    private void leaveOutIfUnused(Program programNode, List<List<Node>> placements) {
+        List<Import> importedBy = new ArrayList<>();
+
+        for (List<Node> nodes : placements) {
+            int index = nodes.indexOf(programNode);
+
+            // each imported program is placed right before its import
+            if (index < 0 || index + 1 >= nodes.size() || !(nodes.get(index + 1) instanceof Import)) {
+                return;
+            }
+
+            Import importNode = (Import) nodes.get(index + 1);
+
+            if (importNode.getUsedNames() == null || !importNode.getUsedNames().isEmpty()) {
+                return;
+            }
+            importedBy.add(importNode);
+        }
+
+        if (!onlyDefines(programNode)) {
+            return;
+        }
+
+        for (List<Node> nodes : placements) {
+            nodes.removeIf(node -> node == programNode);
+        }
+        importedBy.forEach(Import::markUnused);
+    }
+
+    /**
+     * Does running the program do nothing but define functions and lets, and import things
+     */
+    private static boolean onlyDefines(Program programNode) {
+        List<Node> nodes = programNode.getNodes();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+
+            if (node instanceof Program) {
+                if (!onlyDefines((Program) node)) {
+                    return false;
+                }
+            } else if (isPushOnly(node)) {
+                if (i + 1 >= nodes.size() || !(nodes.get(i + 1) instanceof Let)) {
+                    return false;
+                }
+                i++;
+            } else if (!(node instanceof Function) && !(node instanceof Import)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Void visit(Literal literalNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(BinaryOperator binaryOperatorNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Condition conditionNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Comparison comparisonNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Sequence sequenceNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Function functionNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Identifier identifierNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Import importNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Let letNode) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Array arrayNode) {
+        return null;
+    }
+}
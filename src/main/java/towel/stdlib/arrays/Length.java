@@ -14,15 +14,17 @@ import towel.interpreter.TowelFunction;
         name = "len"
 )
 public class Length implements TowelFunction {
+
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(TowelArray.class);
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(TowelArray.class);
+        return PRE_CONDITION;
     }
 
     @Override
     public void call(Interpreter interpreter) {
         TowelArray array = interpreter.getStack().popArray();
         interpreter.getStack().push(array);
-        interpreter.getStack().push((double) array.size());
+        interpreter.getStack().pushDouble(array.size());
     }
 }
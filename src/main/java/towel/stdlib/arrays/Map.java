@@ -16,9 +16,11 @@ import towel.interpreter.TowelFunction;
 )
 public class Map implements TowelFunction {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(Sequence.class, TowelArray.class);
+
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(Sequence.class, TowelArray.class);
+        return PRE_CONDITION;
     }
 
     @Override
@@ -33,7 +35,7 @@ public class Map implements TowelFunction {
         for (int i = 0; i < array.size(); i++) {
             Object val = array.get(i);
             interpreter.getStack().push(val);
-            interpreter.interpret(sequence.getNodes());
+            interpreter.execute(sequence);
             array.set(i, interpreter.getStack().pop());
         }
 
@@ -11,9 +11,11 @@ import towel.interpreter.*;
         name = "pop"
 )
 public class Pop implements TowelFunction {
+
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(TowelArray.class);
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(TowelArray.class);
+        return PRE_CONDITION;
     }
 
     @Override
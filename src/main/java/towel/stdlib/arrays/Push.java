@@ -11,9 +11,11 @@ import towel.interpreter.*;
         name = "push"
 )
 public class Push implements TowelFunction {
+
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(Object.class, TowelArray.class);
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(Object.class, TowelArray.class);
+        return PRE_CONDITION;
     }
 
     @Override
@@ -15,11 +15,13 @@ import java.io.PrintStream;
 )
 public class PrintArray implements TowelFunction, RequiresPrintStream {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(TowelArray.class);
+
     private PrintStream ps;
 
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(TowelArray.class);
+        return PRE_CONDITION;
     }
 
     @Override
@@ -15,23 +15,26 @@ import java.util.Scanner;
 )
 public class InputNumber implements TowelFunction, RequiresScanner, RequiresPrintStream {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(String.class);
+    private static final StackCondition.PostCondition POST_CONDITION = StackCondition.postConditionFor();
+
     private Scanner scanner;
     private PrintStream outputStream;
 
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(String.class);
+        return PRE_CONDITION;
     }
 
     @Override
     public StackCondition.PostCondition getPostCondition() {
-        return StackCondition.postConditionFor();
+        return POST_CONDITION;
     }
 
     @Override
     public void call(Interpreter interpreter) {
         outputStream.print(interpreter.getStack().popString());
-        interpreter.getStack().push(scanner.nextDouble());
+        interpreter.getStack().pushDouble(scanner.nextDouble());
     }
 
     @Override
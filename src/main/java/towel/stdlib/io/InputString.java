@@ -15,17 +15,20 @@ import java.util.Scanner;
 )
 public class InputString implements TowelFunction, RequiresPrintStream, RequiresScanner {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(String.class);
+    private static final StackCondition.PostCondition POST_CONDITION = StackCondition.postConditionFor();
+
     private Scanner scanner;
     private PrintStream outputStream;
 
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(String.class);
+        return PRE_CONDITION;
     }
 
     @Override
     public StackCondition.PostCondition getPostCondition() {
-        return StackCondition.postConditionFor();
+        return POST_CONDITION;
     }
 
     @Override
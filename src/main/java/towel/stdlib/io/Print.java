@@ -17,6 +17,9 @@ import java.io.PrintStream;
 )
 public class Print implements TowelFunction, RequiresPrintStream {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(Object.class);
+    private static final StackCondition.PostCondition POST_CONDITION = StackCondition.postConditionFor();
+
     private PrintStream out;
 
     @Override
@@ -31,11 +34,11 @@ public class Print implements TowelFunction, RequiresPrintStream {
 
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(Object.class);
+        return PRE_CONDITION;
     }
 
     @Override
     public StackCondition.PostCondition getPostCondition() {
-        return StackCondition.postConditionFor();
+        return POST_CONDITION;
     }
 }
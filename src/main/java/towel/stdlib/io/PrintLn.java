@@ -17,6 +17,8 @@ import java.io.PrintStream;
 )
 public class PrintLn implements TowelFunction, RequiresPrintStream {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(Object.class);
+
     private PrintStream out;
 
     @Override
@@ -32,6 +34,6 @@ public class PrintLn implements TowelFunction, RequiresPrintStream {
 
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(Object.class);
+        return PRE_CONDITION;
     }
 }
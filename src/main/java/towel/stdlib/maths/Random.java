@@ -14,22 +14,25 @@ import towel.interpreter.TowelFunction;
 )
 public class Random implements TowelFunction {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(Double.class, Double.class);
+    private static final StackCondition.PostCondition POST_CONDITION = StackCondition.postConditionFor();
+
     private java.util.Random random = new java.util.Random();
 
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(Double.class, Double.class);
+        return PRE_CONDITION;
     }
 
     @Override
     public StackCondition.PostCondition getPostCondition() {
-        return StackCondition.postConditionFor();
+        return POST_CONDITION;
     }
 
     @Override
     public void call(Interpreter interpreter) {
         double max = interpreter.getStack().popDouble();
         double min = interpreter.getStack().popDouble();
-        interpreter.getStack().push(random.nextDouble() * (max - min) + min);
+        interpreter.getStack().pushDouble(random.nextDouble() * (max - min) + min);
     }
 }
@@ -12,14 +12,17 @@ import towel.interpreter.*;
         namespace = "sequences"
 )
 public class Curry implements TowelFunction {
+
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(Sequence.class, Object.class);
+    private static final StackCondition.PostCondition POST_CONDITION = StackCondition.postConditionFor();
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(Sequence.class, Object.class);
+        return PRE_CONDITION;
     }
 
     @Override
     public StackCondition.PostCondition getPostCondition() {
-        return StackCondition.postConditionFor();
+        return POST_CONDITION;
     }
 
     @Override
@@ -14,15 +14,17 @@ import towel.interpreter.TowelFunction;
         namespace = "sequences"
 )
 public class Exec implements TowelFunction {
+
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(Sequence.class);
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(Sequence.class);
+        return PRE_CONDITION;
     }
 
     @Override
     public void call(Interpreter interpreter) {
         Sequence toExec = interpreter.getStack().popSequence();
-        interpreter.interpret(toExec.getNodes());
+        interpreter.execute(toExec);
     }
 }
 
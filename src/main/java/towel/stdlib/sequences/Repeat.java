@@ -15,18 +15,20 @@ import towel.interpreter.TowelFunction;
 )
 public class Repeat implements TowelFunction {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(Sequence.class, Double.class);
+
     @Override
     public void call(Interpreter interpreter) {
         Sequence sequence = interpreter.getStack().popSequence();
         double times = interpreter.getStack().popDouble();
 
         while (times-- > 0) {
-            interpreter.interpret(sequence.getNodes());
+            interpreter.execute(sequence);
         }
     }
 
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(Sequence.class, Double.class);
+        return PRE_CONDITION;
     }
 }
@@ -14,6 +14,8 @@ import towel.interpreter.TowelFunction;
 )
 public class Duplicate implements TowelFunction {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(Object.class);
+
     @Override
     public void call(Interpreter interpreter) {
         Object top = interpreter.getStack().pop();
@@ -23,6 +25,6 @@ public class Duplicate implements TowelFunction {
 
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(Object.class);
+        return PRE_CONDITION;
     }
 }
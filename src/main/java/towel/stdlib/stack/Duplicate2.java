@@ -14,6 +14,8 @@ import towel.interpreter.TowelFunction;
 )
 public class Duplicate2 implements TowelFunction {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(Object.class, Object.class);
+
     @Override
     public void call(Interpreter interpreter) {
         Object top = interpreter.getStack().pop();
@@ -26,6 +28,6 @@ public class Duplicate2 implements TowelFunction {
 
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(Object.class, Object.class);
+        return PRE_CONDITION;
     }
 }
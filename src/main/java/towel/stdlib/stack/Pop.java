@@ -14,6 +14,8 @@ import towel.interpreter.TowelFunction;
 )
 public class Pop implements TowelFunction {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(Object.class);
+
     @Override
     public void call(Interpreter interpreter) {
         interpreter.getStack().pop();
@@ -21,6 +23,6 @@ public class Pop implements TowelFunction {
 
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(Object.class);
+        return PRE_CONDITION;
     }
 }
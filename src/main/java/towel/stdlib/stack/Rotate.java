@@ -18,9 +18,11 @@ import towel.interpreter.TowelFunction;
         namespace = "stack"
 )
 public class Rotate implements TowelFunction {
+
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(Object.class, Object.class, Object.class);
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(Object.class, Object.class, Object.class);
+        return PRE_CONDITION;
     }
 
     @Override
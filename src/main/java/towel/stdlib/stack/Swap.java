@@ -19,9 +19,11 @@ import towel.interpreter.TowelFunction;
 )
 public class Swap implements TowelFunction {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(Object.class, Object.class);
+
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(Object.class, Object.class);
+        return PRE_CONDITION;
     }
 
     @Override
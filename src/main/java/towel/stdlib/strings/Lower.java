@@ -14,6 +14,8 @@ import towel.interpreter.TowelFunction;
 )
 public class Lower implements TowelFunction {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(String.class);
+
     @Override
     public void call(Interpreter interpreter) {
         String target = interpreter.getStack().popString();
@@ -22,6 +24,6 @@ public class Lower implements TowelFunction {
 
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(String.class);
+        return PRE_CONDITION;
     }
 }
@@ -22,9 +22,11 @@ import towel.interpreter.TowelFunction;
 )
 public class StringFormat implements TowelFunction {
 
+    private static final StackCondition.PreCondition PRE_CONDITION = StackCondition.preConditionFor(String.class);
+
     @Override
     public StackCondition.PreCondition getPreCondition() {
-        return StackCondition.preConditionFor(String.class);
+        return PRE_CONDITION;
     }
 
     @Override
@@ -24,14 +24,18 @@ public class Assertions {
     public static Scanner scanner = new Scanner(System.in);
 
     public static void assertExecutesWithResult(Object expected, String code) {
-        assertExecutesWithResult(expected, code, false);
+        assertExecutesWithResult(Interpreter.Engine.AST, expected, code, false);
+    }
+
+    public static void assertExecutesWithResult(Interpreter.Engine engine, Object expected, String code) {
+        assertExecutesWithResult(engine, expected, code, false);
     }
 
     public static void assertExecutesWithResultIgnoreNotices(Object expected, String code) {
-        assertExecutesWithResult(expected, code, true);
+        assertExecutesWithResult(Interpreter.Engine.AST, expected, code, true);
     }
 
-    private static void assertExecutesWithResult(Object expected, String code, boolean ignoreNotices) {
+    private static void assertExecutesWithResult(Interpreter.Engine engine, Object expected, String code, boolean ignoreNotices) {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         PrintStream printStream = new PrintStream(outputStream);
 
@@ -49,7 +53,7 @@ public class Assertions {
 
         StaticPass.getDefaultPass(reporter).performAnalysis(expr);
 
-        Object result = Interpreter.getFor(expr, loader, reporter).interpret();
+        Object result = Interpreter.getFor(expr, loader, reporter, engine).interpret();
         assertEquals(expected, result);
     }
 
@@ -62,14 +66,18 @@ public class Assertions {
     }
 
     public static void assertExecutesWithOutput(Object expected, String code) {
-        assertExecutesWithOutput(expected, code, false);
+        assertExecutesWithOutput(Interpreter.Engine.AST, expected, code, false);
     }
 
     public static void assertExecutesWithOutputIgnoreNotices(Object expected, String code) {
-        assertExecutesWithOutput(expected, code, true);
+        assertExecutesWithOutput(Interpreter.Engine.AST, expected, code, true);
+    }
+
+    public static void assertExecutesWithOutputIgnoreNotices(Interpreter.Engine engine, Object expected, String code) {
+        assertExecutesWithOutput(engine, expected, code, true);
     }
 
-    private static void assertExecutesWithOutput(Object expected, String code, boolean ignoreNotices) {
+    private static void assertExecutesWithOutput(Interpreter.Engine engine, Object expected, String code, boolean ignoreNotices) {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         PrintStream printStream = new PrintStream(outputStream);
         ErrorReporter reporter;
@@ -86,11 +94,15 @@ public class Assertions {
 
         StaticPass.getDefaultPass(reporter).performAnalysis(expr);
 
-        Object result = Interpreter.getFor(expr, loader, reporter).interpret();
+        Object result = Interpreter.getFor(expr, loader, reporter, engine).interpret();
         assertEquals(expected, outputStream.toString());
     }
 
     public static void assertExecutesWithError(String expected, String code) {
+        assertExecutesWithError(Interpreter.Engine.AST, expected, code);
+    }
+
+    public static void assertExecutesWithError(Interpreter.Engine engine, String expected, String code) {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         PrintStream printStream = new PrintStream(outputStream);
         LoggingErrorReporter reporter = new LoggingErrorReporter();
@@ -102,7 +114,10 @@ public class Assertions {
 
         StaticPass.getDefaultPass(reporter).performAnalysis(expr);
 
-        Object result = Interpreter.getFor(expr, loader, reporter).interpret();
+        // errors found by analysis stop the program being run, as they do for source files
+        if (!reporter.hasErrors()) {
+            Interpreter.getFor(expr, loader, reporter, engine).interpret();
+        }
 
         assertEquals(1, reporter.getErrors().get(DEFAULT_LOG_NAME).size());
         assertEquals(expected, reporter.getErrors().get(DEFAULT_LOG_NAME).get(0).message);
@@ -139,7 +154,9 @@ public class Assertions {
 
         StaticPass.getDefaultPass(reporter).performAnalysis(expr);
 
-        Object result = Interpreter.getFor(expr, loader, reporter).interpret();
+        if (!reporter.hasErrors()) {
+            Interpreter.getFor(expr, loader, reporter).interpret();
+        }
 
         assertEquals(1, reporter.getErrors().get(DEFAULT_LOG_NAME).size());
     }
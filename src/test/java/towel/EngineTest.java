@@ -0,0 +1,131 @@
+package towel;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import towel.interpreter.Interpreter;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static towel.Assertions.*;
+
+/**
+ * Every engine should give identical results for the same program
+ */
+public class EngineTest {
+
+    private static Stream<Arguments> forEachEngine(Arguments... cases) {
+        return Arrays.stream(Interpreter.Engine.values())
+                .flatMap(engine -> Arrays.stream(cases).map(args -> {
+                    Object[] withEngine = new Object[args.get().length + 1];
+                    withEngine[0] = engine;
+                    System.arraycopy(args.get(), 0, withEngine, 1, args.get().length);
+                    return Arguments.of(withEngine);
+                }));
+    }
+
+    @ParameterizedTest
+    @MethodSource("resultProvider")
+    public void testResult(Interpreter.Engine engine, Object expect, String code) {
+        assertExecutesWithResult(engine, expect, code);
+    }
+
+    public static Stream<Arguments> resultProvider() {
+        return forEachEngine(
+                Arguments.of(56d, "2 3 + 11 * 1 +"),
+                Arguments.of(-1d, "2 1 12 3 / - +"),
+                Arguments.of(1d, "15 2 %"),
+                Arguments.of(true, "5 1 >"),
+                Arguments.of(true, "7 7 <="),
+                Arguments.of(false, "7 7 !="),
+                Arguments.of(true, "\"a\" \"a\" =="),
+                Arguments.of(true, "false true ||"),
+                Arguments.of(false, "true false &&"),
+                Arguments.of("yes", "true { \"yes\" } { \"no\" } ?"),
+                Arguments.of("no", "false { \"yes\" } { \"no\" } ?"),
+                Arguments.of(true, "true false { \"yea\" } ??"),
+                Arguments.of(2d, "true { false { 1 } { 2 } ? } { 3 } ?"),
+                Arguments.of(5d, "def test { 5 } test"),
+                Arguments.of(55d, "import * from <stack> " +
+                        "def fib (num -> num) { dup 1 > { dup 1 - fib swap 2 - fib + } { } ? } " +
+                        "10 fib"),
+                Arguments.of(32d, "import * from <sequences> 1 5 { 2 * } repeat"),
+                Arguments.of(30d, "import * from <sequences> " +
+                        "def create_multiplier (num -> seq) { { * } curry } " +
+                        "6 create_multiplier let times6 5 times6 exec"),
+                Arguments.of("correct", "import * from <sequences> " +
+                        "\"wrong\" let somevar def sometest { \"correct\" let somevar { somevar } } sometest exec"),
+                Arguments.of(9d, "import <arrays> import * from <stack> [1, 2, 3] { dup * } arrays.map arrays.pop"),
+                Arguments.of(3d, "1 let n n 1 + let n n 1 + let n n"),
+                Arguments.of(6d, "def later { 6 } def first { later } first"),
+                Arguments.of(0d, "def sum (num -> num) { let n n 0 > { n 1 - sum n + } { 0 } ? } 4 sum"),
+                Arguments.of(10d, "def sum (num -> num) { let n n 0 > { n n 1 - sum + } { 0 } ? } 4 sum"),
+                Arguments.of(0d, "def f (num -> num) { let x x 0 > { x 1 - f x + } { 0 } ? } 10 f"),
+                Arguments.of(5000050000d, "def loop (num, num -> num) { let i i 0 > { i + i 1 - loop } { } ? } 0 100000 loop"),
+                Arguments.of("cba", "import <strings> \"ABC\" strings.lower strings.reverse"),
+                Arguments.of(4d, "5 1 -"),
+                Arguments.of(true, "import * from <stack> 5 dup 1 > swap pop"),
+                Arguments.of(13d, "import * from <stack> 5 dup 3 + +"),
+                Arguments.of(8d, "def dup { 7 } 5 dup 1 +"),
+                Arguments.of(0d, "import * from <stack> " +
+                        "def count (num -> num) { dup 0 > { 1 - count } { } ? } 100000 count"),
+                Arguments.of(0d, "import * from <stack> " +
+                        "def count (num -> num) { dup 0 > { 1 - count } ?? } 100000 count"),
+                Arguments.of(true, "import * from <stack> " +
+                        "def is_even { dup 0 == { pop true } { 1 - is_odd } ? } " +
+                        "def is_odd { dup 0 == { pop false } { 1 - is_even } ? } 100001 is_odd")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("errorProvider")
+    public void testError(Interpreter.Engine engine, String expect, String code) {
+        assertExecutesWithError(engine, expect, code);
+    }
+
+    public static Stream<Arguments> errorProvider() {
+        return forEachEngine(
+                Arguments.of("Division by zero.", "5 0 /"),
+                Arguments.of("Division by zero.", "17.5 0 %"),
+                Arguments.of("Unknown identifier 'print'.", "5 print"),
+                Arguments.of("Two arguments are required for comparisons.", "5 <"),
+                Arguments.of("This comparison cannot be done between 'num' and 'str'.", "5 \"5\" =="),
+                Arguments.of("Strings can only be checked with == and !=.", "\"a\" \"b\" <"),
+                Arguments.of("Stack does not meet type pre-conditions for +.\n" +
+                        "Length must be at least 2, current length is 2.\n" +
+                        "Item 0 from the top of the stack must be of type 'num', 'str' was found.\n" +
+                        "Item 1 from the top of the stack must be of type 'num', 'num' was found.", "5 \"5\" +"),
+                Arguments.of("Stack does not meet type pre-conditions for repeat.\n" +
+                        "Length must be at least 2, current length is 2.\n" +
+                        "Item 0 from the top of the stack must be of type 'seq', 'num' was found.\n" +
+                        "Item 1 from the top of the stack must be of type 'num', 'num' was found.",
+                        "import * from <sequences> 5 5 repeat"),
+                Arguments.of("This comparison cannot be done between 'str' and 'num'.",
+                        "import * from <stack> \"a\" dup 1 <"),
+                Arguments.of("Stack does not meet type pre-conditions for -.\n" +
+                        "Length must be at least 2, current length is 2.\n" +
+                        "Item 0 from the top of the stack must be of type 'num', 'num' was found.\n" +
+                        "Item 1 from the top of the stack must be of type 'num', 'bool' was found.", "true 1 -"),
+                Arguments.of("Stack does not meet type pre-conditions for ?.\n" +
+                        "Length must be at least 3, current length is 3.\n" +
+                        "Item 0 from the top of the stack must be of type 'seq', 'seq' was found.\n" +
+                        "Item 1 from the top of the stack must be of type 'seq', 'seq' was found.\n" +
+                        "Item 2 from the top of the stack must be of type 'bool', 'num' was found.",
+                        "def pick { { 1 } { 2 } ? } 5 pick"),
+                Arguments.of("Stack does not meet type pre-conditions for ??.\n" +
+                        "Length must be at least 2, current length is 2.\n" +
+                        "Item 0 from the top of the stack must be of type 'seq', 'seq' was found.\n" +
+                        "Item 1 from the top of the stack must be of type 'bool', 'str' was found.",
+                        "def maybe { { 1 } ?? } \"a\" maybe"),
+                Arguments.of("Maximum call depth exceeded.",
+                        "import * from <stack> " +
+                        "def sum { dup 0 > { dup 1 - sum + } ?? } 1000000 sum"),
+                Arguments.of("Stack does not meet type post-conditions for count.\n" +
+                        "Length must be at least 1, current length is 1.\n" +
+                        "Item 0 from the top of the stack must be of type 'str', 'num' was found.",
+                        "import * from <stack> " +
+                        "def count (num -> str) { dup 0 > { 1 - count } { } ? } 100000 count")
+        );
+    }
+}
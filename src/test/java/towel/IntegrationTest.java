@@ -5,14 +5,18 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestFactory;
 import org.junit.jupiter.api.function.Executable;
 import org.mockito.Mockito;
+import towel.interpreter.Interpreter;
 
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -93,6 +97,7 @@ public class IntegrationTest {
     public Collection<DynamicTest> testInExpectDirectory() throws IOException {
         List<File> files = gatherFiles(searchDir);
         Collection<DynamicTest> tests = new ArrayList<>();
+        Path cacheDirectory = Files.createTempDirectory("towel-cache");
 
         for (File assertionFile : files) {
 
@@ -105,11 +110,40 @@ public class IntegrationTest {
                 String codeName = assertionFile.getName().replace(".expect", ".twl");
                 String codePath = Paths.get(sourceDirectory, codeName).toAbsolutePath().toString();
 
+                // each program should behave identically regardless of which engine runs it
+                for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+                    String engineName = engine.name().toLowerCase();
+
+                    exec = runTest(new String[]{
+                            codePath,
+                            "--suppress-notices",
+                            "--engine=" + engineName
+                    }, assertionFile.getAbsolutePath());
+
+                    tests.add(DynamicTest.dynamicTest(assertionFile.getName() + " [" + engineName + "]", exec));
+                }
+
+                // and optimising it shouldn't change its behaviour
                 exec = runTest(new String[]{
                         codePath,
-                        "--suppress-notices"
+                        "--suppress-notices",
+                        "--optimise=3"
                 }, assertionFile.getAbsolutePath());
 
+                tests.add(DynamicTest.dynamicTest(assertionFile.getName() + " [optimised]", exec));
+
+                // nor loading it from the cache, once the first run has cached it
+                for (String run : new String[]{"caching", "cached"}) {
+                    exec = runTest(new String[]{
+                            codePath,
+                            "--suppress-notices",
+                            "--cache-dir=" + cacheDirectory
+                    }, assertionFile.getAbsolutePath());
+
+                    tests.add(DynamicTest.dynamicTest(assertionFile.getName() + " [" + run + "]", exec));
+                }
+                continue;
+
             } else if (assertionFile.getName().endsWith(".ast")) {
 
                 String codeName = assertionFile.getName().replace(".ast", ".twl");
@@ -130,6 +164,11 @@ public class IntegrationTest {
             tests.add(test);
         }
 
+        // every test has already run, only the assertions are left
+        try (Stream<Path> cached = Files.walk(cacheDirectory)) {
+            cached.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+
         return tests;
     }
 
@@ -7,11 +7,18 @@ import org.junit.jupiter.params.provider.MethodSource;
 import towel.ast.Token;
 import towel.parser.Lexer;
 
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static towel.Assertions.assertStartsWith;
 import static towel.LoggingErrorReporter.DEFAULT_LOG_NAME;
 
@@ -37,7 +44,8 @@ public class LexerTest {
         return Stream.of(
                 Arguments.of(" [  ] array ", Arrays.asList(Token.TokenType.LEFT_SQ_BRACKET, Token.TokenType.RIGHT_SQ_BRACKET, Token.TokenType.ARRAY, Token.TokenType.EOF)),
                 Arguments.of(" . ", Arrays.asList(Token.TokenType.DOT, Token.TokenType.EOF)),
-                Arguments.of(" public def ", Arrays.asList(Token.TokenType.PUBLIC, Token.TokenType.DEF, Token.TokenType.EOF))
+                Arguments.of(" public def ", Arrays.asList(Token.TokenType.PUBLIC, Token.TokenType.DEF, Token.TokenType.EOF)),
+                Arguments.of(" my-name_2 Z9 -5 ", Arrays.asList(Token.TokenType.IDENTIFIER, Token.TokenType.IDENTIFIER, Token.TokenType.NUMBER_LITERAL, Token.TokenType.EOF))
         );
     }
 
@@ -55,7 +63,9 @@ public class LexerTest {
         return Stream.of(
                 Arguments.of("Unexpected character '&'.", " & "),
                 Arguments.of("Unexpected character '|'.", " | "),
-                Arguments.of("Unexpected character '!'.", " ! ")
+                Arguments.of("Unexpected character '!'.", " ! "),
+                Arguments.of("Unexpected character '\u00e9'.", " \u00e9 "),
+                Arguments.of("Unexpected character '_'.", " _a ")
         );
     }
 
@@ -559,4 +569,68 @@ public class LexerTest {
         }
     }
 
+    @Test
+    public void testLexesTokensOnDemand() {
+        Lexer lexer = createLexer("1 // comment\n +");
+
+        assertEquals(Token.TokenType.NUMBER_LITERAL, lexer.next().getType());
+        assertEquals(Token.TokenType.PLUS, lexer.next().getType());
+        assertEquals(Token.TokenType.EOF, lexer.next().getType());
+        assertEquals(Token.TokenType.EOF, lexer.next().getType());
+    }
+
+    @Test
+    public void testLexesTokensLongerThanTheBuffer() {
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            literal.append((char) ('a' + i % 26));
+        }
+
+        Lexer lexer = Lexer.getFor(new StringReader("/* " + literal + " */ \"" + literal + "\" 5"),
+                new ExceptionThrowingErrorReporter());
+        List<Token> tokens = lexer.tokenize();
+
+        assertEquals(3, tokens.size());
+        assertEquals(literal.toString(), tokens.get(0).getLiteral());
+        assertEquals(40010, tokens.get(1).getPosition());
+    }
+
+    @Test
+    public void testLexesFromChannel() {
+        ReadableByteChannel channel = Channels.newChannel(
+                new ByteArrayInputStream("\"h\u00e9llo\" 5".getBytes(StandardCharsets.UTF_8)));
+        List<Token> tokens = Lexer.getFor(channel, StandardCharsets.UTF_8, new ExceptionThrowingErrorReporter())
+                .tokenize();
+
+        assertEquals("h\u00e9llo", tokens.get(0).getLiteral());
+        assertEquals(5d, tokens.get(1).getLiteral());
+    }
+
+    @Test
+    public void testKeepsManyTokens() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            source.append("name 1.50 \"str\" { }\n");
+        }
+
+        List<Token> tokens = createLexer(source.toString()).tokenize();
+
+        assertEquals(5001, tokens.size());
+        assertToken(Token.create(Token.TokenType.NUMBER_LITERAL, "1.50", 1.5d, 1000, 6, 19985), tokens.get(4996));
+        assertToken(Token.create(Token.TokenType.STRING_LITERAL, "\"str\"", "str", 1000, 11, 19990), tokens.get(4997));
+        assertToken(Token.create(Token.TokenType.RIGHT_BRACE, "}", "}", 1000, 19, 19998), tokens.get(4999));
+        assertSame(tokens.get(0).getLexeme(), tokens.get(4995).getLexeme());
+    }
+
+    @Test
+    public void testLexesFromUtf8Buffer() {
+        byte[] source = "\"h\u00e9llo \ud83d\ude00\" 5 \"\u00ff\"".getBytes(StandardCharsets.UTF_8);
+        source[source.length - 2] = (byte) 0xFF;
+
+        List<Token> tokens = Lexer.getFor(ByteBuffer.wrap(source), new ExceptionThrowingErrorReporter()).tokenize();
+
+        assertEquals("h\u00e9llo \ud83d\ude00", tokens.get(0).getLiteral());
+        assertEquals(11, tokens.get(1).getPosition());
+        assertEquals("\ufffd\ufffd", tokens.get(2).getLiteral());
+    }
 }
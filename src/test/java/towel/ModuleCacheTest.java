@@ -0,0 +1,147 @@
+package towel;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import towel.ast.Condition;
+import towel.ast.Function;
+import towel.ast.Identifier;
+import towel.ast.Program;
+import towel.parser.Lexer;
+import towel.parser.Parser;
+import towel.pass.StaticPass;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModuleCacheTest {
+
+    private final static Set<String> NONE = Collections.emptySet();
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("towel-cache");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testLoadsWhatWasStored() {
+        String code = "import <io> import pop from <stack> def double (num -> num) { let x x 2 * } " +
+                "5 let y y double io.print 1 2 < { \"less\" } { [ 1, \"two\", true ] pop } ? io.print";
+
+        BufferedErrorReporter reporter = new BufferedErrorReporter();
+        Program program = analyse(code, reporter);
+        reporter.notice("Something to note.", 1, 2);
+
+        ModuleCache cache = new ModuleCache(directory, StaticPass.NO_OPTIMISATION);
+        String key = cache.getKey(toBuffer(code), "test", true, NONE);
+        cache.store(key, new ModuleCache.Module(program, reporter, Collections.singleton("x"), NONE));
+
+        ModuleCache.Module module = cache.load(key);
+        assertNotNull(module);
+
+        Program loaded = module.getProgram();
+        assertEquals(new AstPrinter().print(program), new AstPrinter().print(loaded));
+        assertSame(loaded.getImports().get(1), loaded.getNodes().get(1));
+        assertEquals(Collections.singleton("x"), module.getLetsInSequences());
+        assertEquals(NONE, module.getReliedOn());
+
+        Function function = (Function) loaded.getNodes().get(2);
+        assertEquals(1, function.getSlotCount());
+        assertTrue(((Identifier) function.getBody()[1]).hasSlot());
+
+        Condition condition = (Condition) loaded.getNodes().get(loaded.getNodes().size() - 2);
+        assertSame(loaded.getNodes().get(loaded.getNodes().size() - 4), condition.getThenBranch());
+
+        LoggingErrorReporter replayed = new LoggingErrorReporter();
+        module.getReporter().replayTo(replayed);
+
+        LoggingErrorReporter.LogEntry notice = replayed.getNotices().get(LoggingErrorReporter.DEFAULT_LOG_NAME).get(0);
+        assertEquals("Something to note.", notice.message);
+        assertEquals(1, notice.line);
+        assertFalse(replayed.hasErrors());
+    }
+
+    @Test
+    public void testKeysDependOnContentsAndOptimisation() {
+        ModuleCache cache = new ModuleCache(directory, StaticPass.NO_OPTIMISATION);
+        String key = cache.getKey(toBuffer("1 2 +"), "test", true, NONE);
+
+        assertEquals(key, cache.getKey(toBuffer("1 2 +"), "test", true, NONE));
+        assertNotEquals(key, cache.getKey(toBuffer("1 3 +"), "test", true, NONE));
+        assertNotEquals(key, cache.getKey(toBuffer("1 2 +"), "test", false, NONE));
+        assertNotEquals(key, new ModuleCache(directory, StaticPass.FOLD_CONSTANTS).getKey(toBuffer("1 2 +"), "test", true, NONE));
+        assertNotEquals(key, cache.getKey(toBuffer("1 2 +"), "test", true, Collections.singleton("x")));
+    }
+
+    @Test
+    public void testIgnoresDamagedEntries() throws IOException {
+        ModuleCache cache = new ModuleCache(directory, StaticPass.NO_OPTIMISATION);
+        String key = cache.getKey(toBuffer("1 2 +"), "test", true, NONE);
+
+        Files.write(directory.resolve(key), new byte[]{0, 0, 0, 0, 42});
+        assertNull(cache.load(key));
+        assertNull(cache.load(cache.getKey(toBuffer("1 3 +"), "test", true, NONE)));
+    }
+
+    @Test
+    public void testReanalysesChangedFiles() throws IOException {
+        Path source = directory.resolve("changing.twl");
+        Path cacheDirectory = directory.resolve("cache");
+
+        Files.write(source, "import <io> 1 io.print".getBytes(StandardCharsets.UTF_8));
+        assertEquals("1.0", run(source, cacheDirectory));
+        assertEquals("1.0", run(source, cacheDirectory));
+        assertEquals(1, countEntries(cacheDirectory));
+
+        Files.write(source, "import <io> 2 io.print".getBytes(StandardCharsets.UTF_8));
+        assertEquals("2.0", run(source, cacheDirectory));
+        assertEquals(2, countEntries(cacheDirectory));
+    }
+
+    private String run(Path source, Path cacheDirectory) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        App.reset();
+        App.setPrintStream(new PrintStream(outputStream));
+        App.main(new String[]{source.toString(), "--cache-dir=" + cacheDirectory});
+
+        return outputStream.toString();
+    }
+
+    private long countEntries(Path cacheDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            return files.count();
+        }
+    }
+
+    private Program analyse(String code, ErrorReporter reporter) {
+        Program program = Parser.getFor(Lexer.getFor(code, reporter).tokenize(), reporter).parse();
+        StaticPass.getDefaultPass(reporter, StaticPass.NO_OPTIMISATION).performAnalysis(program);
+        assertFalse(reporter.hasErrors());
+        return program;
+    }
+
+    private ByteBuffer toBuffer(String code) {
+        return ByteBuffer.wrap(code.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,6 +1,7 @@
 package towel;
 
 import org.junit.jupiter.api.Test;
+import towel.interpreter.Interpreter;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
@@ -56,6 +57,119 @@ public class OutputTest {
         assertNull(o.getFilename());
     }
 
+    @Test
+    public void testEngineOption() {
+        Options o = new Options(new String[]{
+                "/some/file.twl",
+                "--engine=bytecode"
+        }, outContent);
+
+        o.parse();
+
+        assertEquals(true, o.valid());
+        assertEquals(Interpreter.Engine.BYTECODE, o.getEngine());
+    }
+
+    @Test
+    public void testDefaultEngine() {
+        Options o = new Options(new String[]{
+                "/some/file.twl"
+        }, outContent);
+
+        o.parse();
+
+        assertEquals(Interpreter.Engine.AST, o.getEngine());
+    }
+
+    @Test
+    public void testInvalidEngineOption() {
+        Options o = new Options(new String[]{
+                "/some/file.twl",
+                "--engine=nope"
+        }, outContent);
+
+        o.parse();
+
+        assertEquals(false, o.valid());
+    }
+
+    @Test
+    public void testOptimiseOption() {
+        Options o = new Options(new String[]{
+                "/some/file.twl",
+                "--optimise=1"
+        }, outContent);
+
+        o.parse();
+
+        assertEquals(true, o.valid());
+        assertEquals(1, o.getOptimisationLevel());
+    }
+
+    @Test
+    public void testInvalidOptimiseOption() {
+        Options o = new Options(new String[]{
+                "/some/file.twl",
+                "--optimise=fast"
+        }, outContent);
+
+        o.parse();
+
+        assertEquals(false, o.valid());
+    }
+
+    @Test
+    public void testMaxCallDepthOption() {
+        Options o = new Options(new String[]{
+                "/some/file.twl",
+                "--max-call-depth=500"
+        }, outContent);
+
+        o.parse();
+
+        assertEquals(true, o.valid());
+        assertEquals(500, o.getMaxCallDepth());
+    }
+
+    @Test
+    public void testInvalidMaxCallDepthOption() {
+        Options o = new Options(new String[]{
+                "/some/file.twl",
+                "--max-call-depth=0"
+        }, outContent);
+
+        o.parse();
+
+        assertEquals(false, o.valid());
+    }
+
+    @Test
+    public void testCompileThresholdOption() {
+        Options o = new Options(new String[]{
+                "/some/file.twl",
+                "--engine=tiered",
+                "--compile-threshold=50"
+        }, outContent);
+
+        o.parse();
+
+        assertEquals(true, o.valid());
+        assertEquals(Interpreter.Engine.TIERED, o.getEngine());
+        assertEquals(50, o.getCompileThreshold());
+    }
+
+    @Test
+    public void testInvalidCompileThresholdOption() {
+        Options o = new Options(new String[]{
+                "/some/file.twl",
+                "--compile-threshold=none"
+        }, outContent);
+
+        o.parse();
+
+        assertEquals(false, o.valid());
+    }
+
     @Test
     public void testOptionsThrowsExceptionIfNotParsed() {
         Options o = new Options(new String[]{
@@ -4,14 +4,37 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import towel.ast.Array;
+import towel.ast.BinaryOperator;
+import towel.ast.Comparison;
+import towel.ast.Condition;
+import towel.ast.Function;
+import towel.ast.Identifier;
+import towel.ast.Import;
+import towel.ast.Let;
+import towel.ast.Literal;
+import towel.ast.Node;
+import towel.ast.Program;
+import towel.ast.Sequence;
 import towel.ast.Token;
 import towel.parser.Lexer;
 import towel.parser.Parser;
 
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static towel.Assertions.assertParsesWithError;
+import static towel.Assertions.assertStartsWith;
+import static towel.LoggingErrorReporter.DEFAULT_LOG_NAME;
 
 public class ParserTest {
 
@@ -96,4 +119,148 @@ public class ParserTest {
         assertParsesWithError("Unexpected token: '.' (DOT).", "5.16.");
     }
 
+    @Test
+    public void testParsesTokensAsTheyAreLexed() {
+        LoggingErrorReporter reporter = new LoggingErrorReporter();
+        Program program = Parser.getFor(Lexer.getFor(new StringReader("def add { + } 1 2 add"), reporter), reporter,
+                "test").parse();
+
+        assertEquals(4, program.getNodes().size());
+        assertEquals("test", program.getNamespace());
+        assertFalse(reporter.hasErrors());
+    }
+
+    @Test
+    public void testReportsOnlyLexicalErrorsWhenParsingAsLexed() {
+        LoggingErrorReporter reporter = new LoggingErrorReporter();
+        Program program = Parser.getFor(Lexer.getFor(new StringReader("def ( 1 ! 2 &"), reporter), reporter,
+                "test").parse();
+
+        List<LoggingErrorReporter.LogEntry> errors = reporter.getErrors().get(DEFAULT_LOG_NAME);
+
+        assertNull(program);
+        assertEquals(2, errors.size());
+        assertStartsWith("Unexpected character '!'.", errors.get(0).message);
+        assertStartsWith("Unexpected character '&'.", errors.get(1).message);
+    }
+
+    @Test
+    public void testKeepsOnlyTheTokensTheProgramHolds() {
+        LoggingErrorReporter reporter = new LoggingErrorReporter();
+        long before = usedMemory();
+
+        Program program = Parser.getFor(Lexer.getFor(new ArrayLiteralReader(40, 25000), reporter), reporter,
+                "test").parse();
+        long retained = usedMemory() - before;
+
+        // the million numbers take under 30MB as the arrays' contents, keeping each of their tokens and the commas
+        // between them would take over twice that again
+        assertEquals(40, program.getNodes().size());
+        assertTrue(retained < 40 * 1024 * 1024, "Parsed program retains " + retained + " bytes.");
+    }
+
+    @Test
+    public void testProgramHoldsCompactTokens() {
+        String code = "import <io> import size from <array> as s def f (num -> num) { 1 + } let x [1, 2] "
+                + "{ x io.println } 1 2 < true { \"a\" } { \"b\" } ? x s";
+        Class<?> defaultToken = Token.create(Token.TokenType.EOF, "", null).getClass();
+
+        LoggingErrorReporter reporter = new LoggingErrorReporter();
+        Program streamed = Parser.getFor(Lexer.getFor(new StringReader(code), reporter), reporter, "test").parse();
+        createParser(code);
+        Program tokenized = parser.parse();
+
+        for (Program program : new Program[]{streamed, tokenized}) {
+            List<Token> tokens = new ArrayList<>();
+            collectTokens(program.getNodes(), tokens);
+
+            assertEquals(22, tokens.size());
+            for (Token token : tokens) {
+                assertNotEquals(defaultToken, token.getClass(), "Token " + token.getLexeme() + " isn't compact.");
+            }
+        }
+    }
+
+    private static void collectTokens(List<? extends Node> nodes, List<Token> tokens) {
+        for (Node node : nodes) {
+            if (node instanceof Function) {
+                tokens.add(((Function) node).getToken());
+                collectTokens(Arrays.asList(((Function) node).getBody()), tokens);
+            } else if (node instanceof Sequence) {
+                tokens.add(((Sequence) node).getToken());
+                collectTokens(Arrays.asList(((Sequence) node).getNodes()), tokens);
+            } else if (node instanceof Identifier) {
+                tokens.add(((Identifier) node).getToken());
+                if (((Identifier) node).getNamespaceToken() != null) {
+                    tokens.add(((Identifier) node).getNamespaceToken());
+                }
+            } else if (node instanceof Import) {
+                tokens.add(((Import) node).getToken());
+            } else if (node instanceof Let) {
+                tokens.add(((Let) node).getToken());
+            } else if (node instanceof Literal) {
+                tokens.add(((Literal) node).getToken());
+            } else if (node instanceof Array) {
+                tokens.add(((Array) node).getToken());
+            } else if (node instanceof BinaryOperator) {
+                tokens.add(((BinaryOperator) node).getToken());
+            } else if (node instanceof Comparison) {
+                tokens.add(((Comparison) node).getToken());
+            } else if (node instanceof Condition) {
+                tokens.add(((Condition) node).getToken());
+            }
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Source of numeric array literals, generated as it's read so the source itself is never held
+     */
+    private static class ArrayLiteralReader extends Reader {
+
+        private final int arrays;
+        private final int numbers;
+        private int array = 0;
+        private String literal = "";
+        private int position = 0;
+
+        ArrayLiteralReader(int arrays, int numbers) {
+            this.arrays = arrays;
+            this.numbers = numbers;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == literal.length()) {
+                if (array == arrays) {
+                    return -1;
+                }
+
+                StringBuilder builder = new StringBuilder("[ ");
+                for (int i = 0; i < numbers; i++) {
+                    builder.append(i > 0 ? ", " : "").append(array * numbers + i);
+                }
+                literal = builder.append(" ]\n").toString();
+                position = 0;
+                array++;
+            }
+
+            int count = Math.min(length, literal.length() - position);
+            literal.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
 }
@@ -1,9 +1,35 @@
 package towel;
 
 import org.junit.jupiter.api.Test;
+import towel.ast.BinaryOperator;
+import towel.ast.Condition;
+import towel.ast.Function;
+import towel.ast.Identifier;
+import towel.ast.Import;
+import towel.ast.Let;
+import towel.ast.Literal;
+import towel.ast.Node;
+import towel.ast.Program;
+import towel.ast.Sequence;
+import towel.interpreter.Interpreter;
+import towel.interpreter.NativeNamespaceLoader;
+import towel.parser.Lexer;
+import towel.parser.Parser;
+import towel.pass.StaticPass;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static towel.Assertions.assertAnalysisWithError;
 import static towel.Assertions.assertExecutesWithError;
+import static towel.Assertions.assertExecutesWithResult;
 
 public class StaticPassTest {
 
@@ -23,4 +49,290 @@ public class StaticPassTest {
         assertExecutesWithError("Unknown identifier 'print'.", "5 print");
     }
 
+    @Test
+    public void testLogsErrorForProvableTypeError() {
+        assertAnalysisWithError("5 \"5\" +", "Stack does not meet type pre-conditions for +.\n" +
+                "Length must be at least 2, current length is 2.\n" +
+                "Item 0 from the top of the stack must be of type 'num', 'str' was found.\n" +
+                "Item 1 from the top of the stack must be of type 'num', 'num' was found.");
+    }
+
+    @Test
+    public void testLogsErrorForProvableLengthError() {
+        assertAnalysisWithError("def add (num, num -> num) { + } 5 add", "Stack does not meet length pre-conditions for add.\n" +
+                "Length must be at least 2, current length is 1.\n" +
+                "Item 0 from the top of the stack must be of type 'num', 'num' was found.\n" +
+                "Item 1 from the top of the stack must be of type 'num', nothing was found.");
+    }
+
+    @Test
+    public void testLogsErrorWithinFunctionBody() {
+        assertAnalysisWithError("def test (num -> num) { \"a\" + }", "Stack does not meet type pre-conditions for +.\n" +
+                "Item 0 from the top of the stack must be of type 'num', 'str' was found.\n" +
+                "Item 1 from the top of the stack must be of type 'num', 'num' was found.");
+    }
+
+    @Test
+    public void testLogsErrorForProvableComparisonError() {
+        assertAnalysisWithError("true { 5 \"5\" == } { } ?", "This comparison cannot be done between 'num' and 'str'.");
+    }
+
+    @Test
+    public void testLogsErrorUsingResultOfFunction() {
+        assertAnalysisWithError("def five { 5 } five \"a\" <", "This comparison cannot be done between 'num' and 'str'.");
+    }
+
+    @Test
+    public void testDoesNotLogErrorWhenStackIsUnknown() {
+        assertAnalysisWithError("import * from <stack> dup +");
+        assertAnalysisWithError("import \"test.twl\" +");
+        assertAnalysisWithError("def test { + }");
+        assertAnalysisWithError("{ \"a\" swap + } let test");
+    }
+
+    @Test
+    public void testMarksProvenNodes() {
+        Program program = analyse("def add (num, num -> num) { + } 1 2 add 3 +");
+
+        Function add = (Function) program.getNodes().get(0);
+        Identifier call = (Identifier) program.getNodes().get(3);
+
+        assertTrue(((BinaryOperator) add.getBody()[0]).isVerified());
+        assertTrue(call.isVerified());
+        assertTrue(call.isResultVerified());
+        assertTrue(((BinaryOperator) program.getNodes().get(5)).isVerified());
+    }
+
+    @Test
+    public void testDoesNotMarkUnprovenNodes() {
+        Program program = analyse("import * from <stack> " +
+                "def test { + } def add (num, num -> num) { + } 1 dup + dup add");
+
+        Function test = (Function) program.getNodes().get(1);
+
+        assertFalse(((BinaryOperator) test.getBody()[0]).isVerified());
+        assertFalse(((BinaryOperator) program.getNodes().get(5)).isVerified());
+        assertFalse(((Identifier) program.getNodes().get(7)).isVerified());
+    }
+
+    @Test
+    public void testProvenNodesExecute() {
+        assertExecutesWithResult(7d, "def add (num, num -> num) { + } 1 2 add 4 +");
+        assertExecutesWithResult(3d, "def pick (bool -> num) { { 1 } { 2 } ? } true pick false pick +");
+    }
+
+    @Test
+    public void testFoldsLiteralExpressions() {
+        Program program = optimise("5 5 * 1 + 2 3 < true &&");
+
+        assertEquals(2, program.getNodes().size());
+        assertEquals(26d, ((Literal) program.getNodes().get(0)).getToken().getLiteral());
+        assertEquals(true, ((Literal) program.getNodes().get(1)).getToken().getLiteral());
+    }
+
+    @Test
+    public void testFoldsLiteralConditions() {
+        Program program = optimise("true { 1 2 + } { 4 } ? false { 5 } ??");
+
+        assertEquals(1, program.getNodes().size());
+        assertEquals(3d, ((Literal) program.getNodes().get(0)).getToken().getLiteral());
+    }
+
+    @Test
+    public void testInlinesConstantLets() {
+        Program program = optimise("5 let n n 2 * def twice { n 2 * } twice");
+
+        assertEquals(10d, ((Literal) program.getNodes().get(2)).getToken().getLiteral());
+        assertEquals(10d, ((Literal) ((Function) program.getNodes().get(3)).getBody()[0]).getToken().getLiteral());
+    }
+
+    @Test
+    public void testDoesNotInlineReboundLets() {
+        Program program = optimise("5 let n n { 6 let n } exec n");
+
+        assertTrue(program.getNodes().get(1) instanceof Let);
+        assertTrue(program.getNodes().get(2) instanceof Identifier);
+        assertTrue(program.getNodes().get(5) instanceof Identifier);
+    }
+
+    @Test
+    public void testDoesNotFoldErrors() {
+        Program program = optimise("5 0 / 5 0 %");
+
+        assertEquals(6, program.getNodes().size());
+    }
+
+    @Test
+    public void testInlinesSmallFunctions() {
+        Program program = inline("import dup from <stack> def sqr { dup * } def add (num, num -> num) { + } " +
+                "3 sqr 1 2 add");
+
+        assertEquals(9, program.getNodes().size());
+        assertTrue(program.getNodes().get(4) instanceof Identifier);
+        assertTrue(program.getNodes().get(5) instanceof BinaryOperator);
+        assertTrue(program.getNodes().get(8) instanceof BinaryOperator);
+    }
+
+    @Test
+    public void testInlinesIntoFunctionsAndBranches() {
+        Program program = inline("def one { 1 } def two { one one + } def pick (bool -> num) { { two } { one } ? }");
+
+        Function two = (Function) program.getNodes().get(1);
+        Function pick = (Function) program.getNodes().get(2);
+
+        assertTrue(two.getBody()[0] instanceof Literal);
+        assertTrue(((Sequence) pick.getBody()[0]).getNodes()[1] instanceof Literal);
+        assertTrue(((Sequence) pick.getBody()[1]).getNodes()[0] instanceof Literal);
+    }
+
+    @Test
+    public void testDoesNotInlineUnsafeCalls() {
+        Program program = inline("import dup from <stack> def add (num, num -> num) { + } dup add " +
+                "def early { late } def late { 1 } def count { 1 - count } def bind { let x } " +
+                "{ late } 2 bind");
+
+        assertTrue(program.getNodes().get(3) instanceof Identifier);
+        assertTrue(((Function) program.getNodes().get(4)).getBody()[0] instanceof Identifier);
+        assertTrue(((Function) program.getNodes().get(6)).getBody()[2] instanceof Identifier);
+        assertTrue(((Sequence) program.getNodes().get(8)).getNodes()[0] instanceof Identifier);
+        assertTrue(program.getNodes().get(10) instanceof Identifier);
+    }
+
+    @Test
+    public void testInlinedFunctionsExecute() {
+        Program program = inline("import dup from <stack> def sqr { dup * } def inc (num -> num) { 1 + } 3 inc sqr 4 -");
+        Interpreter interpreter = Interpreter.getFor(program, new NativeNamespaceLoader(System.out, new Scanner(System.in)),
+                new ExceptionThrowingErrorReporter());
+
+        assertEquals(12d, interpreter.interpret());
+    }
+
+    @Test
+    public void testResolvesLiteralBranches() {
+        Program program = analyse("def pick (bool -> num) { { 1 } { 2 } ? } true { 3 } ??");
+
+        Function pick = (Function) program.getNodes().get(0);
+        Condition condition = (Condition) pick.getBody()[2];
+
+        assertTrue(condition.hasBranches());
+        assertSame(pick.getBody()[0], condition.getThenBranch());
+        assertSame(pick.getBody()[1], condition.getElseBranch());
+        assertTrue(((Sequence) pick.getBody()[0]).isBranch());
+        assertTrue(((Condition) program.getNodes().get(3)).hasBranches());
+        assertNull(((Condition) program.getNodes().get(3)).getElseBranch());
+    }
+
+    @Test
+    public void testDoesNotResolveOtherSequences() {
+        Program program = analyse("import * from <sequences> { 1 } let one true one { 2 } ? { 3 } exec");
+
+        assertFalse(((Condition) program.getNodes().get(6)).hasBranches());
+        assertFalse(((Sequence) program.getNodes().get(5)).isBranch());
+        assertFalse(((Sequence) program.getNodes().get(7)).isBranch());
+    }
+
+    @Test
+    public void testAllocatesSlotsForLets() {
+        Program program = analyse("def test { let a let b a b a { b } { a } ? }");
+
+        Function test = (Function) program.getNodes().get(0);
+        Node[] body = test.getBody();
+
+        assertEquals(2, test.getSlotCount());
+        assertEquals(0, ((Let) body[0]).getSlot());
+        assertEquals(1, ((Let) body[1]).getSlot());
+        assertEquals(0, ((Identifier) body[2]).getSlot());
+        assertEquals(1, ((Identifier) ((Sequence) body[5]).getNodes()[0]).getSlot());
+    }
+
+    @Test
+    public void testDoesNotAllocateSlotsForCapturedLets() {
+        Program program = analyse("def test { let a let b public let c a b c { a } } def other { { 1 let d } exec d }");
+
+        Function test = (Function) program.getNodes().get(0);
+        Function other = (Function) program.getNodes().get(1);
+
+        assertEquals(1, test.getSlotCount());
+        assertFalse(((Let) test.getBody()[0]).hasSlot());
+        assertTrue(((Let) test.getBody()[1]).hasSlot());
+        assertFalse(((Let) test.getBody()[2]).hasSlot());
+        assertEquals(0, other.getSlotCount());
+    }
+
+    @Test
+    public void testEliminatesUnusedCode() {
+        Program program = shake("def used { 1 } def unused { used2 } def used2 { 2 } 5 let x 6 let y y used");
+
+        assertEquals(5, program.getNodes().size());
+        assertEquals("used", ((Function) program.getNodes().get(0)).getLexeme());
+        assertEquals("y", ((Let) program.getNodes().get(2)).getName());
+    }
+
+    @Test
+    public void testEliminatesOnlyUnusedCode() {
+        Program program = shake("def count { 1 - count } 5 public let x [ 0 ] let y def count2 { } { count2 } let z " +
+                "def twice { } def twice { }");
+
+        assertEquals(6, program.getNodes().size());
+        assertEquals("x", ((Let) program.getNodes().get(1)).getName());
+        assertEquals("y", ((Let) program.getNodes().get(3)).getName());
+        assertEquals("twice", ((Function) program.getNodes().get(4)).getLexeme());
+    }
+
+    @Test
+    public void testRestrictsImportsToUsedNames() {
+        Program program = shake("import * from <stack> import <io> import pop, swap from <stack> 1 2 pop io.print");
+
+        Import star = program.getImports().get(0);
+        Import io = program.getImports().get(1);
+        Import explicit = program.getImports().get(2);
+
+        assertTrue(star.getUsedNames().containsAll(Arrays.asList("pop", "print")));
+        assertEquals(Collections.singleton("print"), io.getUsedNames());
+        assertEquals(new HashSet<>(Collections.singletonList("pop")), explicit.getUsedNames());
+    }
+
+    @Test
+    public void testShakenProgramsExecute() {
+        assertExecutesWithResult(3d, "import * from <stack> def unused { dup } def inc (num -> num) { 1 + } 5 let x 2 inc");
+    }
+
+    @Test
+    public void testDoesNotAllocateSlotsForLetsUsedAfterACall() {
+        Program program = analyse("def test { let a let b a b other a let b b } def other { }");
+
+        Function test = (Function) program.getNodes().get(0);
+        Node[] body = test.getBody();
+
+        assertEquals(1, test.getSlotCount());
+        assertFalse(((Let) body[0]).hasSlot());
+        assertTrue(((Let) body[1]).hasSlot());
+        assertFalse(((Identifier) body[4]).hasSlot());
+        assertTrue(((Identifier) body[7]).hasSlot());
+    }
+
+    private Program inline(String code) {
+        return analyse(code, StaticPass.INLINE_FUNCTIONS);
+    }
+
+    private Program analyse(String code) {
+        return analyse(code, StaticPass.NO_OPTIMISATION);
+    }
+
+    private Program optimise(String code) {
+        return analyse(code, StaticPass.FOLD_CONSTANTS);
+    }
+
+    private Program shake(String code) {
+        Program program = analyse(code);
+        StaticPass.getWholeProgramPass(StaticPass.ELIMINATE_DEAD_CODE).performAnalysis(program);
+        return program;
+    }
+
+    private Program analyse(String code, int optimisationLevel) {
+        ErrorReporter reporter = new ExceptionThrowingErrorReporter();
+        Program program = Parser.getFor(Lexer.getFor(code, reporter).tokenize(), reporter).parse();
+        StaticPass.getDefaultPass(reporter, optimisationLevel).performAnalysis(program);
+        return program;
+    }
 }
@@ -0,0 +1,63 @@
+package towel.interpreter;
+
+import org.junit.jupiter.api.Test;
+import towel.LoggingErrorReporter;
+import towel.ast.Program;
+import towel.parser.Lexer;
+import towel.parser.Parser;
+import towel.pass.StaticPass;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BytecodeCompilerTest {
+
+    @Test
+    public void testFusesLiteralAndOperator() {
+        assertEquals("0000 PUSH                 0 (5.0)\n" +
+                "0001 ARITHMETIC_CONSTANT  1 2\n" +
+                "0003 COMPARE_CONSTANT     3 4\n", compile("5 1 - 2 >"));
+    }
+
+    @Test
+    public void testFusesDupLiteralAndOperator() {
+        assertEquals("0000 DUP_COMPARE_CONSTANT 0 1 2\n" +
+                "0003 DUP_ARITHMETIC_CONSTANT 3 4 5\n", compile("dup 0 > dup 1 -"));
+    }
+
+    @Test
+    public void testDoesNotFuseOtherRuns() {
+        assertEquals("0000 PUSH                 0 (a)\n" +
+                "0001 PUSH                 1 (1.0)\n" +
+                "0002 AND                  2\n" +
+                "0003 CALL                 3\n" +
+                "0004 PUSH                 1 (1.0)\n" +
+                "0005 PUSH                 4 (2.0)\n", compile("\"a\" 1 && dup 1 2"));
+    }
+
+    @Test
+    public void testCompilesLiteralBranchesInPlace() {
+        assertEquals("0000 PUSH                 0 (true)\n" +
+                "0001 JUMP_IF_FALSE        1 5\n" +
+                "0003 PUSH                 2 (1.0)\n" +
+                "0004 JUMP                 6\n" +
+                "0005 PUSH                 3 (2.0)\n" +
+                "0006 PUSH                 4 (false)\n" +
+                "0007 JUMP_IF_FALSE        5 10\n" +
+                "0009 PUSH                 6 (3.0)\n", analyseAndCompile("true { 1 } { 2 } ? false { 3 } ??"));
+    }
+
+    private String compile(String code) {
+        LoggingErrorReporter reporter = new LoggingErrorReporter();
+        Program program = Parser.getFor(Lexer.getFor(code, reporter).tokenize(), reporter).parse();
+
+        return new BytecodeCompiler().compile(program.getNodes()).toString();
+    }
+
+    private String analyseAndCompile(String code) {
+        LoggingErrorReporter reporter = new LoggingErrorReporter();
+        Program program = Parser.getFor(Lexer.getFor(code, reporter).tokenize(), reporter).parse();
+        StaticPass.getDefaultPass(reporter).performAnalysis(program);
+
+        return new BytecodeCompiler().compile(program.getNodes()).toString();
+    }
+}
@@ -0,0 +1,51 @@
+package towel.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class CallSiteCacheTest {
+
+    @Test
+    public void testReturnsFunctionCachedForNamespace() {
+        Namespace namespace = new Namespace();
+        TowelFunction function = new LetFunction(1d, namespace);
+        CallSiteCache cache = new CallSiteCache();
+
+        cache.put(namespace, namespace, function);
+
+        assertSame(function, cache.get(namespace));
+        assertNull(cache.get(new Namespace()));
+    }
+
+    @Test
+    public void testHoldsAnEntryPerNamespace() {
+        Namespace first = new Namespace();
+        Namespace second = new Namespace();
+        TowelFunction firstFunction = new LetFunction(1d, first);
+        TowelFunction secondFunction = new LetFunction(2d, second);
+        CallSiteCache cache = new CallSiteCache();
+
+        cache.put(first, first, firstFunction);
+        cache.put(second, second, secondFunction);
+
+        assertSame(firstFunction, cache.get(first));
+        assertSame(secondFunction, cache.get(second));
+    }
+
+    @Test
+    public void testDefiningMemberInvalidatesEntry() {
+        Namespace namespace = new Namespace();
+        Namespace target = new Namespace();
+        CallSiteCache cache = new CallSiteCache();
+
+        cache.put(namespace, target, new LetFunction(1d, namespace));
+        target.definePrivateMember("shadow", new LetFunction(2d, target));
+        assertNull(cache.get(namespace));
+
+        cache.put(namespace, target, new LetFunction(1d, namespace));
+        namespace.definePublicMember("shadow", new LetFunction(2d, namespace));
+        assertNull(cache.get(namespace));
+    }
+}
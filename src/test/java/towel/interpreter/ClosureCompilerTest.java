@@ -0,0 +1,103 @@
+package towel.interpreter;
+
+import org.junit.jupiter.api.Test;
+import towel.LoggingErrorReporter;
+import towel.ast.Node;
+import towel.ast.Program;
+import towel.ast.Sequence;
+import towel.parser.Lexer;
+import towel.parser.Parser;
+
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClosureCompilerTest {
+
+    @Test
+    public void testBindsOperationOnce() {
+        ClosureCompiler compiler = new ClosureCompiler();
+
+        assertTrue(compiler.compile(parse("-").getNodes()) instanceof ClosureCompiler.Subtract);
+        assertTrue(compiler.compile(parse("%").getNodes()) instanceof ClosureCompiler.Modulo);
+        assertTrue(compiler.compile(parse("5").getNodes()) instanceof ClosureCompiler.PushDouble);
+        assertTrue(compiler.compile(parse("5 1 -").getNodes()) instanceof ClosureCompiler.Block);
+    }
+
+    @Test
+    public void testCachesSequencesFromTheAst() {
+        ClosureCompiler compiler = new ClosureCompiler();
+        Program program = parse("{ 1 2 + }");
+        Node[] nodes = ((Sequence) program.getNodes().get(0)).getNodes();
+
+        compiler.compile(program.getNodes());
+
+        assertSame(compiler.compile(nodes, false), compiler.compile(nodes, false));
+        assertNotSame(compiler.compile(nodes, false), compiler.compile(nodes, true));
+    }
+
+    @Test
+    public void testDoesNotCacheNodesCreatedAtRuntime() {
+        ClosureCompiler compiler = new ClosureCompiler();
+        Node[] nodes = parse("1 2 +").getNodes().toArray(new Node[0]);
+
+        assertNotSame(compiler.compile(nodes, false), compiler.compile(nodes, false));
+    }
+
+    @Test
+    public void testComparisonsRespecialiseWhenTypesChange() {
+        Interpreter interpreter = Interpreter.getFor(parse(""), new NativeNamespaceLoader(System.out, new Scanner(System.in)),
+                new LoggingErrorReporter(), Interpreter.Engine.CLOSURE);
+        Frame frame = new Frame((ProgramInterpreter) interpreter);
+        Executable equal = new ClosureCompiler().compile(parse("==").getNodes());
+        Stack stack = frame.stack;
+
+        stack.pushDouble(1);
+        stack.pushDouble(1);
+        equal.execute(frame);
+        assertEquals(true, stack.pop());
+
+        stack.push("a");
+        stack.push("b");
+        equal.execute(frame);
+        assertEquals(false, stack.pop());
+
+        stack.pushBoolean(true);
+        stack.pushBoolean(true);
+        equal.execute(frame);
+        assertEquals(true, stack.pop());
+
+        stack.pushDouble(2);
+        stack.pushDouble(1);
+        equal.execute(frame);
+        assertEquals(false, stack.pop());
+
+        stack.push("a");
+        stack.pushDouble(1);
+        assertThrows(ProgramInterpreter.InterpreterError.class, () -> equal.execute(frame));
+    }
+
+    @Test
+    public void testExecutesSequencesRepeatedly() {
+        Interpreter interpreter = Interpreter.getFor(parse("{ 2 3 * }"), new NativeNamespaceLoader(System.out, new Scanner(System.in)),
+                new LoggingErrorReporter(), Interpreter.Engine.CLOSURE);
+        interpreter.interpret();
+        Sequence sequence = interpreter.getStack().popSequence();
+
+        interpreter.execute(sequence);
+        interpreter.execute(sequence);
+
+        assertEquals(2, interpreter.getStack().size());
+        assertEquals(6d, interpreter.getStack().popDouble());
+        assertEquals(6d, interpreter.getStack().popDouble());
+    }
+
+    private Program parse(String code) {
+        LoggingErrorReporter reporter = new LoggingErrorReporter();
+        return Parser.getFor(Lexer.getFor(code, reporter).tokenize(), reporter).parse();
+    }
+}
@@ -4,9 +4,16 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import towel.LoggingErrorReporter;
 import towel.ast.*;
+import towel.parser.Lexer;
+import towel.parser.Parser;
 
+import java.lang.ref.WeakReference;
 import java.util.Scanner;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 
@@ -117,4 +124,83 @@ public class InterpreterTest {
         );
     }
 
+
+    @Test
+    public void testInterpreterStopsAtMaxCallDepth() {
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            LoggingErrorReporter reporter = new LoggingErrorReporter();
+            Program program = Parser.getFor(Lexer.getFor("def forever { forever 1 } forever", reporter).tokenize(), reporter).parse();
+
+            Interpreter interpreter = Interpreter.getFor(program, new NativeNamespaceLoader(System.out, new Scanner(System.in)), reporter, engine);
+            interpreter.setMaxCallDepth(100);
+
+            assertNull(interpreter.interpret());
+            assertTrue(reporter.hasErrors());
+        }
+    }
+
+    @Test
+    public void testBytecodeInterpreterRecursesBeyondJavaStack() {
+        LoggingErrorReporter reporter = new LoggingErrorReporter();
+        Program program = Parser.getFor(Lexer.getFor("import * from <stack> " +
+                "def sum { dup 0 > { dup 1 - sum + } ?? } 200000 sum", reporter).tokenize(), reporter).parse();
+
+        Interpreter interpreter = Interpreter.getFor(program, new NativeNamespaceLoader(System.out, new Scanner(System.in)), reporter, Interpreter.Engine.BYTECODE);
+
+        assertEquals(20000100000d, interpreter.interpret());
+    }
+
+    @Test
+    public void testTieredInterpreterCompilesHotFunctions() {
+        LoggingErrorReporter reporter = new LoggingErrorReporter();
+        Program program = Parser.getFor(Lexer.getFor("import * from <stack> " +
+                "def countdown { dup 0 > { 1 - countdown } { } ? } def once { 1 } " +
+                "10 countdown once +", reporter).tokenize(), reporter).parse();
+
+        ProgramInterpreter interpreter = (ProgramInterpreter) Interpreter.getFor(program,
+                new NativeNamespaceLoader(System.out, new Scanner(System.in)), reporter, Interpreter.Engine.TIERED);
+        interpreter.setCompileThreshold(5);
+
+        assertEquals(1d, interpreter.interpret());
+        assertNotNull(((UserDefinedFunction) interpreter.getNamespace().get("countdown")).getCompiled());
+        assertNull(((UserDefinedFunction) interpreter.getNamespace().get("once")).getCompiled());
+    }
+
+    @Test
+    public void testUnlinkedIdentifierSeesRedefinition() {
+        Namespace env = new Namespace();
+        env.definePrivateMember("value", new LetFunction(1d, env));
+
+        Interpreter interpreter = Interpreter.getFor(program, new NativeNamespaceLoader(System.out, new Scanner(System.in)), new LoggingErrorReporter(), env);
+        Identifier value = new Identifier(Token.create(Token.TokenType.IDENTIFIER, "value", "value", 1, 1, 1), null);
+
+        assertEquals(1d, interpreter.interpret(new Node[]{ value }));
+
+        env.definePrivateMember("value", new LetFunction(2d, env));
+
+        assertEquals(2d, interpreter.interpret(new Node[]{ value }));
+    }
+
+    @Test
+    public void testRunLeavesNothingOnTheProgram() throws InterruptedException {
+        LoggingErrorReporter reporter = new LoggingErrorReporter();
+        Program program = Parser.getFor(Lexer.getFor("import * from <sequences> " +
+                "def two { 2 } { two } exec two +", reporter).tokenize(), reporter).parse();
+
+        for (Interpreter.Engine engine : Interpreter.Engine.values()) {
+            Namespace namespace = new Namespace();
+            WeakReference<Namespace> previous = new WeakReference<>(namespace);
+
+            assertEquals(4d, Interpreter.getFor(program, new NativeNamespaceLoader(System.out, new Scanner(System.in)),
+                    reporter, namespace, engine).interpret());
+            namespace = null;
+
+            for (int i = 0; i < 10 && previous.get() != null; i++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+
+            assertNull(previous.get(), engine + " left the namespace of its run reachable from the program.");
+        }
+    }
 }
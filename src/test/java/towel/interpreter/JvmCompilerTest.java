@@ -0,0 +1,76 @@
+package towel.interpreter;
+
+import org.junit.jupiter.api.Test;
+import towel.LoggingErrorReporter;
+import towel.ast.Program;
+import towel.parser.Lexer;
+import towel.parser.Parser;
+
+import java.util.Collections;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class JvmCompilerTest {
+
+    @Test
+    public void testCompiledCodeRuns() {
+        Stack stack = run("5 1 - 2 * 3 / 8 < \"a\" true");
+
+        assertEquals(true, stack.pop());
+        assertEquals("a", stack.pop());
+        assertEquals(true, stack.pop());
+    }
+
+    @Test
+    public void testCompiledComparisonsMatchJava() {
+        Stack stack = run("1 2 != 1 1 == 2 2 >= 1 2 > 2 2 <= 1 2 <");
+
+        assertEquals(true, stack.pop());
+        assertEquals(true, stack.pop());
+        assertEquals(false, stack.pop());
+        assertEquals(true, stack.pop());
+        assertEquals(true, stack.pop());
+        assertEquals(true, stack.pop());
+    }
+
+    @Test
+    public void testHandsNonNumbersBackToInterpreter() {
+        Stack stack = run("\"a\" \"b\" == true true &&");
+
+        assertEquals(true, stack.pop());
+        assertEquals(false, stack.pop());
+    }
+
+    @Test
+    public void testGeneratedClassesHaveTheirOwnLoader() {
+        CompiledCode code = new JvmCompiler().compile(parse("1 2 +").getNodes(), false);
+
+        assertNotNull(code);
+        assertFalse(code.getClass().getClassLoader() == JvmCompiler.class.getClassLoader());
+    }
+
+    @Test
+    public void testFallsBackWhenTooLargeForAClass() {
+        String code = String.join(" ", Collections.nCopies(20000, "1"));
+
+        assertNull(new JvmCompiler().compile(parse(code).getNodes(), false));
+        assertEquals(20000, run(code).size());
+    }
+
+    private Program parse(String code) {
+        LoggingErrorReporter reporter = new LoggingErrorReporter();
+        return Parser.getFor(Lexer.getFor(code, reporter).tokenize(), reporter).parse();
+    }
+
+    private Stack run(String code) {
+        Interpreter interpreter = Interpreter.getFor(parse(code), new NativeNamespaceLoader(System.out, new Scanner(System.in)),
+                new LoggingErrorReporter(), Interpreter.Engine.JVM);
+
+        interpreter.interpret();
+        return interpreter.getStack();
+    }
+}